@@ -0,0 +1,233 @@
+package com.google.businessmessages.cart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Inverted index from each (property, option) pair of an inventory, i.e. size=9 or
+ * color=blue, to the positions of the items that have that option. Matching a set of filters
+ * is then an intersection of one posting list per filter rather than a scan over every item's
+ * properties.
+ *
+ * Most options are held by few items, so their positions are kept as a sorted int array. An
+ * option held by more than one item in 32 is kept as a bitmap instead, which is then the
+ * smaller of the two.
+ */
+public class AttributeIndex {
+    // The filter value that matches every item
+    private static final String ALL_FILTER_VALUE = "all";
+
+    private final ImmutableList<InventoryItem> items;
+    private final Map<String, Map<String, Postings>> postings = new HashMap<>();
+
+    /**
+     * Creates an index from positions that have already been collected, i.e. from the
+     * dictionary encoded options of a ColumnarCatalog.
+     * @param items The items the positions refer to.
+     * @param positions The item positions of each option of each property, in ascending order.
+     */
+    AttributeIndex(ImmutableList<InventoryItem> items, Map<String, Map<String, int[]>> positions) {
+        this.items = items;
+        positions.forEach((propertyName, optionPositions) -> {
+            Map<String, Postings> optionPostings = new HashMap<>();
+            optionPositions.forEach((option, positionArray) ->
+                optionPostings.put(option, Postings.of(positionArray, items.size())));
+            postings.put(propertyName, optionPostings);
+        });
+    }
+
+    public AttributeIndex(ImmutableList<InventoryItem> items) {
+        this.items = items;
+        Map<String, Map<String, PositionList>> positions = new HashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            for (ItemProperty property : items.get(i).getProperties()) {
+                Map<String, PositionList> optionPositions =
+                    positions.computeIfAbsent(property.getName(), unused -> new HashMap<>());
+                for (String option : property.getOptions()) {
+                    optionPositions.computeIfAbsent(option, unused -> new PositionList()).add(i);
+                }
+            }
+        }
+        positions.forEach((propertyName, optionPositions) -> {
+            Map<String, Postings> optionPostings = new HashMap<>();
+            optionPositions.forEach((option, positionList) ->
+                optionPostings.put(option, Postings.of(positionList.toArray(), items.size())));
+            postings.put(propertyName, optionPostings);
+        });
+    }
+
+    /**
+     * Gets the positions of the items that match every filter. Filters set to "all" match
+     * every item, and filters that are not on item properties are ignored.
+     * @param filters The filters the items must match.
+     * @return The bitmap of matching item positions.
+     */
+    public BitSet match(List<Filter> filters) {
+        BitSet matches = new BitSet(items.size());
+        matches.set(0, items.size());
+        for (Filter filter : filters) {
+            if (filter.getValue().equals(ALL_FILTER_VALUE) || !filter.isAttributeFilter()) {
+                continue;
+            }
+            Postings optionPostings = getPostings(filter.getName(), filter.getValue());
+            if (optionPostings == null) {
+                return new BitSet();
+            }
+            matches = optionPostings.intersect(matches);
+        }
+        return matches;
+    }
+
+    /**
+     * Counts the items each option of a property would match when combined with the given
+     * filters, ignoring any filter on the property itself. Each count is the size of one
+     * posting list intersection.
+     * @param filters The filters the user currently has set.
+     * @param propertyName The name of the property whose options are counted.
+     * @param options The options of the property, matched case-insensitively.
+     * @return The number of matching items for each option, in the order given.
+     */
+    public Map<String, Integer> getFacetCounts(List<Filter> filters, String propertyName, List<String> options) {
+        List<Filter> otherFilters = new ArrayList<>();
+        for (Filter filter : filters) {
+            if (!filter.getName().equals(propertyName)) {
+                otherFilters.add(filter);
+            }
+        }
+        BitSet base = match(otherFilters);
+        BitSet scratch = new BitSet();
+        Map<String, Integer> optionCounts = new LinkedHashMap<>();
+        for (String option : options) {
+            String normalizedOption = option.toLowerCase();
+            if (normalizedOption.equals(ALL_FILTER_VALUE)) {
+                optionCounts.put(option, base.cardinality());
+                continue;
+            }
+            Postings optionPostings = getPostings(propertyName, normalizedOption);
+            optionCounts.put(option, optionPostings == null ? 0 : optionPostings.countIn(base, scratch));
+        }
+        return optionCounts;
+    }
+
+    /**
+     * Gets the items that match every filter, in inventory order.
+     * @param filters The filters the items must match.
+     * @return The list of matching items.
+     */
+    public ImmutableList<InventoryItem> getMatchingItems(List<Filter> filters) {
+        BitSet matches = match(filters);
+        ImmutableList.Builder<InventoryItem> builder = ImmutableList.builder();
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            builder.add(items.get(i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Gets the positions of the items that have the given option for a property.
+     * @param propertyName The name of the property.
+     * @param option The option of the property.
+     * @return The posting list, null if no item has the option.
+     */
+    Postings getPostings(String propertyName, String option) {
+        Map<String, Postings> optionPostings = postings.get(propertyName);
+        return optionPostings == null ? null : optionPostings.get(option);
+    }
+
+    /**
+     * The positions of the items that have an option, as a sorted array or, for options held
+     * by many items, as a bitmap.
+     */
+    static class Postings {
+        private final int[] positions;
+        private final BitSet bitmap;
+
+        private Postings(int[] positions, BitSet bitmap) {
+            this.positions = positions;
+            this.bitmap = bitmap;
+        }
+
+        /**
+         * Creates the posting list of an option.
+         * @param positions The positions of the items that have the option, in ascending order.
+         * @param size The number of items in the inventory.
+         * @return The posting list, a bitmap if that is smaller than the array.
+         */
+        static Postings of(int[] positions, int size) {
+            if ((long) positions.length * Integer.SIZE <= size) {
+                return new Postings(positions, null);
+            }
+            BitSet bitmap = new BitSet(size);
+            for (int position : positions) {
+                bitmap.set(position);
+            }
+            return new Postings(null, bitmap);
+        }
+
+        /**
+         * Intersects matches with these positions.
+         * @param matches The matching positions so far, which may be modified.
+         * @return The positions in both.
+         */
+        BitSet intersect(BitSet matches) {
+            if (bitmap != null) {
+                matches.and(bitmap);
+                return matches;
+            }
+            BitSet kept = new BitSet();
+            for (int position : positions) {
+                if (matches.get(position)) {
+                    kept.set(position);
+                }
+            }
+            return kept;
+        }
+
+        /**
+         * Counts the matches that are also in these positions, without modifying the matches.
+         * @param matches The matching positions.
+         * @param scratch A bitmap that may be overwritten.
+         * @return The number of positions in both.
+         */
+        int countIn(BitSet matches, BitSet scratch) {
+            if (bitmap != null) {
+                scratch.clear();
+                scratch.or(matches);
+                scratch.and(bitmap);
+                return scratch.cardinality();
+            }
+            int count = 0;
+            for (int position : positions) {
+                if (matches.get(position)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * A growable list of positions, used while the index is built.
+     */
+    private static class PositionList {
+        private int[] values = new int[4];
+        private int length;
+
+        void add(int value) {
+            if (length == values.length) {
+                values = Arrays.copyOf(values, length * 2);
+            }
+            values[length++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, length);
+        }
+    }
+}
@@ -13,6 +13,7 @@
  */
 package com.google.businessmessages.cart;
 
+import java.time.ZoneId;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -34,10 +35,14 @@ public interface BotConstants {
         String BOT_AGENT_NAME = "BM Cart Bot";
 
         //List of filter names
-        int NUM_SUPPORTED_FILTERS = 3;
         String COLOR_FILTER_NAME = "color";
         String BRAND_FILTER_NAME = "brand";
         String SIZE_FILTER_NAME = "size";
+        String PRICE_FILTER_NAME = "price";
+        String SORT_FILTER_NAME = "sort";
+        //The filters the user must set before the inventory is shown
+        ImmutableList<String> REQUIRED_FILTER_NAMES = ImmutableList.of(SIZE_FILTER_NAME, BRAND_FILTER_NAME,
+                COLOR_FILTER_NAME);
 
         //The context expected when the BM widget context is empty
         String EMPTY_CONTEXT_STRING = "none";
@@ -66,6 +71,7 @@ public interface BotConstants {
         String CHOOSE_STORE_ADDRESS_TEXT = "Choose this Store";
         String CANCEL_TEXT = "Cancel";
         String CHECK_IN_TEXT = "Check In";
+        String MORE_RESULTS_TEXT = "More Results";
 
         // List of recognized commands to produce certain responses
         String INIT_FILTER_COMMAND = "init-filter-";
@@ -86,6 +92,7 @@ public interface BotConstants {
         String GCAL_LINK_COMMAND = "open-cal-url-";
         String CHECK_IN_COMMAND = "check-in-";
         String CHOOSE_PARKING_COMMAND = "choose-parking-";
+        String MORE_RESULTS_COMMAND = "more-results-";
         String HELP_COMMAND = "^help.*|^commands\\s.*|see the help menu";
 
         //List of pickup properties for callbacks
@@ -113,6 +120,7 @@ public interface BotConstants {
         String GCAL_LINK_POSTBACK = GCAL_LINK_COMMAND + "%s";
         String CHECK_IN_POSTBACK = CHECK_IN_COMMAND + "%s";
         String CHOOSE_PARKING_SLOT_POSTBACK = CHOOSE_PARKING_COMMAND + "%d";
+        String MORE_RESULTS_POSTBACK = MORE_RESULTS_COMMAND + "%s";
 
         //Link to mock website
         String STORE_SITE_LINK = "http://localhost:8000";
@@ -141,9 +149,20 @@ public interface BotConstants {
 
         String PLACED_ORDER_RESPONSE_TEXT = "Thanks for placing an order! 🛍 Psst! To schedule a pickup, click below! ⬇️";
 
+        String ORDER_SOLD_OUT_RESPONSE_TEXT = "Oh no! 😢 Something in your cart just sold out, so your order wasn't placed. "
+                + "Take a look at your cart and try again!";
+
+        String ORDER_FAILED_RESPONSE_TEXT = "Sorry, we weren't able to place your order. Please try again in a moment!";
+
         String PICKUP_CHOOSE_STORE_ADDRESS_TEXT = "Way to go! 🙌 We will have this pickup scheduled in no time!\n\n"
                 + "First, let's choose a pickup location.";
 
+        String PICKUP_NO_SINGLE_STORE_TEXT = "Sorry, no single store has everything in this order, so it can't be "
+                + "picked up in one place. Please reach out to us and we'll help you get it!";
+
+        String CART_NO_SINGLE_STORE_TEXT = "Heads up! No single store has everything in your cart, so it can't all be "
+                + "picked up in one place. Remove an item to keep shopping for things you can pick up together!";
+
         String PICKUP_CHOOSE_TIME_TEXT = "I've got that %s down! Next, let's choose a pickup time!";
 
         String PICKUP_SCHEDULE_COMPLETED_TEXT = "Nice! I've got your pickup scheduled! 😊 I hope the details below look okay!";
@@ -155,6 +174,9 @@ public interface BotConstants {
                 + "If you change your mind, you can always click schedule pickup again!";
 
         String VIEW_PICKUPS_RESPONSE_TEXT = "Here are your scheduled pickups!";
+
+        String RATE_LIMITED_RESPONSE_TEXT = "Whoa, slow down! 😅 I'm still working on your last few messages. "
+                + "Give me a second and try again!";
         
         String CHECK_IN_RESPONSE_TEXT = "Ooh, nice! What parking spot are you in?";
 
@@ -164,6 +186,13 @@ public interface BotConstants {
         String NO_PICKUPS_TEXT = "You don't have any pickups scheduled at this time!"
                 + "But we can always fix that! 😉";
         
+        String CART_SUBTOTAL_RESPONSE_TEXT = "Your cart subtotal is %s. 🛒";
+
+        String RECOMMENDATIONS_RESPONSE_TEXT = "You might also like these! 👀";
+
+        String OUT_OF_STOCK_RESPONSE_TEXT = "Oh no! 😢 %s just sold out. Check back soon, or take a look at "
+                + "what else we have in store!";
+
         String NO_CART_ITEMS_TEXT = "You don't have any items in your cart at this time!"
         + "But we can always fix that! 😉";
 
@@ -225,13 +254,13 @@ public interface BotConstants {
                 NEW_YORK_STORE_NAME, 
                         "https://www.google.com/maps/place/Google+NYC:+8510+Building/@40.7420814,-74.0072099,17z/data=!4m8!1m2!2m1!1sgoogl+new+york!3m4!1s0x89c259c0b6279809:0xf0f85f5d47fed64c!8m2!3d40.7434001!4d-74.0079724");
 
-        ImmutableMap<String, Integer> STORE_NAME_TO_TIME_ZONE_OFFSET = ImmutableMap.of(
+        ImmutableMap<String, ZoneId> STORE_NAME_TO_ZONE = ImmutableMap.of(
                 MOUNTAIN_VIEW_STORE_NAME, 
-                        7,
+                        ZoneId.of("America/Los_Angeles"),
                 KIRKLAND_STORE_NAME, 
-                        7,
+                        ZoneId.of("America/Los_Angeles"),
                 NEW_YORK_STORE_NAME, 
-                        4);
+                        ZoneId.of("America/New_York"));
 
         //Data pertaining to pickup time slots
         int TIME_SLOT_DURATION = 2;
@@ -274,6 +303,17 @@ public interface BotConstants {
         String SIZE_CARD_IMAGE = "https://storage.googleapis.com/rbm-boot-camp-15.appspot.com/bot_assets/size_card_image.jpg";
         ImmutableList<String> SIZE_LIST = ImmutableList.of("5", "6", "7", "8", "9", "10", "11", "12");
 
+        // Price ranges in dollars, as "min-max" with max exclusive, or "min+" for no upper bound
+        ImmutableList<String> PRICE_LIST = ImmutableList.of("All", "0-75", "75-100", "100-125", "125+");
+
+        String SORT_FEATURED = "Featured";
+        String SORT_LOWEST_PRICE = "Lowest Price";
+        String SORT_HIGHEST_PRICE = "Highest Price";
+        ImmutableList<String> SORT_LIST = ImmutableList.of(SORT_FEATURED, SORT_LOWEST_PRICE, SORT_HIGHEST_PRICE);
+
+        // Items list the stores they can be picked up at under this property, by lowercase store name
+        String STORE_FILTER_NAME = "store";
+
         ImmutableMap<String, String> INVENTORY_IMAGES = ImmutableMap.copyOf(new HashMap<String, String>() {{
                 put("Asics Blue Running Shoes",
                         "https://storage.googleapis.com/rbm-boot-camp-15.appspot.com/bot_assets/blue_running_shoes.jpeg");
@@ -303,6 +343,23 @@ public interface BotConstants {
                         "https://storage.googleapis.com/rbm-boot-camp-15.appspot.com/bot_assets/pink_purple_running_shoes.jpeg");
         }});
 
+        // Prices of the mock inventory in cents
+        ImmutableMap<String, Long> INVENTORY_PRICES = ImmutableMap.<String, Long>builder()
+                .put("Asics Blue Running Shoes", 8999L)
+                .put("Adidas Neon Running Shoes", 11999L)
+                .put("Asics Pink Running Shoes", 8999L)
+                .put("Asics Purple Running Shoes", 9499L)
+                .put("Asics White Running Shoes", 7999L)
+                .put("Nike Neon and Grey Running Shoes", 12999L)
+                .put("New Balance Black Running Shoes", 10999L)
+                .put("New Balance White Running Shoes", 10999L)
+                .put("Nike Neon Blue Running Shoes", 13999L)
+                .put("Nike Navy Running Shoes", 11499L)
+                .put("Asics Neon Orange Running Shoes", 6999L)
+                .put("New Balance Neon Pink Running Shoes", 9999L)
+                .put("Asics Pink and Purple Running Shoes", 7499L)
+                .build();
+
         ImmutableMap<String, Map<String, List<String>>> INVENTORY_PROPERTIES = ImmutableMap.copyOf(new HashMap<String, Map<String, List<String>>>() {{
                 put("Asics Blue Running Shoes", 
                         ImmutableMap.of(
@@ -319,7 +376,9 @@ public interface BotConstants {
                                 "color", 
                                 Arrays.asList("neon"),
                                 "brand", 
-                                Arrays.asList("adidas")));
+                                Arrays.asList("adidas"),
+                                "store",
+                                Arrays.asList("g-shoes mountain view")));
                 put("Asics Pink Running Shoes", 
                         ImmutableMap.of(
                                 "size", 
@@ -351,7 +410,9 @@ public interface BotConstants {
                                 "color", 
                                 Arrays.asList("neon", "grey"),
                                 "brand", 
-                                Arrays.asList("nike")));
+                                Arrays.asList("nike"),
+                                "store",
+                                Arrays.asList("g-shoes kirkland", "g-shoes new york")));
                 put("New Balance Black Running Shoes", 
                         ImmutableMap.of(
                                 "size", 
@@ -359,7 +420,9 @@ public interface BotConstants {
                                 "color", 
                                 Arrays.asList("black"),
                                 "brand", 
-                                Arrays.asList("new balance")));
+                                Arrays.asList("new balance"),
+                                "store",
+                                Arrays.asList("g-shoes kirkland")));
                 put("New Balance White Running Shoes", 
                         ImmutableMap.of(
                                 "size", 
@@ -407,6 +470,8 @@ public interface BotConstants {
                                 "color", 
                                 Arrays.asList("pink", "purple"),
                                 "brand", 
-                                Arrays.asList("asics")));
+                                Arrays.asList("asics"),
+                                "store",
+                                Arrays.asList("g-shoes mountain view", "g-shoes new york")));
         }});
 }
@@ -0,0 +1,162 @@
+package com.google.businessmessages.cart;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesCardContent;
+import com.google.common.cache.CacheBuilder;
+import com.google.communications.businessmessages.v1.MediaHeight;
+
+/**
+ * Cache of the rendered shop and cart cards of inventory items. Everything on an item's card
+ * except its description is fixed for as long as its inventory snapshot is current, so each
+ * snapshot holds its own cache, keyed by item id, and a new snapshot starts with an empty one.
+ *
+ * A cached card holds its fixed parts both as a BusinessMessagesCardContent, whose title,
+ * media and suggestions are shared by every card built from it, and serialized to JSON, so a
+ * rich card message can be rendered by splicing the cached bytes around the per-request
+ * descriptions, in the same way as a ResponseTemplate.
+ *
+ * Cards link their images by thumbnail or by the versioned URLs of the MediaRegistry, so each
+ * card records the URL it links and is rebuilt the next time it is used once that URL changes.
+ */
+public class CardCache {
+    private static final int MAX_CACHED_CARDS = 10000;
+    private static final byte[] STANDALONE_CARD_START = bytes("{\"standaloneCard\":{\"cardContent\":");
+    private static final byte[] STANDALONE_CARD_END = bytes("}}");
+    private static final byte[] CAROUSEL_CARD_START = bytes("{\"carouselCard\":{\"cardWidth\":\""
+        + UIManager.CAROUSEL_CARD_WIDTH + "\",\"cardContents\":[");
+    private static final byte[] CAROUSEL_CARD_END = bytes("]}}");
+    private static final byte[] DESCRIPTION_FIELD = bytes(",\"description\":");
+
+    private final Map<String, CachedCard> shopCards = newCache();
+    private final Map<String, CachedCard> cartCards = newCache();
+
+    /**
+     * The fixed parts of an item's card.
+     */
+    public static class CachedCard {
+        private final BusinessMessagesCardContent template;
+        // The template serialized without the enclosing braces
+        private final byte[] staticFields;
+        // The URL of the item's image and the URL the card links it by
+        private final String mediaUrl;
+        private final String linkedMediaUrl;
+
+        CachedCard(BusinessMessagesCardContent template, String mediaUrl) {
+            this.template = template;
+            this.mediaUrl = mediaUrl;
+            this.linkedMediaUrl = template.getMedia().getContentInfo().getFileUrl();
+            byte[] json = MessageJsonWriter.toJson(template);
+            this.staticFields = Arrays.copyOfRange(json, 1, json.length - 1);
+        }
+
+        /**
+         * Gets the card without a description. It is shared, so it must not be modified.
+         * @return template The card template.
+         */
+        public BusinessMessagesCardContent getTemplate() {
+            return this.template;
+        }
+
+        /**
+         * Checks whether the card links the current version of its image.
+         * @return True if the URL the image is linked by has not changed since the card was built.
+         */
+        public boolean isCurrent() {
+            return Objects.equals(linkedMediaUrl, UIManager.getLinkedUrl(mediaUrl,
+                MediaHeight.valueOf(template.getMedia().getHeight())));
+        }
+
+        /**
+         * Builds the card with the given description, sharing the template's other parts.
+         * @param description The description of the card.
+         * @return The complete card.
+         */
+        public BusinessMessagesCardContent withDescription(String description) {
+            return new BusinessMessagesCardContent()
+                .setTitle(template.getTitle())
+                .setDescription(description)
+                .setSuggestions(template.getSuggestions())
+                .setMedia(template.getMedia());
+        }
+
+        private void writeJson(MessageJsonWriter writer, String description) {
+            writer.writeRaw('{');
+            writer.writeRaw(staticFields);
+            if (description != null) {
+                writer.writeRaw(DESCRIPTION_FIELD);
+                writer.writeString(description);
+            }
+            writer.writeRaw('}');
+        }
+    }
+
+    /**
+     * Gets the shop card of an item, building it on first use.
+     * @param item The item in this cache's inventory snapshot.
+     * @return The cached card.
+     */
+    public CachedCard getShopCard(InventoryItem item) {
+        return getCard(shopCards, item, UIManager::getShopCardTemplate);
+    }
+
+    /**
+     * Gets the cart card of an item, building it on first use.
+     * @param item The item in this cache's inventory snapshot.
+     * @return The cached card.
+     */
+    public CachedCard getCartCard(InventoryItem item) {
+        return getCard(cartCards, item, UIManager::getCartCardTemplate);
+    }
+
+    /**
+     * Renders cards as the JSON of a rich card: a standalone card if there is a single card
+     * and a carousel otherwise.
+     * @param cards The cards to render.
+     * @param descriptions The description of each card, in the same order.
+     * @return The rich card serialized as UTF-8 JSON.
+     */
+    public static byte[] renderRichCard(List<CachedCard> cards, List<String> descriptions) {
+        return MessageJsonWriter.render(writer -> {
+            if (cards.size() == 1) {
+                writer.writeRaw(STANDALONE_CARD_START);
+                cards.get(0).writeJson(writer, descriptions.get(0));
+                writer.writeRaw(STANDALONE_CARD_END);
+            } else {
+                writer.writeRaw(CAROUSEL_CARD_START);
+                for (int i = 0; i < cards.size(); i++) {
+                    if (i > 0) {
+                        writer.writeRaw(',');
+                    }
+                    cards.get(i).writeJson(writer, descriptions.get(i));
+                }
+                writer.writeRaw(CAROUSEL_CARD_END);
+            }
+        });
+    }
+
+    private static CachedCard getCard(Map<String, CachedCard> cards, InventoryItem item,
+            Function<InventoryItem, BusinessMessagesCardContent> builder) {
+        CachedCard card = cards.get(item.getId());
+        if (card == null || !card.isCurrent()) {
+            card = new CachedCard(builder.apply(item), item.getMediaUrl());
+            cards.put(item.getId(), card);
+        }
+        return card;
+    }
+
+    private static Map<String, CachedCard> newCache() {
+        return CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_CARDS)
+            .<String, CachedCard>build()
+            .asMap();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
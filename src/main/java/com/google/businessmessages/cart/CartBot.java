@@ -15,17 +15,26 @@ package com.google.businessmessages.cart;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.GenericUrl;
 import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.Json;
 import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.services.businessmessages.v1.Businessmessages;
 import com.google.api.services.businessmessages.v1.model.BusinessMessagesCardContent;
@@ -37,6 +46,7 @@ import com.google.api.services.businessmessages.v1.model.BusinessMessagesRichCar
 import com.google.api.services.businessmessages.v1.model.BusinessMessagesStandaloneCard;
 import com.google.api.services.businessmessages.v1.model.BusinessMessagesSuggestion;
 import com.google.api.services.businessmessages.v1.model.BusinessMessagesSurvey;
+import com.google.common.collect.ImmutableList;
 import com.google.communications.businessmessages.v1.EventType;
 import com.google.communications.businessmessages.v1.RepresentativeType;
 
@@ -51,26 +61,27 @@ public class CartBot {
   // Object to maintain OAuth2 credentials to call the BM API
   private GoogleCredential credential;
 
-  // Reference to the BM api builder
-  private Businessmessages.Builder builder;
+  // Reference to the BM api client
+  private Businessmessages bmApi;
 
   // The current representative
   private BusinessMessagesRepresentative representative;
 
-  //Store inventory object
-  private final Inventory storeInventory;
-
-  //User's cart
-  private Cart userCart;
+  //User's data for the message currently being handled
+  private TurnContext turnContext;
 
   public CartBot(BusinessMessagesRepresentative representative) {
     this.representative = representative;
-    this.storeInventory = new MockInventory(BotConstants.INVENTORY_IMAGES, BotConstants.INVENTORY_PROPERTIES);
     initBmApi();
   }
 
-  public void setUserCart(String conversationId) {
-    this.userCart = CartManager.getOrCreateCart(conversationId);
+  /**
+   * Starts a new turn for the user. All user data read while handling the turn is memoized
+   * in the turn's context.
+   * @param conversationId The conversation ID that uniquely maps to the user and agent.
+   */
+  public void startTurn(String conversationId) {
+    this.turnContext = new TurnContext(conversationId);
   }
 
   /**
@@ -82,22 +93,22 @@ public class CartBot {
    * @param conversationId The conversation ID that uniquely maps to the user and agent.
    */
   public void routeMessage(String message, String context, String conversationId) {
-    //initialize user's cart
-    this.setUserCart(conversationId);
+    //initialize the user's data for this turn
+    this.startTurn(conversationId);
 
     //begin parsing message
     String normalizedMessage = message.toLowerCase().trim();
 
     if (normalizedMessage.matches(BotConstants.HELP_COMMAND)) {
-      sendResponse(BotConstants.HELP_RESPONSE_TEXT, conversationId);
+      sendTemplateResponse(ResponseTemplate.HELP, null, UIManager.getDefaultMenu(turnContext), conversationId);
     } else if (normalizedMessage.matches(BotConstants.HOURS_COMMAND)) {
-      sendResponse(BotConstants.HOURS_RESPONSE_TEXT, conversationId);
+      sendTemplateResponse(ResponseTemplate.HOURS, null, UIManager.getDefaultMenu(turnContext), conversationId);
     } else if (normalizedMessage.startsWith(BotConstants.INIT_FILTER_COMMAND)) {
       sendFilterSelections(normalizedMessage, conversationId);
     } else if (normalizedMessage.matches(BotConstants.SHOP_COMMAND)) {
       sendInventoryCarousel(context, conversationId);
     } else if (normalizedMessage.matches(BotConstants.VIEW_CART_COMMAND)) {
-      if (userCart.getItems().size() > 1) sendCartCarousel(conversationId);
+      if (turnContext.getCart().getItems().size() > 1) sendCartCarousel(conversationId);
       else sendSingleCartItem(conversationId);
     } else if (normalizedMessage.startsWith(BotConstants.ADD_ITEM_COMMAND)) {
       addItemToCart(normalizedMessage, conversationId);
@@ -123,12 +134,31 @@ public class CartBot {
       sendCheckinResponse(normalizedMessage, conversationId);
     } else if (normalizedMessage.startsWith(BotConstants.CHOOSE_PARKING_COMMAND)) {
       sendChooseParkingResponse(normalizedMessage, conversationId);
+    } else if (normalizedMessage.startsWith(BotConstants.MORE_RESULTS_COMMAND)) {
+      sendInventoryPage(normalizedMessage.substring(BotConstants.MORE_RESULTS_COMMAND.length()), context,
+          conversationId);
     } else if (!normalizedMessage.equals(BotConstants.CHECKOUT_COMMAND)
       && !normalizedMessage.equals(BotConstants.VIEW_PROD_DETAILS_COMMAND)) {
-      sendResponse(BotConstants.DEFAULT_RESPONSE_TEXT, conversationId);
+      sendSearchResults(normalizedMessage, conversationId);
     }
   }
 
+  /**
+   * Answers a free-text message with the inventory items that best match it. If nothing
+   * in the inventory matches, the default response is sent instead.
+   * @param normalizedMessage The text typed by the user.
+   * @param conversationId The conversation ID that uniquely maps to the user and agent.
+   */
+  private void sendSearchResults(String normalizedMessage, String conversationId) {
+    List<InventoryItem> results = turnContext.getInventorySnapshot().getSearchIndex()
+        .search(normalizedMessage, InventoryPager.PAGE_SIZE);
+    if (results.isEmpty()) {
+      sendTemplateResponse(ResponseTemplate.DEFAULT, null, UIManager.getDefaultMenu(turnContext), conversationId);
+      return;
+    }
+    sendInventoryItems(results, UIManager.getDefaultMenu(turnContext), conversationId);
+  }
+
   /**
    * Sends a response to the user when the user checks in for a scheduled pickup.
    * Prompts the user to select the parking spot that they are in so the associate knows
@@ -139,16 +169,8 @@ public class CartBot {
   private void sendCheckinResponse(String normalizedMessage, String conversationId) {
     String orderId = normalizedMessage.substring(BotConstants.CHECK_IN_COMMAND.length());
     PickupManager.updatePickupProperties(conversationId, orderId, BotConstants.PICKUP_STATUS, Pickup.Status.CHECKED_IN);
-    try {
-      sendResponse(new BusinessMessagesMessage()
-          .setMessageId(UUID.randomUUID().toString())
-          .setText(BotConstants.CHECK_IN_RESPONSE_TEXT)
-          .setRepresentative(representative)
-          .setFallback(BotConstants.CHECK_IN_RESPONSE_TEXT)
-          .setSuggestions(UIManager.getParkingSpotSuggestions()), conversationId);
-    } catch (Exception e) {
-      logger.log(Level.SEVERE, "Exception thrown while sending response.", e);
-    }
+    turnContext.invalidatePickups();
+    sendTemplateResponse(ResponseTemplate.CHECK_IN, null, null, conversationId);
   }
 
   /**
@@ -158,7 +180,7 @@ public class CartBot {
   private void sendPickupCSAT(String conversationId) {
     try {
       Businessmessages.Conversations.Surveys.Create request
-          = builder.build().conversations().surveys()
+          = bmApi.conversations().surveys()
           .create("conversations/" + conversationId,
               new BusinessMessagesSurvey());
 
@@ -179,12 +201,8 @@ public class CartBot {
   private void sendChooseParkingResponse(String normalizedMessage, String conversationId) {
     try {
       String parkingSpot = normalizedMessage.substring(BotConstants.CHOOSE_PARKING_COMMAND.length());
-      sendResponse(new BusinessMessagesMessage()
-          .setMessageId(UUID.randomUUID().toString())
-          .setText(String.format(BotConstants.PARKING_SPOT_RESPONSE_TEXT, parkingSpot))
-          .setRepresentative(representative)
-          .setFallback(String.format(BotConstants.PARKING_SPOT_RESPONSE_TEXT, parkingSpot))
-          .setSuggestions(UIManager.getCheckinSuggestions()), conversationId);
+      sendSuggestionSetResponse(String.format(BotConstants.PARKING_SPOT_RESPONSE_TEXT, parkingSpot),
+          UIManager.getCheckinSuggestions(), conversationId);
       sendPickupCSAT(conversationId);
     } catch (Exception e) {
       logger.log(Level.SEVERE, "Exception thrown while sending response.", e);
@@ -203,38 +221,39 @@ public class CartBot {
     String[] orderIdAndPayload = normalizedMessage.substring(BotConstants.SCHEDULE_PICKUP_COMMAND.length())
                                                   .split("-", 2);
     if (orderIdAndPayload.length == 0) {
-      sendResponse(BotConstants.DEFAULT_RESPONSE_TEXT, conversationId);
+      sendTemplateResponse(ResponseTemplate.DEFAULT, null, UIManager.getDefaultMenu(turnContext), conversationId);
       return;
     }
     String orderId = orderIdAndPayload[0]; 
     if (orderIdAndPayload.length == 1) {
       //initial part of the workflow
       PickupManager.addPickup(conversationId, orderId);
-      sendTextResponse(BotConstants.PICKUP_CHOOSE_STORE_ADDRESS_TEXT, conversationId);
+      turnContext.invalidatePickups();
       sendStoreAddressCarousel(conversationId, orderId);
     } else {
       String payload = orderIdAndPayload[1];
       if (payload.startsWith(BotConstants.PICKUP_STORE_ADDRESS)) {
         String storeName = payload.substring(BotConstants.PICKUP_STORE_ADDRESS.length());
         PickupManager.updatePickupProperties(conversationId, orderId, BotConstants.PICKUP_STORE_ADDRESS, storeName);
+        turnContext.invalidatePickups();
         sendTextResponse(
           String.format(BotConstants.PICKUP_CHOOSE_TIME_TEXT, storeName), 
           conversationId);
         sendPickupTimesCarousel(conversationId, orderId);
       } else if (payload.startsWith(BotConstants.PICKUP_DATE)) {
-        int storeTimeZone = BotConstants.STORE_NAME_TO_TIME_ZONE_OFFSET
-          .get(PickupManager.getPickup(conversationId, orderId)
+        ZoneId storeZone = PickupSlots.getZone(turnContext.getPickup(orderId)
           .getStoreAddress());
         String dateString = payload.substring(BotConstants.PICKUP_DATE.length());
         PickupManager.updatePickupProperties(conversationId, 
           orderId, 
           BotConstants.PICKUP_DATE, 
-          PickupManager.createPickupDate(storeTimeZone, dateString));
+          PickupManager.createPickupDate(storeZone, dateString));
         PickupManager.updatePickupProperties(conversationId, 
           orderId, 
           BotConstants.PICKUP_STATUS,
           Pickup.Status.SCHEDULED);
-        Pickup currentPickup = PickupManager.getPickup(conversationId, orderId);
+        turnContext.invalidatePickups();
+        Pickup currentPickup = turnContext.getPickup(orderId);
         sendTextResponse(BotConstants.PICKUP_SCHEDULE_COMPLETED_TEXT, conversationId);
         sendTextResponse(BotConstants.PICKUP_SCHEDULE_COMPLETED_TEXT_2, conversationId);
         sendPickupConfirmation(conversationId, currentPickup);
@@ -251,6 +270,7 @@ public class CartBot {
   private void sendCancelPickupResponse(String normalizedMessage, String conversationId) {
     String orderId = normalizedMessage.substring(BotConstants.CANCEL_PICKUP_COMMAND.length());
     PickupManager.cancelPickup(conversationId, orderId);
+    turnContext.invalidatePickups();
     sendResponse(BotConstants.PICKUP_CANCELED_TEXT, conversationId);
   }
 
@@ -264,6 +284,7 @@ public class CartBot {
     String orderId = normalizedMessage.substring(BotConstants.GCAL_LINK_COMMAND.length());
     PickupManager.updatePickupProperties(conversationId, orderId, 
       BotConstants.PICKUP_ADDED_CALENDAR, BotConstants.PICKUP_ADDED_CALENDAR_TRUE);
+    turnContext.invalidatePickups();
   }
 
   /**
@@ -275,14 +296,50 @@ public class CartBot {
   public void addItemToCart(String message, String conversationId) {
     String itemId = message.substring(BotConstants.ADD_ITEM_COMMAND.length());
     try {
-      InventoryItem itemToAdd = storeInventory.getItem(itemId).get();
-      this.userCart = CartManager.addItem(this.userCart.getId(), itemToAdd.getId(), itemToAdd.getTitle());
+      InventoryItem itemToAdd = turnContext.getInventory().getItem(itemId).get();
+      if (!StockLedger.getInstance().reserve(turnContext.getCart().getId(), itemToAdd.getId())) {
+        sendResponse(String.format(BotConstants.OUT_OF_STOCK_RESPONSE_TEXT, itemToAdd.getTitle()), conversationId);
+        return;
+      }
+      turnContext.setCart(CartManager.addItem(turnContext.getConversationId(), turnContext.getCart().getId(), itemToAdd.getId(), itemToAdd.getTitle()));
       sendResponse(itemToAdd.getTitle() + " have been added to your cart.", conversationId);
+      List<String> pickupStores = getCartPickupStores();
+      if (pickupStores != null && pickupStores.isEmpty()) {
+        sendResponse(BotConstants.CART_NO_SINGLE_STORE_TEXT, conversationId);
+        return;
+      }
+      sendRecommendations(itemToAdd.getId(), conversationId);
     } catch (NoSuchElementException e) {
       logger.log(Level.SEVERE, "Attempted to add item not in inventory.", e);
     }
   }
 
+  /**
+   * Sends the items most often bought together with an item the user just added to their
+   * cart, leaving out items that are already in the cart, sold out or no longer in the store.
+   * Nothing is sent if there are none.
+   * @param itemId The unique id of the item added to the cart.
+   * @param conversationId The unique id that maps from the agent to the user.
+   */
+  private void sendRecommendations(String itemId, String conversationId) {
+    Inventory inventory = turnContext.getInventory();
+    List<String> cartItemIds = turnContext.getCart().getItems().stream()
+        .map(CartItem::getId)
+        .collect(Collectors.toList());
+    List<InventoryItem> recommendations = CoPurchaseModel.getInstance().getNeighbors(itemId).stream()
+        .filter(neighborId -> !cartItemIds.contains(neighborId)
+            && StockLedger.getInstance().getAvailable(neighborId) > 0)
+        .map(inventory::getItem)
+        .filter(Optional::isPresent)
+        .map(Optional::get)
+        .collect(Collectors.toList());
+    if (recommendations.isEmpty()) {
+      return;
+    }
+    sendResponse(BotConstants.RECOMMENDATIONS_RESPONSE_TEXT, conversationId);
+    sendInventoryItems(recommendations, UIManager.getDefaultMenu(turnContext), conversationId);
+  }
+
   /**
    * Deletes specified item from the user's cart.
    * @param message The message that contains which item to delete from the cart.
@@ -291,8 +348,9 @@ public class CartBot {
   public void deleteItemFromCart(String message, String conversationId) {
     String itemId = message.substring(BotConstants.DELETE_ITEM_COMMAND.length());
     try {
-      InventoryItem itemToDelete = storeInventory.getItem(itemId).get();
-      this.userCart = CartManager.deleteItem(this.userCart.getId(), itemToDelete.getId());
+      InventoryItem itemToDelete = turnContext.getInventory().getItem(itemId).get();
+      turnContext.setCart(CartManager.deleteItem(turnContext.getConversationId(), turnContext.getCart().getId(), itemToDelete.getId()));
+      StockLedger.getInstance().release(turnContext.getCart().getId(), itemToDelete.getId());
       sendResponse(itemToDelete.getTitle() + " have been deleted from your cart.", conversationId);
     } catch (NoSuchElementException e) {
       logger.log(Level.SEVERE, "Attempted to delete item not in inventory.", e);
@@ -319,12 +377,17 @@ public class CartBot {
       filterName = BotConstants.BRAND_FILTER_NAME;
     } else if (filterNameAndValue.startsWith(BotConstants.SIZE_FILTER_NAME)) {
       filterName = BotConstants.SIZE_FILTER_NAME;
+    } else if (filterNameAndValue.startsWith(BotConstants.PRICE_FILTER_NAME)) {
+      filterName = BotConstants.PRICE_FILTER_NAME;
+    } else if (filterNameAndValue.startsWith(BotConstants.SORT_FILTER_NAME)) {
+      filterName = BotConstants.SORT_FILTER_NAME;
     } else {
       logger.log(Level.SEVERE, "Attempted to set invalid filter. The entered filter name and value: " + filterNameAndValue);
       return;
     }
     filterValue = filterNameAndValue.substring(filterName.length() + 1);
     FilterManager.setFilter(conversationId, filterName, filterValue);
+    turnContext.invalidateFilters();
     if (message.startsWith(BotConstants.SET_FILTER_COMMAND)) {
       sendResponse(String.format(BotConstants.SET_FILTER_RESPONSE_TEXT, filterName, filterValue), conversationId);
     }
@@ -342,11 +405,16 @@ public class CartBot {
       filterName = BotConstants.COLOR_FILTER_NAME;
     } else if (filterNameAndValue.startsWith(BotConstants.BRAND_FILTER_NAME)) {
       filterName = BotConstants.BRAND_FILTER_NAME;
+    } else if (filterNameAndValue.startsWith(BotConstants.PRICE_FILTER_NAME)) {
+      filterName = BotConstants.PRICE_FILTER_NAME;
+    } else if (filterNameAndValue.startsWith(BotConstants.SORT_FILTER_NAME)) {
+      filterName = BotConstants.SORT_FILTER_NAME;
     } else {
       logger.log(Level.SEVERE, "Attempted to remove invalid filter. The entered filter name and value: " + filterNameAndValue);
       return;
     }
     FilterManager.removeFilter(conversationId, filterName);
+    turnContext.invalidateFilters();
     sendResponse(String.format(BotConstants.REMOVE_FILTER_RESPONSE_TEXT, filterName), conversationId);
   }
 
@@ -357,21 +425,18 @@ public class CartBot {
    */
   private void sendSingleCartItem(String conversationId) {
     try {
-      List<BusinessMessagesSuggestion> suggestions = UIManager.getDefaultMenu(conversationId, this.userCart);
+      List<BusinessMessagesSuggestion> suggestions = UIManager.getDefaultMenu(turnContext);
 
-      BusinessMessagesStandaloneCard standaloneCard = UIManager.getCartCard(this.storeInventory, this.userCart);
-      String fallbackText = standaloneCard.getCardContent().getTitle() + "\n\n"
-          + standaloneCard.getCardContent().getDescription() + "\n\n"
-          + standaloneCard.getCardContent().getMedia().getContentInfo().getFileUrl();
+      List<CardCache.CachedCard> cards = new ArrayList<>();
+      List<String> descriptions = new ArrayList<>();
+      addCartCards(cards, descriptions);
+      if (cards.isEmpty()) {
+        sendResponse(BotConstants.NO_CART_ITEMS_TEXT, conversationId);
+        return;
+      }
 
       // Send the rich card message and suggestions to the user
-      sendResponse(new BusinessMessagesMessage()
-          .setMessageId(UUID.randomUUID().toString())
-          .setRichCard(new BusinessMessagesRichCard()
-              .setStandaloneCard(standaloneCard))
-          .setRepresentative(representative)
-          .setFallback(fallbackText)
-          .setSuggestions(suggestions), conversationId);
+      sendCardResponse(cards, descriptions, suggestions, conversationId);
     } catch (Exception e) {
       logger.log(Level.SEVERE, "Exception thrown while sending single cart card.", e);
     }
@@ -385,7 +450,7 @@ public class CartBot {
    */
   private void sendPickupConfirmation(String conversationId, Pickup pickup) {
     try {
-      List<BusinessMessagesSuggestion> suggestions = UIManager.getDefaultMenu(conversationId, this.userCart);
+      List<BusinessMessagesSuggestion> suggestions = UIManager.getDefaultMenu(turnContext);
 
       BusinessMessagesStandaloneCard standaloneCard = UIManager.getPickupCard(pickup);
       String fallbackText = standaloneCard.getCardContent().getTitle() + "\n\n"
@@ -412,8 +477,8 @@ public class CartBot {
    */
   private void sendPickupCarousel(String conversationId) {
     try{
-      List<BusinessMessagesSuggestion> suggestions = UIManager.getDefaultMenu(conversationId, this.userCart);
-      List<Pickup> pickups = PickupManager.getPickupsWithStatus(conversationId, Pickup.Status.SCHEDULED);
+      List<BusinessMessagesSuggestion> suggestions = UIManager.getDefaultMenu(turnContext);
+      List<Pickup> pickups = turnContext.getScheduledPickups();
       if (pickups.isEmpty()) {
         sendResponse(BotConstants.NO_PICKUPS_TEXT, conversationId);
       } else if (pickups.size() == 1) {
@@ -430,7 +495,7 @@ public class CartBot {
             .setFallback(fallbackText)
             .setSuggestions(suggestions), conversationId);
       } else {
-        BusinessMessagesCarouselCard carouselCard = UIManager.getPickupCarousel(PickupManager.getAllPickups(conversationId));
+        BusinessMessagesCarouselCard carouselCard = UIManager.getPickupCarousel(turnContext.getPickups());
 
         StringBuilder fallbackTextBuilder = new StringBuilder();
         for (BusinessMessagesCardContent cardContent : carouselCard.getCardContents()) {
@@ -464,26 +529,33 @@ public class CartBot {
       String filterName = message.substring(BotConstants.SEE_FILTER_OPTIONS_COMMAND.length());
       String responseText = "Here are your options to filter by " + filterName + ".";
 
-      sendResponse(new BusinessMessagesMessage()
-          .setMessageId(UUID.randomUUID().toString())
-          .setText(responseText)
-          .setRepresentative(representative)
-          .setFallback(responseText)
-          .setSuggestions(UIManager.getFilterSuggestions(filterName)), conversationId);
+      sendSuggestionSetResponse(responseText,
+          UIManager.getFilterSuggestions(filterName, getFacetCounts(filterName)), conversationId);
     } catch (Exception e) {
       logger.log(Level.SEVERE, "Exception thrown while sending filter options.", e);
     }
   }
 
+  /**
+   * Counts the inventory items each option of a filter would match, given the user's
+   * other filters.
+   * @param filterName The name of the filter whose options are counted.
+   * @return The number of matching items for each option.
+   */
+  private Map<String, Integer> getFacetCounts(String filterName) {
+    return turnContext.getInventorySnapshot().getFacetCounts(turnContext.getFilters(), filterName,
+        UIManager.getFilterOptions(filterName));
+  }
+
   /**
    * Sends the filter rich card carousel to the user.
    * @param conversationId The unique id mapping between the user and the agent.
    */
   private void sendFilterCarousel(String conversationId) {
     try{
-      List<BusinessMessagesSuggestion> suggestions = UIManager.getDefaultMenu(conversationId, this.userCart);
+      List<BusinessMessagesSuggestion> suggestions = UIManager.getDefaultMenu(turnContext);
 
-      BusinessMessagesCarouselCard carouselCard = UIManager.getFilterCarousel(conversationId);
+      BusinessMessagesCarouselCard carouselCard = UIManager.getFilterCarousel(turnContext);
 
       StringBuilder fallbackTextBuilder = new StringBuilder();
       for (BusinessMessagesCardContent cardContent : carouselCard.getCardContents()) {
@@ -522,13 +594,13 @@ public class CartBot {
     try {
       String filterName;
       String filterResponseText;
-      if (FilterManager.getFilter(conversationId, BotConstants.SIZE_FILTER_NAME) == null) {
+      if (turnContext.getFilter(BotConstants.SIZE_FILTER_NAME) == null) {
         filterName = BotConstants.SIZE_FILTER_NAME;
         filterResponseText = BotConstants.SIZE_FILTER_RESPONSE_TEXT;
-      } else if (FilterManager.getFilter(conversationId, BotConstants.BRAND_FILTER_NAME) == null) {
+      } else if (turnContext.getFilter(BotConstants.BRAND_FILTER_NAME) == null) {
         filterName = BotConstants.BRAND_FILTER_NAME;
         filterResponseText = BotConstants.BRAND_FILTER_RESPONSE_TEXT;
-      } else if (FilterManager.getFilter(conversationId, BotConstants.COLOR_FILTER_NAME) == null) {
+      } else if (turnContext.getFilter(BotConstants.COLOR_FILTER_NAME) == null) {
         filterName = BotConstants.COLOR_FILTER_NAME;
         filterResponseText = BotConstants.COLOR_FILTER_RESPONSE_TEXT;
       } else {
@@ -537,12 +609,8 @@ public class CartBot {
         sendInventoryCarousel(BotConstants.EMPTY_CONTEXT_STRING, conversationId);
         return;
       }
-      sendResponse(new BusinessMessagesMessage()
-        .setMessageId(UUID.randomUUID().toString())
-        .setText(filterResponseText)
-        .setRepresentative(representative)
-        .setFallback(filterResponseText)
-        .setSuggestions(UIManager.getInitFilterSuggestions(filterName)), conversationId);
+      sendSuggestionSetResponse(filterResponseText,
+          UIManager.getInitFilterSuggestions(filterName, getFacetCounts(filterName)), conversationId);
     } catch (Exception e) {
       logger.log(Level.SEVERE, "Exception thrown while initializing filters.", e);
     }
@@ -562,12 +630,8 @@ public class CartBot {
       sendTextResponse(
         String.format(BotConstants.CONTEXT_RESPONSE_TEXT, context), 
         conversationId);
-      sendResponse(new BusinessMessagesMessage()
-        .setMessageId(UUID.randomUUID().toString())
-        .setText(String.format(BotConstants.CONTEXT_RESPONSE_TEXT_2, context))
-        .setRepresentative(representative)
-        .setSuggestions(UIManager.getContextResponseSuggestions())
-        .setFallback(String.format(BotConstants.CONTEXT_RESPONSE_TEXT_2, context)), conversationId);
+      sendTemplateResponse(ResponseTemplate.CONTEXT_SUGGESTIONS,
+        String.format(BotConstants.CONTEXT_RESPONSE_TEXT_2, context), null, conversationId);
     } catch(Exception e) {
       logger.log(Level.SEVERE, "Exception thrown while sending context response where context was: "
         + context + ".");
@@ -587,60 +651,95 @@ public class CartBot {
       sendContextResponse(context, conversationId);
       return;
     }
-    if (FilterManager.getAllFilters(conversationId).size() < BotConstants.NUM_SUPPORTED_FILTERS) {
-      sendFilterSelections(BotConstants.FROM_INVENTORY_CALLBACK, conversationId);
+    for (String filterName : BotConstants.REQUIRED_FILTER_NAMES) {
+      if (turnContext.getFilter(filterName) == null) {
+        sendFilterSelections(BotConstants.FROM_INVENTORY_CALLBACK, conversationId);
+        return;
+      }
+    }
+
+    sendInventoryPage(null, context, conversationId);
+  }
+
+  /**
+   * Sends a page of the inventory items that match the user's filters. If there are more
+   * matching items, a "More Results" suggestion leading to the next page is added. Items
+   * relevant to the widget context, if any, are shown first.
+   * @param cursor The cursor of the page to send, null for the first page.
+   * @param context The items, if any, the user has been searching for.
+   * @param conversationId The conversation ID that uniquely maps to the user and agent.
+   */
+  private void sendInventoryPage(String cursor, String context, String conversationId) {
+    InventorySnapshot snapshot = turnContext.getInventorySnapshot();
+    List<String> pickupStores = getCartPickupStores();
+    if (pickupStores != null && pickupStores.isEmpty()) {
+      sendResponse(BotConstants.CART_NO_SINGLE_STORE_TEXT, conversationId);
       return;
     }
+    InventoryPager.Page page = InventoryPager.getPage(snapshot, conversationId, turnContext.getFilters(),
+        context.equals(BotConstants.EMPTY_CONTEXT_STRING) ? null : context, pickupStores, cursor);
+    List<BusinessMessagesSuggestion> suggestions = UIManager.getDefaultMenu(turnContext);
+    if (page.getNextCursor() != null) {
+      suggestions.add(0, UIManager.getMoreResultsSuggestion(page.getNextCursor()));
+    }
+    sendInventoryItems(page.getItems(), page.getCardTemplates(), suggestions, conversationId);
+  }
+
+  /**
+   * Gets the stores the user's cart can be picked up at, which the shop is restricted to.
+   * @return The names of the stores that stock every item in the cart, empty if no single
+   * store does, null if every item is stocked at every store.
+   */
+  private List<String> getCartPickupStores() {
+    InventorySnapshot snapshot = turnContext.getInventorySnapshot();
+    if (!snapshot.getStoreAvailability().isRestricted()) {
+      return null;
+    }
+    List<String> cartItemIds = turnContext.getCart().getItems().stream()
+        .map(CartItem::getId)
+        .collect(Collectors.toList());
+    return snapshot.getStoreAvailability().getStoresStocking(snapshot.getOrdinals(cartItemIds));
+  }
 
-    List<Filter> filtersMinusAll = FilterManager.getAllFilters(conversationId).stream()
-        .filter(x -> !x.getValue().equals("all")).collect(Collectors.toList());
-    List<InventoryItem> validItems = storeInventory.getInventory().asList()
-      .stream()
-      .filter(item -> {
-        return filtersMinusAll.stream().allMatch(f -> {
-          Optional<ItemProperty> matchingProp = item.getProperties().stream().filter(prop -> prop.getName().equals(f.getName())).findFirst();
-          return matchingProp.map(prop -> prop.getOptions().contains(f.getValue())).orElse(false);
-        });
-      })
-      .collect(Collectors.toList());
+  /**
+   * Sends inventory items to the user, as a standalone card if there is a single item and
+   * as a carousel otherwise.
+   * @param validItems The items to send.
+   * @param suggestions The suggestions to attach to the message.
+   * @param conversationId The conversation ID that uniquely maps to the user and agent.
+   */
+  private void sendInventoryItems(List<InventoryItem> validItems, List<BusinessMessagesSuggestion> suggestions,
+      String conversationId) {
+    sendInventoryItems(validItems, null, suggestions, conversationId);
+  }
 
+  /**
+   * Sends inventory items to the user from their cached shop cards, which only need the
+   * current descriptions filled in.
+   * @param validItems The items to send.
+   * @param cachedCards The prebuilt cards of the items, null to look them up in the card cache.
+   * @param suggestions The suggestions to attach to the message.
+   * @param conversationId The conversation ID that uniquely maps to the user and agent.
+   */
+  private void sendInventoryItems(List<InventoryItem> validItems, List<CardCache.CachedCard> cachedCards,
+      List<BusinessMessagesSuggestion> suggestions, String conversationId) {
     try {
-      List<BusinessMessagesSuggestion> suggestions = UIManager.getDefaultMenu(conversationId, this.userCart);
-
       if (validItems.size() == 0) {
         sendResponse(BotConstants.NO_INVENTORY_RESULTS_RESPONSE_TEXT, conversationId);
-      } else if (validItems.size() == 1) {
-        BusinessMessagesStandaloneCard standaloneCard = UIManager.getShopCard(validItems);
-        String fallbackText = standaloneCard.getCardContent().getTitle() + "\n\n"
-            + standaloneCard.getCardContent().getDescription() + "\n\n"
-            + standaloneCard.getCardContent().getMedia().getContentInfo().getFileUrl();
-
-        // Send the rich card message and suggestions to the user
-        sendResponse(new BusinessMessagesMessage()
-            .setMessageId(UUID.randomUUID().toString())
-            .setRichCard(new BusinessMessagesRichCard().setStandaloneCard(standaloneCard))
-            .setRepresentative(representative)
-            .setFallback(fallbackText)
-            .setSuggestions(suggestions), conversationId);
-      } else {
-        BusinessMessagesCarouselCard carouselCard = UIManager.getShopCarousel(validItems);
-
-        StringBuilder fallbackTextBuilder = new StringBuilder();
-        for (BusinessMessagesCardContent cardContent : carouselCard.getCardContents()) {
-          fallbackTextBuilder.append(cardContent.getTitle() + "\n\n");
-          fallbackTextBuilder.append(cardContent.getDescription() + "\n\n");
-          fallbackTextBuilder.append(cardContent.getMedia().getContentInfo().getFileUrl() + "\n");
-          fallbackTextBuilder.append(("---------------------------------------------\n\n"));
-        }
-  
-        // Send the carousel card message and suggestions to the user
-        sendResponse(new BusinessMessagesMessage()
-            .setMessageId(UUID.randomUUID().toString())
-            .setRichCard(new BusinessMessagesRichCard().setCarouselCard(carouselCard))
-            .setRepresentative(representative)
-            .setFallback(fallbackTextBuilder.toString())
-            .setSuggestions(suggestions), conversationId);
+        return;
+      }
+      CardCache cardCache = turnContext.getInventorySnapshot().getCardCache();
+      List<CardCache.CachedCard> cards = new ArrayList<>();
+      List<String> descriptions = new ArrayList<>();
+      for (int i = 0; i < validItems.size() && i < UIManager.MAX_CAROUSEL_LIMIT; i++) {
+        InventoryItem item = validItems.get(i);
+        cards.add(cachedCards == null || !cachedCards.get(i).isCurrent()
+            ? cardCache.getShopCard(item) : cachedCards.get(i));
+        descriptions.add(UIManager.getShopDescription(item));
       }
+
+      // Send the rich card message and suggestions to the user
+      sendCardResponse(cards, descriptions, suggestions, conversationId);
     } catch (Exception e) {
       logger.log(Level.SEVERE, "Exception thrown while sending inventory carousel.", e);
     }
@@ -653,38 +752,88 @@ public class CartBot {
    */
   private void sendCartCarousel(String conversationId) {
     try {
-      if (userCart.getItems().isEmpty()) {
+      if (turnContext.getCart().getItems().isEmpty()) {
         sendResponse(BotConstants.NO_CART_ITEMS_TEXT, conversationId);
         return;
       }
 
-      List<BusinessMessagesSuggestion> suggestions = UIManager.getDefaultMenu(conversationId, this.userCart);
-
-      BusinessMessagesCarouselCard carouselCard = UIManager.getCartCarousel(this.storeInventory, this.userCart);
+      List<BusinessMessagesSuggestion> suggestions = UIManager.getDefaultMenu(turnContext);
 
-      StringBuilder fallbackTextBuilder = new StringBuilder();
-      for (BusinessMessagesCardContent cardContent : carouselCard.getCardContents()) {
-        fallbackTextBuilder.append(cardContent.getTitle() + "\n\n");
-        fallbackTextBuilder.append(cardContent.getDescription() + "\n\n");
-        fallbackTextBuilder.append(cardContent.getMedia().getContentInfo().getFileUrl() + "\n");
-        fallbackTextBuilder.append(("---------------------------------------------\n\n"));
+      List<CardCache.CachedCard> cards = new ArrayList<>();
+      List<String> descriptions = new ArrayList<>();
+      addCartCards(cards, descriptions);
+      long subtotalCents = CartManager.getSubtotalCents(turnContext.getInventory(),
+          turnContext.getCart().getItems());
+      if (subtotalCents > 0) {
+        sendTextResponse(String.format(BotConstants.CART_SUBTOTAL_RESPONSE_TEXT,
+            PriceIndex.formatPrice(subtotalCents)), conversationId);
       }
 
       // Send the carousel card message and suggestions to the user
-      sendResponse(new BusinessMessagesMessage()
-          .setMessageId(UUID.randomUUID().toString())
-          .setRichCard(new BusinessMessagesRichCard().setCarouselCard(carouselCard))
-          .setRepresentative(representative)
-          .setFallback(fallbackTextBuilder.toString())
-          .setSuggestions(suggestions), conversationId);
+      sendCardResponse(cards, descriptions, suggestions, conversationId);
     } catch (Exception e) {
       logger.log(Level.SEVERE, "Exception thrown while sending cart carousel.", e);
     }
   }
 
+  /**
+   * Collects the cached cart cards of the items in the user's cart along with their current
+   * descriptions.
+   * @param cards The list the cards are added to.
+   * @param descriptions The list the descriptions are added to, in the same order.
+   */
+  private void addCartCards(List<CardCache.CachedCard> cards, List<String> descriptions) {
+    Inventory inventory = turnContext.getInventory();
+    CardCache cardCache = turnContext.getInventorySnapshot().getCardCache();
+    for (CartItem currentItem : turnContext.getCart().getItems()) {
+      Optional<InventoryItem> itemInStore = inventory.getItem(currentItem.getId());
+      if (!itemInStore.isPresent()) {
+        logger.log(Level.SEVERE, "Item in cart not in inventory: " + currentItem.getId());
+        continue;
+      }
+      cards.add(cardCache.getCartCard(itemInStore.get()));
+      descriptions.add(UIManager.getCartDescription(currentItem, itemInStore.get()));
+    }
+  }
+
+  /**
+   * Sends cached cards as a standalone card if there is a single card and as a carousel
+   * otherwise. The message is rendered from the cards' pre-serialized JSON, so only the
+   * descriptions are serialized per message.
+   * @param cards The cards to send.
+   * @param descriptions The description of each card, in the same order.
+   * @param suggestions The suggestions to attach to the message.
+   * @param conversationId The conversation ID that uniquely maps to the user and agent.
+   */
+  private void sendCardResponse(List<CardCache.CachedCard> cards, List<String> descriptions,
+      List<BusinessMessagesSuggestion> suggestions, String conversationId) {
+    String fallbackText;
+    if (cards.size() == 1) {
+      BusinessMessagesCardContent card = cards.get(0).getTemplate();
+      fallbackText = card.getTitle() + "\n\n"
+          + descriptions.get(0) + "\n\n"
+          + card.getMedia().getContentInfo().getFileUrl();
+    } else {
+      StringBuilder fallbackTextBuilder = new StringBuilder();
+      for (int i = 0; i < cards.size(); i++) {
+        BusinessMessagesCardContent card = cards.get(i).getTemplate();
+        fallbackTextBuilder.append(card.getTitle() + "\n\n");
+        fallbackTextBuilder.append(descriptions.get(i) + "\n\n");
+        fallbackTextBuilder.append(card.getMedia().getContentInfo().getFileUrl() + "\n");
+        fallbackTextBuilder.append(("---------------------------------------------\n\n"));
+      }
+      fallbackText = fallbackTextBuilder.toString();
+    }
+
+    String messageId = UUID.randomUUID().toString();
+    postRenderedMessage(messageId, () -> ResponseTemplate.RICH_CARD.renderRichCard(messageId, representative,
+        CardCache.renderRichCard(cards, descriptions), fallbackText, suggestions), conversationId);
+  }
+
   /**
    * Sends store location rich cards to the user. The user can choose one of these locations
-   * for a scheduled pickup.
+   * for a scheduled pickup. If no single store stocks the whole order, the user is told so
+   * instead.
    *
    * @param conversationId The unique id that maps between the user and agent.
    * @param orderId The order for which the store pickup is being built.
@@ -693,7 +842,21 @@ public class CartBot {
     try {
       List<BusinessMessagesSuggestion> suggestions = UIManager.getCancelPickupSuggestion(orderId);
 
-      BusinessMessagesCarouselCard carouselCard = UIManager.getStoreAddressCarousel(orderId);
+      InventorySnapshot snapshot = turnContext.getInventorySnapshot();
+      Order order = OrderManager.getOrder(conversationId, orderId);
+      List<String> pickupStores = snapshot.getStoreAvailability().getStoresStocking(
+          snapshot.getOrdinals(order == null ? ImmutableList.of() : order.getItemIds()));
+      if (pickupStores.isEmpty()) {
+        sendResponse(new BusinessMessagesMessage()
+            .setMessageId(UUID.randomUUID().toString())
+            .setText(BotConstants.PICKUP_NO_SINGLE_STORE_TEXT)
+            .setRepresentative(representative)
+            .setFallback(BotConstants.PICKUP_NO_SINGLE_STORE_TEXT)
+            .setSuggestions(suggestions), conversationId);
+        return;
+      }
+      sendTextResponse(BotConstants.PICKUP_CHOOSE_STORE_ADDRESS_TEXT, conversationId);
+      BusinessMessagesCarouselCard carouselCard = UIManager.getStoreAddressCarousel(orderId, pickupStores);
 
       StringBuilder fallbackTextBuilder = new StringBuilder();
       for (BusinessMessagesCardContent cardContent : carouselCard.getCardContents()) {
@@ -703,10 +866,16 @@ public class CartBot {
         fallbackTextBuilder.append(("---------------------------------------------\n\n"));
       }
 
+      // a carousel needs at least two cards, so a single store is sent as a standalone card
+      BusinessMessagesRichCard richCard = carouselCard.getCardContents().size() == 1
+          ? new BusinessMessagesRichCard().setStandaloneCard(
+              new BusinessMessagesStandaloneCard().setCardContent(carouselCard.getCardContents().get(0)))
+          : new BusinessMessagesRichCard().setCarouselCard(carouselCard);
+
       // Send the carousel card message and suggestions to the user
       sendResponse(new BusinessMessagesMessage()
           .setMessageId(UUID.randomUUID().toString())
-          .setRichCard(new BusinessMessagesRichCard().setCarouselCard(carouselCard))
+          .setRichCard(richCard)
           .setRepresentative(representative)
           .setFallback(fallbackTextBuilder.toString())
           .setSuggestions(suggestions), conversationId);
@@ -747,6 +916,17 @@ public class CartBot {
     }
   }
 
+  /**
+   * Lets the user know that their message was dropped because they are sending messages
+   * faster than they can be handled. The notice is sent without a menu so that it does not
+   * read any of the user's data.
+   *
+   * @param conversationId The conversation ID that uniquely maps to the user and agent.
+   */
+  public void sendRateLimitedNotice(String conversationId) {
+    sendTemplateResponse(ResponseTemplate.RATE_LIMITED, null, null, conversationId);
+  }
+
   /**
    * Posts a message to the Business Messages API that only contains text.
    *
@@ -780,7 +960,7 @@ public class CartBot {
           .setText(message)
           .setRepresentative(representative)
           .setFallback(message)
-          .setSuggestions(UIManager.getDefaultMenu(conversationId, this.userCart)), conversationId);
+          .setSuggestions(UIManager.getDefaultMenu(turnContext)), conversationId);
     } catch (Exception e) {
       logger.log(Level.SEVERE, "Exception thrown while sending response.", e);
     }
@@ -788,51 +968,98 @@ public class CartBot {
 
   /**
    * Posts a message to the Business Messages API, first sending a typing indicator event and
-   * sending a stop typing event after the message has been sent.
+   * sending a stop typing event after the message has been sent. The message is serialized once,
+   * by the MessageJsonWriter, and the same bytes are posted and logged.
    *
    * @param message The message object to send the user.
    * @param conversationId The conversation ID that uniquely maps to the user and agent.
    */
   private void sendResponse(BusinessMessagesMessage message, String conversationId) {
-    try {
-      // Send typing indicator
-      BusinessMessagesEvent event =
-          new BusinessMessagesEvent()
-              .setEventType(EventType.TYPING_STARTED.toString());
-
-      Businessmessages.Conversations.Events.Create request
-          = builder.build().conversations().events()
-          .create("conversations/" + conversationId, event);
+    postRenderedMessage(message.getMessageId(), () -> MessageJsonWriter.toJson(message), conversationId);
+  }
 
-      request.setEventId(UUID.randomUUID().toString());
-      request.execute();
+  /**
+   * Posts a text message with a shared chip set, whose cached JSON is spliced into the message.
+   *
+   * @param text The text of the message.
+   * @param suggestions The suggestions of the message.
+   * @param conversationId The conversation ID that uniquely maps to the user and agent.
+   */
+  private void sendSuggestionSetResponse(String text, SuggestionSet suggestions, String conversationId) {
+    String messageId = UUID.randomUUID().toString();
+    postRenderedMessage(messageId,
+        () -> ResponseTemplate.TEXT.renderWithSuggestionSet(messageId, representative, text, suggestions),
+        conversationId);
+  }
 
-      logger.info("message id: " + message.getMessageId());
-      logger.info("message body: " + message.toPrettyString());
+  /**
+   * Posts a message rendered from a pre-serialized template to the Business Messages API,
+   * sending the same typing indicator events as for any other message.
+   *
+   * @param template The template holding the static fields of the message.
+   * @param text The text of the message, null to use the template's text.
+   * @param suggestions The suggestions of the message, null to use the template's suggestions.
+   * @param conversationId The conversation ID that uniquely maps to the user and agent.
+   */
+  private void sendTemplateResponse(ResponseTemplate template, String text,
+      List<BusinessMessagesSuggestion> suggestions, String conversationId) {
+    String messageId = UUID.randomUUID().toString();
+    postRenderedMessage(messageId, () -> template.render(messageId, representative, text, suggestions),
+        conversationId);
+  }
 
-      // Send the message
-      Businessmessages.Conversations.Messages.Create messageRequest
-          = builder.build().conversations().messages()
-          .create("conversations/" + conversationId, message);
+  /**
+   * Posts a message that is rendered straight to JSON to the Business Messages API, sending the
+   * same typing indicator events as for any other message.
+   *
+   * @param messageId The unique id of the message.
+   * @param renderer Renders the message as UTF-8 JSON.
+   * @param conversationId The conversation ID that uniquely maps to the user and agent.
+   */
+  private void postRenderedMessage(String messageId, Supplier<byte[]> renderer, String conversationId) {
+    byte[] body = null;
+    try {
+      body = renderer.get();
 
-      messageRequest.execute();
+      sendTypingEvent(EventType.TYPING_STARTED, conversationId);
 
-      // Stop typing indicator
-      event =
-          new BusinessMessagesEvent()
-              .setEventType(EventType.TYPING_STOPPED.toString());
+      // Send the message
+      bmApi.getRequestFactory().buildPostRequest(
+          new GenericUrl(BotConstants.BM_API_URL + "v1/conversations/" + conversationId + "/messages"),
+          new ByteArrayContent(Json.MEDIA_TYPE, body))
+          .execute();
 
-      request
-          = builder.build().conversations().events()
-          .create("conversations/" + conversationId, event);
+      sendTypingEvent(EventType.TYPING_STOPPED, conversationId);
 
-      request.setEventId(UUID.randomUUID().toString());
-      request.execute();
+      byte[] sentBody = body;
+      EventLogger.log(EventLogger.Category.OUTBOUND, "message_sent", conversationId,
+          messageId, () -> new String(sentBody, StandardCharsets.UTF_8));
     } catch (Exception e) {
-      logger.log(Level.SEVERE, "Exception thrown while sending response.", e);
+      byte[] failedBody = body;
+      EventLogger.logFailure(EventLogger.Category.OUTBOUND, "message_send_failed", conversationId,
+          messageId, () -> failedBody == null ? null : new String(failedBody, StandardCharsets.UTF_8), e);
     }
   }
 
+  /**
+   * Sends a typing indicator event to the user.
+   *
+   * @param eventType Whether typing started or stopped.
+   * @param conversationId The conversation ID that uniquely maps to the user and agent.
+   */
+  private void sendTypingEvent(EventType eventType, String conversationId) throws IOException {
+    BusinessMessagesEvent event =
+        new BusinessMessagesEvent()
+            .setEventType(eventType.toString());
+
+    Businessmessages.Conversations.Events.Create request
+        = bmApi.conversations().events()
+        .create("conversations/" + conversationId, event);
+
+    request.setEventId(UUID.randomUUID().toString());
+    request.execute();
+  }
+
   private String getAgentDisplayName(RepresentativeType representativeType) {
     return representativeType == RepresentativeType.BOT
         ? BotConstants.BOT_AGENT_NAME : BotConstants.LIVE_AGENT_NAME;
@@ -875,13 +1102,14 @@ public class CartBot {
       JacksonFactory jsonFactory = JacksonFactory.getDefaultInstance();
 
       // create instance of the BM API
-      builder = new Businessmessages
+      Businessmessages.Builder builder = new Businessmessages
           .Builder(httpTransport, jsonFactory, null)
           .setApplicationName(credential.getServiceAccountProjectId());
 
       // set the API credentials and endpoint
       builder.setHttpRequestInitializer(credential);
       builder.setRootUrl(BotConstants.BM_API_URL);
+      bmApi = builder.build();
     } catch (Exception e) {
       logger.log(Level.SEVERE, "Exception thrown while initializing BM API.", e);
     }
@@ -1,5 +1,7 @@
 package com.google.businessmessages.cart;
 
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import com.google.appengine.api.datastore.Entity;
 import com.google.common.collect.ImmutableList;
@@ -29,6 +31,25 @@ public class CartManager {
         return new Cart(cartId, getCartItems(cartId));
     }
     
+    /**
+     * Totals the price of the items in a cart. Prices are read from the in-memory store
+     * inventory, so totaling a cart needs no datastore reads. Items that are no longer in the
+     * inventory are left out.
+     * @param storeInventory The store inventory holding the price of each item.
+     * @param items The items in the cart.
+     * @return The subtotal of the cart in cents.
+     */
+    public static long getSubtotalCents(Inventory storeInventory, List<CartItem> items) {
+        long subtotalCents = 0;
+        for (CartItem item : items) {
+            Optional<InventoryItem> itemInStore = storeInventory.getItem(item.getId());
+            if (itemInStore.isPresent()) {
+                subtotalCents += itemInStore.get().getPriceCents() * item.getCount();
+            }
+        }
+        return subtotalCents;
+    }
+
     /**
      * Gets the collection of items associated with the given cartId. Can be invoked upon
      * the initialization of a user's cart, or when items are added or deleted from the cart.
@@ -53,27 +74,44 @@ public class CartManager {
     /**
      * Adds the specified item to the cart and then returns a new instance of 
      * cart with an updated collection of items in it.
+     * @param conversationId The unique id mapping between the user and the agent.
      * @param cartId the unique identifier of the cart this item will be added to.
      * @param itemId The unique identifier of the item being added.
      * @param itemTitle The title of the item being added.
      * @return The new instance of Cart with the updated collection of items.
      */
-    public static Cart addItem(String cartId, String itemId, String itemTitle) {
+    public static Cart addItem(String conversationId, String cartId, String itemId, String itemTitle) {
         DataManager dataManager = DataManager.getInstance();
         dataManager.addItemToCart(cartId, itemId, itemTitle);
-        return new Cart(cartId, getCartItems(cartId));
+        Cart cart = new Cart(cartId, getCartItems(cartId));
+        MenuStateManager.setCartNonEmpty(conversationId, !cart.getItems().isEmpty());
+        return cart;
     }
 
     /**
      * Deletes the specified item from the cart and then returns a new instance of
      * cart with an updated collection of items in it. 
+     * @param conversationId The unique id mapping between the user and the agent.
      * @param cartId The unique identifier of the cart this item will be deleted from.
      * @param itemId The unique identifier of the item being deleted.
      * @return The new instance of Cart with the updated collection of items.
      */
-    public static Cart deleteItem(String cartId, String itemId) {
+    public static Cart deleteItem(String conversationId, String cartId, String itemId) {
         DataManager dataManager = DataManager.getInstance();
         dataManager.deleteItemFromCart(cartId, itemId);
-        return new Cart(cartId, getCartItems(cartId));
+        Cart cart = new Cart(cartId, getCartItems(cartId));
+        MenuStateManager.setCartNonEmpty(conversationId, !cart.getItems().isEmpty());
+        return cart;
+    }
+
+    /**
+     * Removes every item from the cart once the user has checked out.
+     * @param conversationId The unique id mapping between the user and the agent.
+     * @param cartId The unique identifier of the cart being emptied.
+     */
+    public static void emptyCart(String conversationId, String cartId) {
+        DataManager dataManager = DataManager.getInstance();
+        dataManager.emptyCart(cartId);
+        MenuStateManager.setCartNonEmpty(conversationId, false);
     }
 }
\ No newline at end of file
@@ -0,0 +1,287 @@
+package com.google.businessmessages.cart;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Loads an inventory from a product feed on local disk. Two formats are supported, chosen by
+ * the file extension:
+ *
+ * JSON lines (.jsonl or .json), one product per line:
+ *   {"title": "...", "image_url": "...", "price": 89.99, "properties": {"size": ["8", "9"], "color": ["blue"]}}
+ *
+ * CSV (.csv) with a header row. The title, image_url and price columns are required; every
+ * other column is a property whose options are separated by '|':
+ *   title,image_url,price,size,color,brand
+ *
+ * Field, column and property names are case-insensitive in both formats, and are lowercased
+ * along with the property options. A "store" property lists the names of the stores a product
+ * can be picked up at; products without one can be picked up at every store.
+ *
+ * The feed is read line by line and handed to a pool of parser threads in fixed size batches.
+ * At most a fixed number of batches are in flight at once, and the oldest is appended to the
+ * catalog before another is read, so the memory used for parsing does not depend on the size
+ * of the feed. Parsed products are appended in feed order to a ColumnarCatalog, which dictionary-encodes
+ * their options and packs their strings into a shared arena, so the loaded catalog holds no
+ * per-item object graph.
+ */
+public class CatalogFeedLoader {
+    // System property holding the path of the feed the store inventory is loaded from
+    public static final String FEED_PATH_PROPERTY = "cartbot.catalog.feed";
+
+    private static final Logger logger = Logger.getLogger(CatalogFeedLoader.class.getName());
+    private static final int BATCH_SIZE = 1000;
+    private static final String CSV_OPTION_SEPARATOR = "\\|";
+    private static final List<String> REQUIRED_CSV_COLUMNS = ImmutableList.of("title", "image_url", "price");
+
+    private final Map<String, String> interned = new ConcurrentHashMap<>();
+
+    /**
+     * Loads the feed at the given path into a columnar catalog.
+     * @param feedPath The path of the product feed.
+     * @return The inventory holding every product in the feed, in feed order.
+     * @throws IOException If the feed cannot be read or contains a malformed product.
+     */
+    public static ColumnarCatalog load(Path feedPath) throws IOException {
+        return new CatalogFeedLoader().loadFeed(feedPath);
+    }
+
+    private ColumnarCatalog loadFeed(Path feedPath) throws IOException {
+        boolean csv = feedPath.getFileName().toString().toLowerCase().endsWith(".csv");
+        int parserThreads = Runtime.getRuntime().availableProcessors();
+        // enough batches in flight to keep every parser busy while the oldest one is appended
+        int maxInFlight = parserThreads * 2;
+        ExecutorService parsers = new ThreadPoolExecutor(parserThreads, parserThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(maxInFlight), DaemonThreads.factory("catalog-parser"));
+        long startNanos = System.nanoTime();
+        Deque<Future<List<ParsedItem>>> inFlight = new ArrayDeque<>(maxInFlight);
+        ColumnarCatalog.Builder catalog = new ColumnarCatalog.Builder();
+        try (BufferedReader reader = Files.newBufferedReader(feedPath, StandardCharsets.UTF_8)) {
+            List<String> header = csv ? parseCsvHeader(reader.readLine()) : null;
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                batch.add(line);
+                if (batch.size() == BATCH_SIZE) {
+                    if (inFlight.size() == maxInFlight) {
+                        appendBatch(catalog, inFlight.removeFirst());
+                    }
+                    inFlight.addLast(submitBatch(parsers, batch, header));
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                inFlight.addLast(submitBatch(parsers, batch, header));
+            }
+            while (!inFlight.isEmpty()) {
+                appendBatch(catalog, inFlight.removeFirst());
+            }
+            ColumnarCatalog inventory = catalog.build();
+
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            long bytes = Files.size(feedPath);
+            logger.info(String.format("Loaded %d items (%.1f MB) from %s in %.2fs: %.0f items/s, %.1f MB/s.",
+                inventory.getInventory().size(), bytes / 1e6, feedPath, seconds,
+                inventory.getInventory().size() / seconds, bytes / 1e6 / seconds));
+            return inventory;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading the catalog feed.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to parse the catalog feed " + feedPath + ".", e.getCause());
+        } finally {
+            parsers.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for a parsed batch and appends its products to the catalog, in feed order.
+     */
+    private static void appendBatch(ColumnarCatalog.Builder catalog, Future<List<ParsedItem>> parsedBatch)
+            throws InterruptedException, ExecutionException {
+        for (ParsedItem item : parsedBatch.get()) {
+            catalog.add(item.title, item.imageUrl, InventoryItem.toCents(item.price), item.properties);
+        }
+    }
+
+    private Future<List<ParsedItem>> submitBatch(ExecutorService parsers, List<String> lines, List<String> header) {
+        return parsers.submit(() -> {
+            List<ParsedItem> items = new ArrayList<>(lines.size());
+            for (String line : lines) {
+                items.add(header != null ? parseCsvItem(header, line) : parseJsonItem(line));
+            }
+            return items;
+        });
+    }
+
+    private ParsedItem parseJsonItem(String line) throws IOException {
+        String title = null;
+        String imageUrl = null;
+        double price = 0;
+        Map<String, List<String>> properties = new LinkedHashMap<>();
+        try (JsonReader reader = new JsonReader(new StringReader(line))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName().toLowerCase();
+                if (field.equals("title")) {
+                    title = reader.nextString();
+                } else if (field.equals("image_url")) {
+                    imageUrl = reader.nextString();
+                } else if (field.equals("price")) {
+                    price = reader.nextDouble();
+                } else if (field.equals("properties")) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String propertyName = intern(reader.nextName().toLowerCase());
+                        List<String> options = new ArrayList<>();
+                        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                            reader.beginArray();
+                            while (reader.hasNext()) {
+                                options.add(intern(reader.nextString().toLowerCase()));
+                            }
+                            reader.endArray();
+                        } else {
+                            options.add(intern(reader.nextString().toLowerCase()));
+                        }
+                        properties.put(propertyName, ImmutableList.copyOf(options));
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        if (title == null) {
+            throw new IOException("Catalog item is missing a title: " + line);
+        }
+        return new ParsedItem(title, imageUrl, price, properties);
+    }
+
+    private ParsedItem parseCsvItem(List<String> header, String line) throws IOException {
+        List<String> values = parseCsvLine(line);
+        String title = null;
+        String imageUrl = null;
+        double price = 0;
+        Map<String, List<String>> properties = new LinkedHashMap<>();
+        for (int i = 0; i < header.size() && i < values.size(); i++) {
+            String column = header.get(i);
+            String value = values.get(i);
+            if (column.equals("title")) {
+                title = value;
+            } else if (column.equals("image_url")) {
+                imageUrl = value;
+            } else if (column.equals("price")) {
+                try {
+                    price = value.isEmpty() ? 0 : Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Catalog item has an invalid price: " + line, e);
+                }
+            } else if (!value.isEmpty()) {
+                List<String> options = new ArrayList<>();
+                for (String option : value.split(CSV_OPTION_SEPARATOR)) {
+                    options.add(intern(option.trim().toLowerCase()));
+                }
+                properties.put(intern(column), ImmutableList.copyOf(options));
+            }
+        }
+        if (title == null || title.isEmpty()) {
+            throw new IOException("Catalog item is missing a title: " + line);
+        }
+        return new ParsedItem(title, imageUrl, price, properties);
+    }
+
+    private static List<String> parseCsvHeader(String line) throws IOException {
+        if (line == null) {
+            throw new IOException("Catalog feed is missing its header row.");
+        }
+        List<String> header = new ArrayList<>();
+        for (String column : parseCsvLine(line)) {
+            header.add(column.toLowerCase());
+        }
+        for (String column : REQUIRED_CSV_COLUMNS) {
+            if (!header.contains(column)) {
+                throw new IOException("Catalog feed header is missing the " + column + " column: " + line);
+            }
+        }
+        return header;
+    }
+
+    /**
+     * Splits a CSV line into its fields. Fields may be quoted, with quotes inside a quoted
+     * field escaped by doubling them.
+     */
+    private static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    private String intern(String value) {
+        String existing = interned.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+
+    /**
+     * The fields of a product as parsed from the feed, before they are encoded into the catalog.
+     */
+    private static class ParsedItem {
+        private final String title;
+        private final String imageUrl;
+        private final double price;
+        private final Map<String, List<String>> properties;
+
+        ParsedItem(String title, String imageUrl, double price, Map<String, List<String>> properties) {
+            this.title = title;
+            this.imageUrl = imageUrl;
+            this.price = price;
+            this.properties = properties;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.google.businessmessages.cart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Model of which items are bought together, used to recommend items to a user who has just
+ * added an item to their cart. The model is updated incrementally with every submitted order.
+ *
+ * Item ids are dictionary-encoded to ints, and every item keeps a sparse int to int map of how
+ * many orders it shared with each other item. The maps are bounded: once an item tracks
+ * maxTrackedNeighbors other items, a new neighbor replaces the least frequent one and inherits
+ * its count, as in the Space-Saving heavy-hitter algorithm, so frequent neighbors are kept and
+ * memory does not grow with the number of orders.
+ *
+ * The top neighbors of every item are recomputed when its counts change, so looking them up
+ * while replying is a single map read.
+ *
+ * The orders already in the datastore are loaded on a background thread. Orders placed while
+ * they load are held back and only counted afterwards if the load did not include them, so
+ * no order is counted twice.
+ */
+public class CoPurchaseModel {
+    public static final int TOP_NEIGHBORS = 10;
+
+    private static final Logger logger = Logger.getLogger(CoPurchaseModel.class.getName());
+    private static final int DEFAULT_MAX_TRACKED_NEIGHBORS = 256;
+
+    private static CoPurchaseModel instance;
+
+    private final int maxTrackedNeighbors;
+    // Guarded by this: the dictionary of item ids and the co-purchase counts of each item
+    private final Map<String, Integer> itemCodes = new HashMap<>();
+    private final List<String> itemIds = new ArrayList<>();
+    private final List<NeighborCounts> neighborCounts = new ArrayList<>();
+    // Guarded by this: the orders placed while past orders load, null once they are loaded
+    private Map<String, List<String>> pendingOrders;
+    // Read without locking while replying
+    private final Map<String, ImmutableList<String>> topNeighbors = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty model.
+     * @param maxTrackedNeighbors The maximum number of other items each item counts orders with.
+     */
+    public CoPurchaseModel(int maxTrackedNeighbors) {
+        this(maxTrackedNeighbors, true);
+    }
+
+    /**
+     * Creates an empty model.
+     * @param maxTrackedNeighbors The maximum number of other items each item counts orders with.
+     * @param loaded False if past orders are still to be loaded, in which case new orders are
+     * held back until load is called.
+     */
+    public CoPurchaseModel(int maxTrackedNeighbors, boolean loaded) {
+        this.maxTrackedNeighbors = Math.max(TOP_NEIGHBORS, maxTrackedNeighbors);
+        this.pendingOrders = loaded ? null : new HashMap<>();
+    }
+
+    /**
+     * Gets the model of this instance. On first use, the thread that loads the orders already
+     * in the datastore is started.
+     * @return The co-purchase model.
+     */
+    public static synchronized CoPurchaseModel getInstance() {
+        if (instance == null) {
+            instance = new CoPurchaseModel(DEFAULT_MAX_TRACKED_NEIGHBORS, false);
+            instance.startLoader();
+        }
+        return instance;
+    }
+
+    /**
+     * Counts the past orders, followed by the orders placed meanwhile that they do not include.
+     * @param pastOrders The item ids of each past order, keyed by order id.
+     */
+    public synchronized void load(Map<String, List<String>> pastOrders) {
+        if (pendingOrders == null) {
+            return;
+        }
+        pastOrders.values().forEach(this::recordOrder);
+        for (Map.Entry<String, List<String>> order : pendingOrders.entrySet()) {
+            if (!pastOrders.containsKey(order.getKey())) {
+                recordOrder(order.getValue());
+            }
+        }
+        pendingOrders = null;
+    }
+
+    /**
+     * Adds a newly placed order to the model, or holds it back while past orders load.
+     * @param orderId The id of the order.
+     * @param orderItemIds The ids of the items in the order.
+     */
+    public synchronized void recordOrder(String orderId, List<String> orderItemIds) {
+        if (pendingOrders != null) {
+            pendingOrders.put(orderId, orderItemIds);
+        } else {
+            recordOrder(orderItemIds);
+        }
+    }
+
+    /**
+     * Adds an order to the model, counting every pair of distinct items in it.
+     * @param orderItemIds The ids of the items in the order.
+     */
+    public synchronized void recordOrder(List<String> orderItemIds) {
+        int[] codes = orderItemIds.stream().distinct().mapToInt(this::getCode).toArray();
+        if (codes.length < 2) {
+            return;
+        }
+        for (int code : codes) {
+            NeighborCounts counts = neighborCounts.get(code);
+            for (int neighbor : codes) {
+                if (neighbor != code) {
+                    counts.increment(neighbor);
+                }
+            }
+            topNeighbors.put(itemIds.get(code), getTopNeighbors(counts));
+        }
+    }
+
+    /**
+     * Gets the items most often bought together with an item.
+     * @param itemId The unique id of the item.
+     * @return The ids of at most TOP_NEIGHBORS items, most often bought together first.
+     */
+    public ImmutableList<String> getNeighbors(String itemId) {
+        return topNeighbors.getOrDefault(itemId, ImmutableList.of());
+    }
+
+    /**
+     * Loads the past orders on a daemon thread, since the query reads every order, or on the
+     * calling thread if the daemon thread cannot be started.
+     */
+    private void startLoader() {
+        if (!DaemonThreads.start("copurchase-loader", this::loadPastOrders, "loading past orders now")) {
+            loadPastOrders();
+        }
+    }
+
+    private void loadPastOrders() {
+        Map<String, List<String>> pastOrders = new HashMap<>();
+        try {
+            pastOrders = DataManager.getInstance().getAllOrderItemIds();
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Unable to load past orders into the co-purchase model.", e);
+        }
+        load(pastOrders);
+    }
+
+    private int getCode(String itemId) {
+        Integer code = itemCodes.get(itemId);
+        if (code == null) {
+            code = itemIds.size();
+            itemCodes.put(itemId, code);
+            itemIds.add(itemId);
+            neighborCounts.add(new NeighborCounts(maxTrackedNeighbors));
+        }
+        return code;
+    }
+
+    private ImmutableList<String> getTopNeighbors(NeighborCounts counts) {
+        long[] entries = counts.getEntries();
+        // highest count first, ties broken by the earliest seen item
+        Arrays.sort(entries);
+        ImmutableList.Builder<String> neighbors = ImmutableList.builder();
+        for (int i = 0; i < Math.min(TOP_NEIGHBORS, entries.length); i++) {
+            neighbors.add(itemIds.get((int) entries[i]));
+        }
+        return neighbors.build();
+    }
+
+    /**
+     * Open-addressing map from item codes to co-purchase counts, using linear probing, with at
+     * most maxSize entries.
+     */
+    private static class NeighborCounts {
+        private static final int EMPTY = -1;
+
+        private final int maxSize;
+        private int[] keys;
+        private int[] counts;
+        private int size;
+
+        NeighborCounts(int maxSize) {
+            this.maxSize = maxSize;
+            this.keys = new int[4];
+            this.counts = new int[4];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        void increment(int key) {
+            int slot = find(key);
+            if (keys[slot] == key) {
+                counts[slot]++;
+                return;
+            }
+            int count = 1;
+            if (size == maxSize) {
+                // replace the least frequent neighbor, which may have been this one before it was evicted
+                int minSlot = findMinSlot();
+                count = counts[minSlot] + 1;
+                remove(minSlot);
+            } else if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            slot = find(key);
+            keys[slot] = key;
+            counts[slot] = count;
+            size++;
+        }
+
+        /**
+         * Encodes every entry as one long that sorts by descending count, then ascending key.
+         */
+        long[] getEntries() {
+            long[] entries = new long[size];
+            int next = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY) {
+                    entries[next++] = ((long) (Integer.MAX_VALUE - counts[slot]) << 32) | keys[slot];
+                }
+            }
+            return entries;
+        }
+
+        /**
+         * Finds the slot holding the key, or the empty slot it would be inserted at.
+         */
+        private int find(int key) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private int findMinSlot() {
+            int minSlot = -1;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY && (minSlot < 0 || counts[slot] < counts[minSlot])) {
+                    minSlot = slot;
+                }
+            }
+            return minSlot;
+        }
+
+        /**
+         * Removes the entry at a slot, shifting back the entries after it in its probe sequence
+         * so they can still be found.
+         */
+        private void remove(int slot) {
+            int mask = keys.length - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while (keys[next] != EMPTY) {
+                int home = hash(keys[next]) & mask;
+                // move the entry into the hole unless its home lies cyclically in (hole, next]
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    counts[hole] = counts[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            keys[hole] = EMPTY;
+            size--;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != EMPTY) {
+                    int newSlot = find(oldKeys[slot]);
+                    keys[newSlot] = oldKeys[slot];
+                    counts[newSlot] = oldCounts[slot];
+                }
+            }
+        }
+
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.google.businessmessages.cart;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Implementation of Inventory that stores its items column by column instead of as one object
+ * graph per item, for catalogs too large to hold as InventoryItems:
+ *
+ * - Titles and media urls are UTF-8 encoded into a single byte arena and addressed by offset.
+ * - Item ids are kept as the two halves of their UUID.
+ * - Each distinct (property, option) pair is dictionary-encoded to an int code, and the
+ *   options of every item are packed into one sorted int array, addressed by offset.
+ *
+ * Items are exposed through ColumnarInventoryItem, a facade that decodes its fields on demand,
+ * so the rest of the bot can keep working with InventoryItems.
+ */
+public class ColumnarCatalog implements Inventory {
+    private final byte[] stringArena;
+    // the strings of item i are its title, at 2i, and its media url, at 2i + 1
+    private final int[] stringOffsets;
+    private final long[] idHighBits;
+    private final long[] idLowBits;
+    private final long[] priceCents;
+    private final int[] optionOffsets;
+    private final int[] optionCodes;
+    private final String[] codeProperties;
+    private final String[] codeOptions;
+    private final int[] idIndex;
+    private final ImmutableList<InventoryItem> items;
+    private final AttributeIndex attributeIndex;
+
+    private ColumnarCatalog(Builder builder) {
+        int size = builder.priceCents.length();
+        this.stringArena = builder.arena.toByteArray();
+        this.stringOffsets = builder.stringOffsets.toArray();
+        this.idHighBits = builder.idHighBits.toArray();
+        this.idLowBits = builder.idLowBits.toArray();
+        this.priceCents = builder.priceCents.toArray();
+        this.optionOffsets = builder.optionOffsets.toArray();
+        this.optionCodes = builder.optionCodes.toArray();
+        this.codeProperties = builder.codeProperties.toArray(new String[0]);
+        this.codeOptions = builder.codeOptions.toArray(new String[0]);
+
+        ImmutableList.Builder<InventoryItem> facades = ImmutableList.builder();
+        for (int i = 0; i < size; i++) {
+            facades.add(new ColumnarInventoryItem(this, i));
+        }
+        this.items = facades.build();
+        this.idIndex = buildIdIndex(size);
+        this.attributeIndex = new AttributeIndex(items, buildPositions(size));
+    }
+
+    @Override
+    public ImmutableList<InventoryItem> getInventory() {
+        return items;
+    }
+
+    @Override
+    public Optional<InventoryItem> getItem(String itemId) {
+        int ordinal = getOrdinal(itemId);
+        return ordinal < 0 ? Optional.empty() : Optional.of(items.get(ordinal));
+    }
+
+    @Override
+    public int getOrdinal(String itemId) {
+        UUID id;
+        try {
+            id = UUID.fromString(itemId);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return -1;
+        }
+        int mask = idIndex.length - 1;
+        int slot = hash(id.getMostSignificantBits(), id.getLeastSignificantBits()) & mask;
+        while (idIndex[slot] != 0) {
+            int ordinal = idIndex[slot] - 1;
+            if (idHighBits[ordinal] == id.getMostSignificantBits() && idLowBits[ordinal] == id.getLeastSignificantBits()) {
+                return ordinal;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    @Override
+    public List<InventoryItem> getMatchingItems(List<Filter> filters) {
+        return attributeIndex.getMatchingItems(filters);
+    }
+
+    @Override
+    public int[] getMatchingOrdinals(List<Filter> filters) {
+        return attributeIndex.match(filters).stream().toArray();
+    }
+
+    @Override
+    public Map<String, Integer> getFacetCounts(List<Filter> filters, String propertyName, List<String> options) {
+        return attributeIndex.getFacetCounts(filters, propertyName, options);
+    }
+
+    String getId(int ordinal) {
+        return new UUID(idHighBits[ordinal], idLowBits[ordinal]).toString();
+    }
+
+    String getTitle(int ordinal) {
+        return getString(2 * ordinal);
+    }
+
+    String getMediaUrl(int ordinal) {
+        return getString(2 * ordinal + 1);
+    }
+
+    long getPriceCents(int ordinal) {
+        return priceCents[ordinal];
+    }
+
+    /**
+     * Decodes the properties of an item from its option codes. Codes are assigned in the order
+     * pairs are first seen, so the options of one property are grouped but not necessarily
+     * adjacent; properties are listed in the order they first appear on the item.
+     */
+    List<ItemProperty> getProperties(int ordinal) {
+        Map<String, List<String>> options = new HashMap<>();
+        List<String> propertyNames = new ArrayList<>();
+        for (int i = optionOffsets[ordinal]; i < optionOffsets[ordinal + 1]; i++) {
+            String propertyName = codeProperties[optionCodes[i]];
+            List<String> propertyOptions = options.get(propertyName);
+            if (propertyOptions == null) {
+                propertyOptions = new ArrayList<>();
+                options.put(propertyName, propertyOptions);
+                propertyNames.add(propertyName);
+            }
+            propertyOptions.add(codeOptions[optionCodes[i]]);
+        }
+        List<ItemProperty> properties = new ArrayList<>(propertyNames.size());
+        for (String propertyName : propertyNames) {
+            properties.add(new ItemProperty(propertyName, options.get(propertyName)));
+        }
+        return properties;
+    }
+
+    private String getString(int index) {
+        int start = stringOffsets[index];
+        int end = stringOffsets[index + 1];
+        return start == end ? null : new String(stringArena, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds an open-addressing table from item ids to ordinals. Slots hold the ordinal plus
+     * one, so that zero marks an empty slot.
+     */
+    private int[] buildIdIndex(int size) {
+        int capacity = Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+        int[] table = new int[capacity];
+        int mask = capacity - 1;
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            int slot = hash(idHighBits[ordinal], idLowBits[ordinal]) & mask;
+            boolean duplicate = false;
+            while (table[slot] != 0) {
+                int existing = table[slot] - 1;
+                if (idHighBits[existing] == idHighBits[ordinal] && idLowBits[existing] == idLowBits[ordinal]) {
+                    duplicate = true;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (!duplicate) {
+                table[slot] = ordinal + 1;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Collects the item positions of every option code, counting them first so each array is
+     * allocated at its exact length. Ordinals are visited in order, so every array is sorted.
+     */
+    private Map<String, Map<String, int[]>> buildPositions(int size) {
+        int[] codeCounts = new int[codeOptions.length];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            for (int i = optionOffsets[ordinal]; i < optionOffsets[ordinal + 1]; i++) {
+                if (!isRepeatedCode(ordinal, i)) {
+                    codeCounts[optionCodes[i]]++;
+                }
+            }
+        }
+        int[][] codePositions = new int[codeOptions.length][];
+        for (int code = 0; code < codeCounts.length; code++) {
+            codePositions[code] = new int[codeCounts[code]];
+            codeCounts[code] = 0;
+        }
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            for (int i = optionOffsets[ordinal]; i < optionOffsets[ordinal + 1]; i++) {
+                if (!isRepeatedCode(ordinal, i)) {
+                    int code = optionCodes[i];
+                    codePositions[code][codeCounts[code]++] = ordinal;
+                }
+            }
+        }
+        Map<String, Map<String, int[]>> positions = new HashMap<>();
+        for (int code = 0; code < codePositions.length; code++) {
+            if (codePositions[code].length > 0) {
+                positions.computeIfAbsent(codeProperties[code], unused -> new HashMap<>())
+                    .put(codeOptions[code], codePositions[code]);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Checks if an item lists the same option twice, which its sorted codes show as a repeat.
+     */
+    private boolean isRepeatedCode(int ordinal, int i) {
+        return i > optionOffsets[ordinal] && optionCodes[i] == optionCodes[i - 1];
+    }
+
+    private static int hash(long high, long low) {
+        long h = high ^ low;
+        int folded = (int) (h ^ (h >>> 32));
+        return folded ^ (folded >>> 16);
+    }
+
+    /**
+     * Accumulates items into the columns of a ColumnarCatalog.
+     */
+    public static class Builder {
+        private final ByteArrayOutputStream arena = new ByteArrayOutputStream();
+        private final IntColumn stringOffsets = new IntColumn();
+        private final LongColumn idHighBits = new LongColumn();
+        private final LongColumn idLowBits = new LongColumn();
+        private final LongColumn priceCents = new LongColumn();
+        private final IntColumn optionOffsets = new IntColumn();
+        private final IntColumn optionCodes = new IntColumn();
+        private final List<String> codeProperties = new ArrayList<>();
+        private final List<String> codeOptions = new ArrayList<>();
+        private final Map<String, Map<String, Integer>> codes = new HashMap<>();
+
+        public Builder() {
+            stringOffsets.add(0);
+            optionOffsets.add(0);
+        }
+
+        /**
+         * Adds an item to the catalog. The item's id is derived from its title, the same way
+         * as for any other InventoryItem.
+         * @param title The title of the item.
+         * @param mediaUrl The url of the item's image, may be null.
+         * @param priceCents The price of the item in cents.
+         * @param properties The options of each of the item's properties.
+         * @return This builder.
+         */
+        public Builder add(String title, String mediaUrl, long priceCents, Map<String, List<String>> properties) {
+            UUID id = UUID.nameUUIDFromBytes(title.getBytes());
+            idHighBits.add(id.getMostSignificantBits());
+            idLowBits.add(id.getLeastSignificantBits());
+            appendString(title);
+            appendString(mediaUrl);
+            this.priceCents.add(priceCents);
+
+            int start = optionCodes.length();
+            for (Map.Entry<String, List<String>> property : properties.entrySet()) {
+                for (String option : property.getValue()) {
+                    optionCodes.add(getCode(property.getKey(), option));
+                }
+            }
+            optionCodes.sort(start);
+            optionOffsets.add(optionCodes.length());
+            return this;
+        }
+
+        public ColumnarCatalog build() {
+            return new ColumnarCatalog(this);
+        }
+
+        private void appendString(String value) {
+            if (value != null) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                arena.write(bytes, 0, bytes.length);
+            }
+            stringOffsets.add(arena.size());
+        }
+
+        private int getCode(String propertyName, String option) {
+            Map<String, Integer> optionCodes = codes.computeIfAbsent(propertyName, unused -> new HashMap<>());
+            Integer code = optionCodes.get(option);
+            if (code == null) {
+                code = codeOptions.size();
+                optionCodes.put(option, code);
+                codeProperties.add(propertyName);
+                codeOptions.add(option);
+            }
+            return code;
+        }
+    }
+
+    private static class IntColumn {
+        private int[] values = new int[16];
+        private int length;
+
+        void add(int value) {
+            if (length == values.length) {
+                values = Arrays.copyOf(values, length * 2);
+            }
+            values[length++] = value;
+        }
+
+        void sort(int from) {
+            Arrays.sort(values, from, length);
+        }
+
+        int length() {
+            return length;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, length);
+        }
+    }
+
+    private static class LongColumn {
+        private long[] values = new long[16];
+        private int length;
+
+        void add(long value) {
+            if (length == values.length) {
+                values = Arrays.copyOf(values, length * 2);
+            }
+            values[length++] = value;
+        }
+
+        int length() {
+            return length;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, length);
+        }
+    }
+}
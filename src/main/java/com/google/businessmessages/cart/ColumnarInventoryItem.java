@@ -0,0 +1,42 @@
+package com.google.businessmessages.cart;
+
+import java.util.List;
+
+/**
+ * InventoryItem facade over one item of a ColumnarCatalog. The facade only holds the item's
+ * position, and decodes each field from the catalog's columns when it is read.
+ */
+public class ColumnarInventoryItem extends InventoryItem {
+    private final ColumnarCatalog catalog;
+    private final int ordinal;
+
+    ColumnarInventoryItem(ColumnarCatalog catalog, int ordinal) {
+        this.catalog = catalog;
+        this.ordinal = ordinal;
+    }
+
+    @Override
+    public String getId() {
+        return catalog.getId(ordinal);
+    }
+
+    @Override
+    public String getTitle() {
+        return catalog.getTitle(ordinal);
+    }
+
+    @Override
+    public long getPriceCents() {
+        return catalog.getPriceCents(ordinal);
+    }
+
+    @Override
+    public String getMediaUrl() {
+        return catalog.getMediaUrl(ordinal);
+    }
+
+    @Override
+    public List<ItemProperty> getProperties() {
+        return catalog.getProperties(ordinal);
+    }
+}
@@ -0,0 +1,291 @@
+package com.google.businessmessages.cart;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Limits how quickly messages from a single conversation are handled. Each conversation has a
+ * token bucket that holds up to a burst of messages and refills at a steady rate; what happens
+ * to a message that arrives while its bucket is empty is decided by the limiter's policy.
+ *
+ * Buckets that have refilled completely and have not been used for a while are evicted, so the
+ * map only holds conversations that are currently active.
+ */
+public class ConversationRateLimiter {
+
+    /**
+     * How messages that exceed a conversation's rate are handled.
+     */
+    public enum Policy {
+        // Waits for a token, but only handles the latest message of a burst
+        COALESCE,
+        // Waits for a token and handles every message, as long as the wait is short enough
+        QUEUE,
+        // Drops the message, notifying the user the first time it happens
+        DROP_WITH_NOTICE
+    }
+
+    /**
+     * The source of time for refilling buckets and waiting for tokens.
+     */
+    public interface Clock {
+        long nanoTime();
+
+        void sleepNanos(long nanos) throws InterruptedException;
+    }
+
+    /**
+     * What the caller should do with a message.
+     */
+    public enum Decision {
+        PROCEED,
+        DROP,
+        DROP_WITH_NOTICE
+    }
+
+    private static final Logger logger = Logger.getLogger(ConversationRateLimiter.class.getName());
+    private static final String PROPERTY_PREFIX = "cartbot.ratelimit.";
+    private static final Policy DEFAULT_POLICY = Policy.QUEUE;
+    private static final double DEFAULT_MESSAGES_PER_SECOND = 2;
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleepNanos(long nanos) throws InterruptedException {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    };
+
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastEvictionNanos;
+    private final Clock clock;
+    private final Policy policy;
+    private final double capacity;
+    private final double tokensPerNano;
+    private final long maxDelayNanos;
+    private final long idleNanos;
+
+    /**
+     * @param policy How messages exceeding the rate are handled.
+     * @param burst The number of messages a conversation can send at once.
+     * @param messagesPerSecond The sustained rate at which messages are handled.
+     * @param maxDelayMillis The longest a message may wait for a token.
+     * @param idleMillis How long a full bucket is kept after its last use.
+     */
+    public ConversationRateLimiter(Policy policy, int burst, double messagesPerSecond,
+            long maxDelayMillis, long idleMillis) {
+        this(policy, burst, messagesPerSecond, maxDelayMillis, idleMillis, SYSTEM_CLOCK);
+    }
+
+    /**
+     * @param policy How messages exceeding the rate are handled.
+     * @param burst The number of messages a conversation can send at once.
+     * @param messagesPerSecond The sustained rate at which messages are handled.
+     * @param maxDelayMillis The longest a message may wait for a token.
+     * @param idleMillis How long a full bucket is kept after its last use.
+     * @param clock The source of time, i.e. a fake clock in tests.
+     */
+    public ConversationRateLimiter(Policy policy, int burst, double messagesPerSecond,
+            long maxDelayMillis, long idleMillis, Clock clock) {
+        this.clock = clock;
+        this.lastEvictionNanos = new AtomicLong(clock.nanoTime());
+        this.policy = policy;
+        this.capacity = burst;
+        this.tokensPerNano = messagesPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+    }
+
+    /**
+     * Creates a limiter configured by the cartbot.ratelimit.* system properties set in
+     * appengine-web.xml, falling back to defaults for any that are missing or malformed.
+     * @return The configured limiter.
+     */
+    public static ConversationRateLimiter fromSystemProperties() {
+        return new ConversationRateLimiter(
+            parsePolicy(System.getProperty(PROPERTY_PREFIX + "policy")),
+            Integer.getInteger(PROPERTY_PREFIX + "burst", 5),
+            parseRate(System.getProperty(PROPERTY_PREFIX + "messages_per_second")),
+            Long.getLong(PROPERTY_PREFIX + "max_delay_millis", 3000),
+            Long.getLong(PROPERTY_PREFIX + "idle_millis", TimeUnit.MINUTES.toMillis(10)));
+    }
+
+    /**
+     * Parses the configured policy, i.e. "queue" or "drop_with_notice".
+     * @param value The configured policy, null if it is not set.
+     * @return The policy, the default policy if the value is not set or is not a policy.
+     */
+    public static Policy parsePolicy(String value) {
+        if (value == null) {
+            return DEFAULT_POLICY;
+        }
+        try {
+            return Policy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warning("Unknown rate limit policy \"" + value + "\", using " + DEFAULT_POLICY + ".");
+            return DEFAULT_POLICY;
+        }
+    }
+
+    /**
+     * Parses the configured rate a conversation's bucket refills at.
+     * @param value The configured messages per second, null if it is not set.
+     * @return The rate, the default rate if the value is not set or is not a positive number.
+     */
+    public static double parseRate(String value) {
+        if (value == null) {
+            return DEFAULT_MESSAGES_PER_SECOND;
+        }
+        double rate;
+        try {
+            rate = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            rate = Double.NaN;
+        }
+        // a bucket that never refills would drop or stall every conversation for good
+        if (!(rate > 0) || Double.isInfinite(rate)) {
+            logger.warning("Invalid rate limit rate \"" + value + "\", using " + DEFAULT_MESSAGES_PER_SECOND + ".");
+            return DEFAULT_MESSAGES_PER_SECOND;
+        }
+        return rate;
+    }
+
+    /**
+     * Decides whether a message from the given conversation should be handled. Depending on
+     * the policy this may block until the conversation's bucket has a token for the message.
+     * @param conversationId The conversation the message belongs to.
+     * @return Whether to handle the message, drop it, or drop it and notify the user.
+     * @throws InterruptedException If the thread is interrupted while waiting for a token.
+     */
+    public Decision acquire(String conversationId) throws InterruptedException {
+        long now = clock.nanoTime();
+        evictIdleBuckets(now);
+        Bucket bucket = buckets.computeIfAbsent(conversationId, unused -> new Bucket(capacity, now));
+
+        switch (policy) {
+            case DROP_WITH_NOTICE:
+                if (bucket.reserve(now, 0) == 0) {
+                    return Decision.PROCEED;
+                }
+                return bucket.markNoticeSent() ? Decision.DROP_WITH_NOTICE : Decision.DROP;
+            case COALESCE:
+                long coalesceWait = bucket.reserve(now, maxDelayNanos);
+                if (coalesceWait < 0) {
+                    return Decision.DROP;
+                }
+                // only a message that will be handled may supersede the ones queued before it
+                long ticket = bucket.nextTicket();
+                if (coalesceWait > 0) {
+                    clock.sleepNanos(coalesceWait);
+                    if (bucket.isSuperseded(ticket)) {
+                        // a newer message from the same burst will be handled instead
+                        bucket.refund();
+                        return Decision.DROP;
+                    }
+                }
+                return Decision.PROCEED;
+            case QUEUE:
+            default:
+                long queueWait = bucket.reserve(now, maxDelayNanos);
+                if (queueWait < 0) {
+                    return Decision.DROP;
+                }
+                clock.sleepNanos(queueWait);
+                return Decision.PROCEED;
+        }
+    }
+
+    /**
+     * Gets the number of conversations that currently have a bucket.
+     * @return The number of buckets held by the limiter.
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * Removes idle buckets. At most one caller sweeps the map per idle period.
+     */
+    private void evictIdleBuckets(long now) {
+        long lastEviction = lastEvictionNanos.get();
+        if (now - lastEviction < idleNanos || !lastEvictionNanos.compareAndSet(lastEviction, now)) {
+            return;
+        }
+        buckets.values().removeIf(bucket -> bucket.isIdle(now));
+    }
+
+    private class Bucket {
+        private double tokens;
+        private long lastRefillNanos;
+        private long lastUsedNanos;
+        private long latestTicket;
+        private boolean noticeSent;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefillNanos = now;
+            this.lastUsedNanos = now;
+        }
+
+        /**
+         * Takes a token from the bucket, borrowing against future refills if the wait for
+         * the token is at most maxWaitNanos.
+         * @return How long to wait before the token is available, -1 if it is not
+         * available in time.
+         */
+        synchronized long reserve(long now, long maxWaitNanos) {
+            refill(now);
+            lastUsedNanos = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                noticeSent = false;
+                return 0;
+            }
+            long waitNanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            tokens -= 1;
+            return waitNanos;
+        }
+
+        synchronized void refund() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+
+        synchronized long nextTicket() {
+            return ++latestTicket;
+        }
+
+        synchronized boolean isSuperseded(long ticket) {
+            return ticket != latestTicket;
+        }
+
+        /**
+         * @return True if this is the first dropped message since the last one was handled.
+         */
+        synchronized boolean markNoticeSent() {
+            boolean firstDrop = !noticeSent;
+            noticeSent = true;
+            return firstDrop;
+        }
+
+        synchronized boolean isIdle(long now) {
+            refill(now);
+            return tokens >= capacity && now - lastUsedNanos >= idleNanos;
+        }
+
+        private void refill(long now) {
+            if (now > lastRefillNanos) {
+                tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+                lastRefillNanos = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.google.businessmessages.cart;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Starts the background threads of the bot. Every thread is a daemon, so it never keeps the
+ * instance from shutting down. If the runtime does not allow creating threads, the failure is
+ * logged and reported to the caller, which falls back to working without the thread.
+ */
+public class DaemonThreads {
+    private static final Logger logger = Logger.getLogger(DaemonThreads.class.getName());
+
+    private DaemonThreads() {
+    }
+
+    /**
+     * Starts a daemon thread.
+     * @param name The name of the thread.
+     * @param task The task the thread runs.
+     * @param fallback What happens instead if the thread cannot be started, for the log.
+     * @return True if the thread was started.
+     */
+    public static boolean start(String name, Runnable task, String fallback) {
+        try {
+            newThread(name, task).start();
+            return true;
+        } catch (SecurityException | IllegalStateException e) {
+            logger.log(Level.WARNING, "Unable to start " + name + ", " + fallback + ".", e);
+            return false;
+        }
+    }
+
+    /**
+     * Creates a factory of daemon threads, i.e. for the workers of a thread pool.
+     * @param name The name of every thread created.
+     * @return The thread factory.
+     */
+    public static ThreadFactory factory(String name) {
+        return task -> newThread(name, task);
+    }
+
+    private static Thread newThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -6,16 +6,22 @@ import com.google.common.collect.ImmutableList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.List;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Wrapper layer to manage all Datastore queries and storage requests.
  */
-public class DataManager {
+public class DataManager implements StockLedger.StockStore {
 
     private static final int MAX_QUERY_LIMIT = 50;
+    private static final int MAX_TRANSACTION_ATTEMPTS = 5;
     //Types of entities in datastore
     protected static final String CART_TYPE = "Cart";
     protected static final String CART_ITEM_TYPE = "CartItem";
@@ -23,6 +29,8 @@ public class DataManager {
     protected static final String ORDER_TYPE = "Order";
     protected static final String PICKUP_TYPE = "Pickup";
     protected static final String WIDGET_CONTEXT_TYPE = "WidgetContext";
+    protected static final String MENU_STATE_TYPE = "MenuState";
+    protected static final String STOCK_TYPE = "Stock";
     //Properties of entities in datastore
     protected static final String PROPERTY_CONVERSATION_ID = "conversation_id";
     protected static final String PROPERTY_CART_ID = "cart_id";
@@ -32,11 +40,18 @@ public class DataManager {
     protected static final String PROPERTY_FILTER_NAME = "filter_name";
     protected static final String PROPERTY_FILTER_VALUE = "filter_value";
     protected static final String PROPERTY_ORDER_ID = "order_id";
+    protected static final String PROPERTY_ORDER_ITEM_IDS = "order_item_ids";
     protected static final String PROPERTY_STORE_ADDRESS = "store_address";
     protected static final String PROPERTY_PICKUP_TIME = "pickup_time";
     protected static final String PROPERTY_PICKUP_STATUS = "pickup_status";
     protected static final String PROPERTY_PICKUP_ADDED_CAL = "pickup_cal";
     protected static final String PROPERTY_WIDGET_CONTEXT_STRING = "widget_context_string";
+    protected static final String PROPERTY_CART_NON_EMPTY = "cart_non_empty";
+    protected static final String PROPERTY_HAS_FILTERS = "has_filters";
+    protected static final String PROPERTY_UNSCHEDULED_ORDER_IDS = "unscheduled_order_ids";
+    protected static final String PROPERTY_SCHEDULED_ORDER_IDS = "scheduled_order_ids";
+    protected static final String PROPERTY_SCHEDULED_PICKUP_TIMES = "scheduled_pickup_times";
+    protected static final String PROPERTY_STOCK_ON_HAND = "stock_on_hand";
     //Types of pickup statuses in datastore
     protected static final String PICKUP_INCOMPLETE_STATUS = "incomplete";
     protected static final String PICKUP_SCHEDULED_STATUS = "scheduled";
@@ -470,11 +485,22 @@ public class DataManager {
      * @param orderId The unique id belonging to the user's order.
      */
     public void addOrder(String conversationId, String orderId) {
+        addOrder(conversationId, orderId, ImmutableList.of());
+    }
+
+    /**
+     * Adds a user's order, with the ids of the items in it, to the database.
+     * @param conversationId The unique id mapping between a user and the agent.
+     * @param orderId The unique id belonging to the user's order.
+     * @param itemIds The ids of the items in the order.
+     */
+    public void addOrder(String conversationId, String orderId, List<String> itemIds) {
         Transaction transaction = datastore.beginTransaction();
         try {
             Entity order = new Entity(ORDER_TYPE);
             order.setProperty(PROPERTY_CONVERSATION_ID, conversationId);
             order.setProperty(PROPERTY_ORDER_ID, orderId);
+            order.setUnindexedProperty(PROPERTY_ORDER_ITEM_IDS, itemIds);
             datastore.put(transaction, order);
             transaction.commit();
         } catch (IllegalStateException e) {
@@ -508,6 +534,27 @@ public class DataManager {
         return ImmutableList.copyOf(orders);
     }
 
+    /**
+     * Queries the datastore for the item ids of every order that recorded them, across all
+     * users.
+     * @return The item ids of each order, keyed by order id.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, List<String>> getAllOrderItemIds() {
+        Map<String, List<String>> orderItemIds = new HashMap<>();
+        try {
+            for (Entity order : datastore.prepare(new Query(ORDER_TYPE)).asIterable()) {
+                List<String> itemIds = (List<String>) order.getProperty(PROPERTY_ORDER_ITEM_IDS);
+                if (itemIds != null) {
+                    orderItemIds.put((String) order.getProperty(PROPERTY_ORDER_ID), itemIds);
+                }
+            }
+        } catch (DatastoreFailureException e) {
+            logger.log(Level.SEVERE, "Datastore was not able to load the orders.", e);
+        }
+        return orderItemIds;
+    }
+
     //Functions modifying/querying for Pickup objects.
      /**
      * Converts the pickup status enum to a string equivalent capable of being stored 
@@ -690,4 +737,183 @@ public class DataManager {
         }
         return null;
     }
-}
\ No newline at end of file
+
+    //Functions modifying/querying MenuState objects.
+    /**
+     * Gets the user's materialized menu state, building and saving it within a transaction if
+     * the user does not have one yet. If another request saves a menu state first, the
+     * transaction fails and the saved menu state is returned instead of overwriting it.
+     * @param conversationId The unique id mapping between the user and the agent.
+     * @param builder Builds the menu state entity from the user's data.
+     * @return The menu state entity.
+     */
+    public Entity getOrCreateMenuState(String conversationId, Supplier<Entity> builder) {
+        Key key = KeyFactory.createKey(MENU_STATE_TYPE, conversationId);
+        Entity menuState = null;
+        for (int attempt = 1; attempt <= MAX_TRANSACTION_ATTEMPTS; attempt++) {
+            Transaction transaction = datastore.beginTransaction();
+            try {
+                return datastore.get(transaction, key);
+            } catch (EntityNotFoundException e) {
+                menuState = builder.get();
+                try {
+                    datastore.put(transaction, menuState);
+                    transaction.commit();
+                    return menuState;
+                } catch (ConcurrentModificationException ex) {
+                    logger.log(Level.WARNING, "The menu state of " + conversationId
+                        + " is being concurrently created, attempt " + attempt + ".", ex);
+                } catch (DatastoreFailureException ex) {
+                    logger.log(Level.SEVERE, "Datastore was not able to add the menu state of "
+                        + conversationId + ".", ex);
+                    break;
+                }
+            } catch (DatastoreFailureException e) {
+                logger.log(Level.SEVERE, "Datastore was not able to get the menu state of "
+                    + conversationId + ".", e);
+                break;
+            } finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+            }
+        }
+        return menuState != null ? menuState : builder.get();
+    }
+
+    /**
+     * Applies an incremental update to the user's menu state within a transaction. If the user
+     * does not have a menu state yet, nothing is updated since it will be built from the user's
+     * data the next time it is read. Transactions that fail on contention are retried a few
+     * times; if the update still cannot be applied the menu state is deleted so that it is
+     * rebuilt instead of being left out of date.
+     * @param conversationId The unique id mapping between the user and the agent.
+     * @param update The modification applied to the menu state entity.
+     */
+    public void updateMenuState(String conversationId, Consumer<Entity> update) {
+        Key key = KeyFactory.createKey(MENU_STATE_TYPE, conversationId);
+        for (int attempt = 1; attempt <= MAX_TRANSACTION_ATTEMPTS; attempt++) {
+            Transaction transaction = datastore.beginTransaction();
+            try {
+                Entity menuState = datastore.get(transaction, key);
+                update.accept(menuState);
+                datastore.put(transaction, menuState);
+                transaction.commit();
+                return;
+            } catch (EntityNotFoundException e) {
+                logger.log(Level.INFO, "No menu state to update for conversation: " + conversationId + ".");
+                return;
+            } catch (ConcurrentModificationException e) {
+                logger.log(Level.WARNING, "The menu state of " + conversationId
+                    + " is being concurrently modified, attempt " + attempt + ".", e);
+            } catch (DatastoreFailureException e) {
+                logger.log(Level.SEVERE, "Datastore was not able to update the menu state of "
+                    + conversationId + ".", e);
+                break;
+            } finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+            }
+        }
+        deleteMenuState(key);
+    }
+
+    /**
+     * Deletes a menu state that could not be updated so it is rebuilt from the user's data the
+     * next time it is read.
+     */
+    private void deleteMenuState(Key key) {
+        try {
+            datastore.delete(key);
+        } catch (ConcurrentModificationException | DatastoreFailureException e) {
+            logger.log(Level.SEVERE, "The menu state " + key + " could not be deleted.", e);
+        }
+    }
+
+    //Functions modifying/querying Stock objects.
+    /**
+     * Gets the stock on hand of every item that has been sold. A failure is not swallowed,
+     * since an empty result would read as every item having the default stock.
+     * @return The stock on hand keyed by item id, empty if nothing has been sold.
+     * @throws DatastoreFailureException If the stock levels could not be loaded.
+     */
+    @Override
+    public Map<String, Long> getStockLevels() {
+        Map<String, Long> stockLevels = new HashMap<>();
+        for (Entity stock : datastore.prepare(new Query(STOCK_TYPE)).asIterable()) {
+            stockLevels.put(stock.getKey().getName(), (Long) stock.getProperty(PROPERTY_STOCK_ON_HAND));
+        }
+        return stockLevels;
+    }
+
+    /**
+     * Subtracts sold counts from the stock on hand, in a transaction per item so concurrent
+     * sales of the same item on different instances are all applied. A count is only
+     * subtracted if the item has that much stock on hand left. If an item is sold out or its
+     * transaction fails, the counts already subtracted for the order are added back, so the
+     * order takes either all of its stock or none. Transactions that fail on contention are
+     * retried a few times.
+     * @param itemCounts The count sold of each item.
+     * @param defaultStock The stock on hand of items that have no stock level yet.
+     * @return Whether the counts were subtracted.
+     */
+    @Override
+    public StockLedger.CommitResult commitStock(Map<String, Integer> itemCounts, long defaultStock) {
+        Map<String, Integer> subtracted = new HashMap<>();
+        for (Map.Entry<String, Integer> itemCount : itemCounts.entrySet()) {
+            StockLedger.CommitResult result = adjustStock(itemCount.getKey(), -itemCount.getValue(), defaultStock);
+            if (result != StockLedger.CommitResult.COMMITTED) {
+                for (Map.Entry<String, Integer> undone : subtracted.entrySet()) {
+                    if (adjustStock(undone.getKey(), undone.getValue(), defaultStock)
+                        != StockLedger.CommitResult.COMMITTED) {
+                        logger.log(Level.SEVERE, undone.getValue() + " of item " + undone.getKey()
+                            + " could not be returned to the stock on hand.");
+                    }
+                }
+                return result;
+            }
+            subtracted.put(itemCount.getKey(), itemCount.getValue());
+        }
+        return StockLedger.CommitResult.COMMITTED;
+    }
+
+    /**
+     * Adds a change to the stock on hand of an item, unless it would leave less than none.
+     */
+    private StockLedger.CommitResult adjustStock(String itemId, long change, long defaultStock) {
+        Key key = KeyFactory.createKey(STOCK_TYPE, itemId);
+        for (int attempt = 1; attempt <= MAX_TRANSACTION_ATTEMPTS; attempt++) {
+            Transaction transaction = datastore.beginTransaction();
+            try {
+                Entity stock;
+                try {
+                    stock = datastore.get(transaction, key);
+                } catch (EntityNotFoundException e) {
+                    stock = new Entity(key);
+                    stock.setUnindexedProperty(PROPERTY_STOCK_ON_HAND, defaultStock);
+                }
+                long onHand = (Long) stock.getProperty(PROPERTY_STOCK_ON_HAND) + change;
+                if (onHand < 0) {
+                    logger.log(Level.INFO, "Item " + itemId + " is short by " + -onHand + ".");
+                    return StockLedger.CommitResult.SOLD_OUT;
+                }
+                stock.setUnindexedProperty(PROPERTY_STOCK_ON_HAND, onHand);
+                datastore.put(transaction, stock);
+                transaction.commit();
+                return StockLedger.CommitResult.COMMITTED;
+            } catch (ConcurrentModificationException e) {
+                logger.log(Level.WARNING, "The stock of " + itemId + " is being concurrently modified, attempt "
+                    + attempt + ".", e);
+            } catch (DatastoreFailureException e) {
+                logger.log(Level.SEVERE, "Datastore was not able to update the stock of " + itemId + ".", e);
+                return StockLedger.CommitResult.FAILED;
+            } finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+            }
+        }
+        return StockLedger.CommitResult.FAILED;
+    }
+}
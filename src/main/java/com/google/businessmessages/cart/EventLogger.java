@@ -0,0 +1,176 @@
+package com.google.businessmessages.cart;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Structured event logging for the request path. Every event is written as a single line of
+ * key=value pairs by a background appender, so the thread handling the request only pays for
+ * enqueueing it. Message bodies are supplied lazily and are only rendered for a sampled fraction
+ * of each category's events, or when the event records a failure.
+ *
+ * The appender queue is bounded; when it is full new events are dropped rather than blocking
+ * the request, and the number of dropped events is reported once the appender catches up.
+ */
+public class EventLogger {
+
+    /**
+     * The kinds of events that are logged, each with its own body sampling rate. The default
+     * rate can be overridden with the system property cartbot.log.sample.[category], e.g.
+     * cartbot.log.sample.outbound=0.5.
+     */
+    public enum Category {
+        INBOUND(0.01),
+        OUTBOUND(0.01),
+        RECEIPT(0.0);
+
+        private final double sampleRate;
+
+        Category(double defaultSampleRate) {
+            this.sampleRate = readSampleRate(name().toLowerCase(), defaultSampleRate);
+        }
+
+        public double getSampleRate() {
+            return this.sampleRate;
+        }
+    }
+
+    private static final Logger logger = Logger.getLogger(EventLogger.class.getName());
+    private static final String SAMPLE_RATE_PROPERTY_PREFIX = "cartbot.log.sample.";
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private static final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong droppedEvents = new AtomicLong();
+    private static final boolean async = startAppender();
+
+    /**
+     * Logs an event. The body is only rendered if the event is sampled for its category.
+     * The supplier is invoked on the appender thread, so it must only capture objects that
+     * are not modified after this call.
+     * @param category The category of the event, which determines its sampling rate.
+     * @param event The name of the event.
+     * @param conversationId The conversation the event belongs to.
+     * @param id The message or request id the event refers to, may be null.
+     * @param body Supplier of the event's body.
+     */
+    public static void log(Category category, String event, String conversationId, String id,
+            Supplier<String> body) {
+        append(new Event(Level.INFO, category, event, conversationId, id,
+            isSampled(category) ? body : null, null));
+    }
+
+    /**
+     * Logs a failed event. The body of a failed event is always rendered.
+     * @param category The category of the event.
+     * @param event The name of the event.
+     * @param conversationId The conversation the event belongs to.
+     * @param id The message or request id the event refers to, may be null.
+     * @param body Supplier of the event's body.
+     * @param thrown The exception that caused the failure, may be null.
+     */
+    public static void logFailure(Category category, String event, String conversationId, String id,
+            Supplier<String> body, Throwable thrown) {
+        append(new Event(Level.SEVERE, category, event, conversationId, id, body, thrown));
+    }
+
+    /**
+     * Returns whether the body of an event in the given category should be logged.
+     * @param category The category of the event.
+     * @return True if the event was picked by the category's sampling rate.
+     */
+    public static boolean isSampled(Category category) {
+        double sampleRate = category.getSampleRate();
+        return sampleRate >= 1.0
+            || (sampleRate > 0.0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    private static void append(Event event) {
+        if (!async) {
+            write(event);
+        } else if (!queue.offer(event)) {
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    /**
+     * Starts the daemon thread that drains the queue.
+     * @return True if the appender thread was started.
+     */
+    private static boolean startAppender() {
+        return DaemonThreads.start("event-logger", EventLogger::drain, "events are written synchronously");
+    }
+
+    private static void drain() {
+        while (true) {
+            try {
+                write(queue.take());
+                if (queue.isEmpty()) {
+                    long dropped = droppedEvents.getAndSet(0);
+                    if (dropped > 0) {
+                        logger.warning("event=events_dropped count=" + dropped);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Exception thrown while writing event.", e);
+            }
+        }
+    }
+
+    private static void write(Event event) {
+        if (!logger.isLoggable(event.level)) {
+            return;
+        }
+        StringBuilder line = new StringBuilder(128)
+            .append("event=").append(event.name)
+            .append(" category=").append(event.category.name().toLowerCase())
+            .append(" conversation_id=").append(event.conversationId);
+        if (event.id != null) {
+            line.append(" id=").append(event.id);
+        }
+        if (event.body != null) {
+            line.append(" body=").append(event.body.get());
+        }
+        logger.log(event.level, line.toString(), event.thrown);
+    }
+
+    private static double readSampleRate(String categoryName, double defaultSampleRate) {
+        String value = System.getProperty(SAMPLE_RATE_PROPERTY_PREFIX + categoryName);
+        if (value == null) {
+            return defaultSampleRate;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return defaultSampleRate;
+        }
+    }
+
+    private static class Event {
+        private final Level level;
+        private final Category category;
+        private final String name;
+        private final String conversationId;
+        private final String id;
+        private final Supplier<String> body;
+        private final Throwable thrown;
+
+        Event(Level level, Category category, String name, String conversationId, String id,
+                Supplier<String> body, Throwable thrown) {
+            this.level = level;
+            this.category = category;
+            this.name = name;
+            this.conversationId = conversationId;
+            this.id = id;
+            this.body = body;
+            this.thrown = thrown;
+        }
+    }
+}
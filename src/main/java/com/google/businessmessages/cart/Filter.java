@@ -36,4 +36,13 @@ public class Filter {
     public void setValue(String value) {
         this.value = value;
     }
+
+    /**
+     * Returns whether the filter selects an option of an item property, such as a color,
+     * rather than a price range or a sort order.
+     * @return True if the filter matches against item properties.
+     */
+    public boolean isAttributeFilter() {
+        return !name.equals(BotConstants.PRICE_FILTER_NAME) && !name.equals(BotConstants.SORT_FILTER_NAME);
+    }
 }
\ No newline at end of file
@@ -50,6 +50,7 @@ public class FilterManager {
     public static void setFilter(String conversationId, String filterName, String filterValue) {
         DataManager dataManager = DataManager.getInstance();
         dataManager.addFilter(conversationId, filterName, filterValue);
+        MenuStateManager.setHasFilters(conversationId);
     }
     
     /**
@@ -60,5 +61,6 @@ public class FilterManager {
     public static void removeFilter(String conversationId, String filterName) {
         DataManager dataManager = DataManager.getInstance(); 
         dataManager.addFilter(conversationId, filterName, "all");
+        MenuStateManager.setHasFilters(conversationId);
     }
 }
\ No newline at end of file
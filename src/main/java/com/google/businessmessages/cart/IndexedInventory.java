@@ -0,0 +1,138 @@
+package com.google.businessmessages.cart;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Implementation of Inventory that indexes its items by id and by title when it is built, so
+ * looking up an item takes constant time instead of a scan over the whole collection. The
+ * indexes are immutable open-addressing tables of item positions, which keeps them compact
+ * even for large catalogs. Items are also indexed by their property options so that filtered
+ * queries are answered with bitmap intersections.
+ */
+public class IndexedInventory implements Inventory {
+    private final ImmutableList<InventoryItem> inventoryItems;
+    private final ItemIndex idIndex;
+    private final ItemIndex titleIndex;
+    private final AttributeIndex attributeIndex;
+
+    public IndexedInventory(Collection<InventoryItem> items) {
+        this.inventoryItems = ImmutableList.copyOf(items);
+        this.idIndex = new ItemIndex(inventoryItems, InventoryItem::getId);
+        this.titleIndex = new ItemIndex(inventoryItems, item -> normalizeTitle(item.getTitle()));
+        this.attributeIndex = new AttributeIndex(inventoryItems);
+    }
+
+    @Override
+    public ImmutableList<InventoryItem> getInventory() {
+        return inventoryItems;
+    }
+
+    @Override
+    public Optional<InventoryItem> getItem(String itemId) {
+        return idIndex.get(inventoryItems, itemId);
+    }
+
+    @Override
+    public int getOrdinal(String itemId) {
+        return idIndex.getPosition(itemId);
+    }
+
+    @Override
+    public List<InventoryItem> getMatchingItems(List<Filter> filters) {
+        return attributeIndex.getMatchingItems(filters);
+    }
+
+    @Override
+    public int[] getMatchingOrdinals(List<Filter> filters) {
+        return attributeIndex.match(filters).stream().toArray();
+    }
+
+    @Override
+    public Map<String, Integer> getFacetCounts(List<Filter> filters, String propertyName, List<String> options) {
+        return attributeIndex.getFacetCounts(filters, propertyName, options);
+    }
+
+    /**
+     * Gets the attribute index of the inventory's items.
+     * @return attributeIndex The index from property options to item positions.
+     */
+    public AttributeIndex getAttributeIndex() {
+        return attributeIndex;
+    }
+
+    /**
+     * Gets the inventory item with the given title. Titles are matched ignoring case and
+     * surrounding whitespace.
+     * @param title The title of the item.
+     * @return item The Optional containing the InventoryItem instance if exists in the inventory, empty if it does not.
+     */
+    public Optional<InventoryItem> getItemByTitle(String title) {
+        return title == null ? Optional.empty() : titleIndex.get(inventoryItems, normalizeTitle(title));
+    }
+
+    private static String normalizeTitle(String title) {
+        return title.trim().toLowerCase();
+    }
+
+    /**
+     * Open-addressing hash table from a key to the position of its item, using linear probing.
+     * The table is at most half full, so probe sequences stay short. If several items share a
+     * key, the first of them is indexed.
+     */
+    private static class ItemIndex {
+        private final String[] keys;
+        private final int[] positions;
+        private final int mask;
+
+        ItemIndex(ImmutableList<InventoryItem> items, Function<InventoryItem, String> keyFunction) {
+            int capacity = Integer.highestOneBit(Math.max(2, items.size()) * 2 - 1) << 1;
+            this.keys = new String[capacity];
+            this.positions = new int[capacity];
+            this.mask = capacity - 1;
+            for (int i = 0; i < items.size(); i++) {
+                String key = keyFunction.apply(items.get(i));
+                if (key == null) {
+                    continue;
+                }
+                int slot = hash(key) & mask;
+                while (keys[slot] != null && !keys[slot].equals(key)) {
+                    slot = (slot + 1) & mask;
+                }
+                if (keys[slot] == null) {
+                    keys[slot] = key;
+                    positions[slot] = i;
+                }
+            }
+        }
+
+        Optional<InventoryItem> get(ImmutableList<InventoryItem> items, String key) {
+            int position = getPosition(key);
+            return position < 0 ? Optional.empty() : Optional.of(items.get(position));
+        }
+
+        int getPosition(String key) {
+            if (key == null) {
+                return -1;
+            }
+            int slot = hash(key) & mask;
+            while (keys[slot] != null) {
+                if (keys[slot].equals(key)) {
+                    return positions[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private static int hash(String key) {
+            // spread the high bits down, since only the low bits select the slot
+            int h = key.hashCode();
+            return h ^ (h >>> 16);
+        }
+    }
+}
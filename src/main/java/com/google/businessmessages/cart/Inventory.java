@@ -1,6 +1,15 @@
 package com.google.businessmessages.cart;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import com.google.common.collect.ImmutableCollection;
 
 /**
@@ -8,7 +17,8 @@ import com.google.common.collect.ImmutableCollection;
  * supports two main functions: returning the entire collection of items and returning a 
  * particular item instance from the inventory.
  * 
- * This interface is currently implemented by MockInventory and will need to be implemented 
+ * This interface is currently implemented by MockInventory and IndexedInventory, which indexes
+ * the items of another inventory for constant time lookups. It will need to be implemented
  * by a similar class for custom use.
  */
 public interface Inventory {
@@ -25,4 +35,70 @@ public interface Inventory {
      * @return item The Optional containing the InventoryItem instance if exists in the inventory, empty if it does not.
      */
     Optional<InventoryItem> getItem(String itemId);
+
+    /**
+     * Gets the position, within getInventory(), of the item specified by the item id.
+     * Implementations that index their items by id should override this scan.
+     * @param itemId The item's unique identifier.
+     * @return ordinal The position of the item, -1 if it is not in the inventory.
+     */
+    default int getOrdinal(String itemId) {
+        return getItem(itemId).map(item -> getInventory().asList().indexOf(item)).orElse(-1);
+    }
+
+    /**
+     * Gets the items that have the option selected by every filter. Filters set to "all"
+     * match every item, and filters that are not on item properties, like the price range, are
+     * ignored. Implementations backed by an index should override this scan.
+     * @param filters The filters the items must match.
+     * @return items The list of matching items, in inventory order.
+     */
+    default List<InventoryItem> getMatchingItems(List<Filter> filters) {
+        List<Filter> filtersMinusAll = filters.stream()
+            .filter(x -> !x.getValue().equals("all") && x.isAttributeFilter()).collect(Collectors.toList());
+        return getInventory().stream()
+            .filter(item -> filtersMinusAll.stream().allMatch(f -> item.getProperties().stream()
+                .filter(prop -> prop.getName().equals(f.getName()))
+                .findFirst()
+                .map(prop -> prop.getOptions().contains(f.getValue()))
+                .orElse(false)))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the positions, within getInventory(), of the items that have the option selected
+     * by every filter.
+     * @param filters The filters the items must match.
+     * @return ordinals The positions of the matching items, in ascending order.
+     */
+    default int[] getMatchingOrdinals(List<Filter> filters) {
+        List<InventoryItem> items = getInventory().asList();
+        Set<InventoryItem> matchingItems = Collections.newSetFromMap(new IdentityHashMap<>());
+        matchingItems.addAll(getMatchingItems(filters));
+        return IntStream.range(0, items.size())
+            .filter(i -> matchingItems.contains(items.get(i)))
+            .toArray();
+    }
+
+    /**
+     * Counts the items each option of a property would match when combined with the given
+     * filters. Any filter on the property itself is ignored, since choosing an option replaces it.
+     * Options are matched case-insensitively, and the "all" option counts every item matching
+     * the other filters.
+     * @param filters The filters the user currently has set.
+     * @param propertyName The name of the property whose options are counted.
+     * @param options The options of the property.
+     * @return optionCounts The number of matching items for each option, in the order given.
+     */
+    default Map<String, Integer> getFacetCounts(List<Filter> filters, String propertyName, List<String> options) {
+        List<Filter> otherFilters = filters.stream()
+            .filter(x -> !x.getName().equals(propertyName)).collect(Collectors.toList());
+        Map<String, Integer> optionCounts = new LinkedHashMap<>();
+        for (String option : options) {
+            List<Filter> optionFilters = new ArrayList<>(otherFilters);
+            optionFilters.add(new Filter(propertyName, option.toLowerCase()));
+            optionCounts.put(option, getMatchingItems(optionFilters).size());
+        }
+        return optionCounts;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,145 @@
+package com.google.businessmessages.cart;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide holder of the store inventory. The inventory is loaded once, from the product
+ * feed configured in appengine-web.xml or from the mock inventory if there is none, and a
+ * daemon thread then polls the feed and reloads it whenever the file changes.
+ *
+ * A reload builds and indexes the new inventory off to the side and publishes it with a single
+ * reference swap, so readers never block on a reload or see a half-built index. Turns keep the
+ * snapshot they captured, and an old snapshot is garbage collected once the last turn reading
+ * from it has finished.
+ */
+public class InventoryHolder {
+    // System property holding how often, in seconds, the feed is checked for changes. 0 disables reloading
+    public static final String REFRESH_SECONDS_PROPERTY = "cartbot.catalog.refresh_seconds";
+
+    private static final Logger logger = Logger.getLogger(InventoryHolder.class.getName());
+    private static final long DEFAULT_REFRESH_SECONDS = 60;
+    private static final AtomicReference<InventorySnapshot> currentSnapshot = new AtomicReference<>();
+    // Serializes loads, so only one new inventory is ever being built at a time
+    private static final Object loadLock = new Object();
+    // The modification time of the feed when it was last loaded, guarded by loadLock. A feed that
+    // failed to load is not retried until it changes again
+    private static long loadedFeedModifiedMillis = -1;
+
+    /**
+     * Gets the current inventory snapshot, loading the inventory if this is the first use.
+     * @return The most recently published snapshot.
+     */
+    public static InventorySnapshot getSnapshot() {
+        InventorySnapshot snapshot = currentSnapshot.get();
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (loadLock) {
+            if (currentSnapshot.get() == null) {
+                currentSnapshot.set(new InventorySnapshot(loadInventory(), 1));
+                startRefresher();
+            }
+        }
+        return currentSnapshot.get();
+    }
+
+    /**
+     * Reloads the inventory if the product feed has changed since it was last loaded, and
+     * publishes the new inventory as the current snapshot. If the new feed cannot be loaded,
+     * the current snapshot is kept.
+     * @return True if a new snapshot was published.
+     */
+    public static boolean refreshIfChanged() {
+        Path feedPath = getFeedPath();
+        if (feedPath == null) {
+            return false;
+        }
+        synchronized (loadLock) {
+            InventorySnapshot snapshot = currentSnapshot.get();
+            long feedModifiedMillis = getModifiedMillis(feedPath);
+            if (snapshot == null || feedModifiedMillis == loadedFeedModifiedMillis) {
+                return false;
+            }
+            loadedFeedModifiedMillis = feedModifiedMillis;
+            try {
+                Inventory inventory = CatalogFeedLoader.load(feedPath);
+                currentSnapshot.set(new InventorySnapshot(inventory, snapshot.getVersion() + 1));
+                logger.info("Published inventory snapshot " + (snapshot.getVersion() + 1) + " from " + feedPath + ".");
+                return true;
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Exception thrown while reloading the catalog feed, keeping snapshot "
+                    + snapshot.getVersion() + ".", e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Loads the store inventory from the configured product feed, falling back to the mock
+     * inventory if no feed is configured or it cannot be loaded. Must hold loadLock.
+     */
+    private static Inventory loadInventory() {
+        Path feedPath = getFeedPath();
+        if (feedPath != null) {
+            loadedFeedModifiedMillis = getModifiedMillis(feedPath);
+            try {
+                return CatalogFeedLoader.load(feedPath);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Exception thrown while loading the catalog feed, using the mock inventory.", e);
+            }
+        }
+        return new IndexedInventory(
+            new MockInventory(BotConstants.INVENTORY_IMAGES, BotConstants.INVENTORY_PROPERTIES,
+                BotConstants.INVENTORY_PRICES).getInventory());
+    }
+
+    /**
+     * Starts the daemon thread that polls the product feed for changes. Nothing is started if
+     * there is no feed or reloading is disabled.
+     */
+    private static void startRefresher() {
+        long refreshSeconds = Long.getLong(REFRESH_SECONDS_PROPERTY, DEFAULT_REFRESH_SECONDS);
+        if (getFeedPath() == null || refreshSeconds <= 0) {
+            return;
+        }
+        DaemonThreads.start("inventory-refresher", () -> poll(refreshSeconds),
+            "the catalog will not be reloaded");
+    }
+
+    private static void poll(long refreshSeconds) {
+        while (true) {
+            try {
+                TimeUnit.SECONDS.sleep(refreshSeconds);
+                refreshIfChanged();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Exception thrown while refreshing the inventory.", e);
+            }
+        }
+    }
+
+    private static Path getFeedPath() {
+        String feedPath = System.getProperty(CatalogFeedLoader.FEED_PATH_PROPERTY);
+        return feedPath == null || feedPath.isEmpty() ? null : Paths.get(feedPath);
+    }
+
+    /**
+     * Gets the modification time of the feed, or 0 if it cannot be read, so a missing feed
+     * is reloaded once it appears.
+     */
+    private static long getModifiedMillis(Path feedPath) {
+        try {
+            return Files.getLastModifiedTime(feedPath).toMillis();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
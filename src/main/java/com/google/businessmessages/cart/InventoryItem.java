@@ -14,7 +14,8 @@ public class InventoryItem {
     private String id;
     private String title;
     private String mediaUrl;
-    private double price;
+    // Prices are kept in whole cents so totals add up exactly
+    private long priceCents;
     private List<ItemProperty> properties;
 
     public InventoryItem(String itemTitle, String itemMediaURL, Map<String, List<String>> itemProperties) {
@@ -36,7 +37,26 @@ public class InventoryItem {
 
     public InventoryItem(String itemTitle, String itemMediaURL, double itemPrice) {
         this(itemTitle, itemMediaURL);
-        this.price = itemPrice;
+        this.priceCents = toCents(itemPrice);
+    }
+
+    /**
+     * Constructor for subclasses that store the item's fields elsewhere and override
+     * every getter.
+     */
+    protected InventoryItem() {
+    }
+
+    public InventoryItem(String itemTitle, String itemMediaURL, double itemPrice,
+            Map<String, List<String>> itemProperties) {
+        this(itemTitle, itemMediaURL, itemProperties);
+        this.priceCents = toCents(itemPrice);
+    }
+
+    public InventoryItem(String itemTitle, String itemMediaURL, long itemPriceCents,
+            Map<String, List<String>> itemProperties) {
+        this(itemTitle, itemMediaURL, itemProperties);
+        this.priceCents = itemPriceCents;
     }
 
     /**
@@ -60,7 +80,15 @@ public class InventoryItem {
      * @return price The price of the item.
      */
     public double getPrice() {
-        return this.price;
+        return getPriceCents() / 100.0;
+    }
+
+    /**
+     * Gets the item's price in cents.
+     * @return priceCents The price of the item in cents.
+     */
+    public long getPriceCents() {
+        return this.priceCents;
     }
 
     /**
@@ -78,4 +106,13 @@ public class InventoryItem {
     public List<ItemProperty> getProperties() {
         return this.properties;
     }
+
+    /**
+     * Converts a price to whole cents, rounding to the nearest cent.
+     * @param price The price.
+     * @return The price in cents.
+     */
+    public static long toCents(double price) {
+        return Math.round(price * 100);
+    }
 }
\ No newline at end of file
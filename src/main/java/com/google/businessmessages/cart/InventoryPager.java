@@ -0,0 +1,204 @@
+package com.google.businessmessages.cart;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Splits the inventory items matching a user's filters into carousel sized pages. The
+ * positions of the matching items are computed once per conversation and set of filters and
+ * cached, so following a "More results" cursor serves the next page without running the
+ * query again.
+ *
+ * If the user has chosen to sort by price, the results are sorted once, when they are cached.
+ * Otherwise, if the user arrived from a page of the business website, the results are ranked
+ * against the widget context, so the first page holds the most relevant items.
+ *
+ * Results of the default query for each combination of the size, brand and color filters are
+ * precomputed with the inventory snapshot, in its InventoryQueryCache, and are served from there.
+ *
+ * If the user's cart can only be picked up at some of the stores, the results are restricted
+ * to items stocked at one of those stores, so the whole cart can still be picked up at once.
+ *
+ * A cursor is an opaque lowercase hex string holding a hash of the filters and inventory
+ * snapshot it was created for and the offset of the page. If the user's filters have changed,
+ * or a new inventory has been published, since the cursor was created, the first page of the
+ * new results is served instead.
+ *
+ * The cached positions are bounded by their total size rather than their number, since a
+ * broad query over a large catalog matches far more items than a narrow one.
+ */
+public class InventoryPager {
+    public static final String CACHE_MB_PROPERTY = "cartbot.pager.cache_mb";
+    public static final int PAGE_SIZE = 10;
+
+    private static final long DEFAULT_CACHE_MB = 16;
+    private static final int SIGNATURE_HEX_LENGTH = 8;
+    private static final Cache<String, int[]> matchingOrdinals = CacheBuilder.newBuilder()
+        .maximumWeight(Long.getLong(CACHE_MB_PROPERTY, DEFAULT_CACHE_MB) * 1024 * 1024 / Integer.BYTES)
+        // weighed in ints, counting one for the entry itself so empty results are bounded too
+        .weigher((String key, int[] ordinals) -> ordinals.length + 1)
+        .expireAfterAccess(30, TimeUnit.MINUTES)
+        .build();
+
+    /**
+     * A page of matching items.
+     */
+    public static class Page {
+        private final ImmutableList<InventoryItem> items;
+        private final int totalCount;
+        private final String nextCursor;
+        private final ImmutableList<CardCache.CachedCard> cardTemplates;
+
+        Page(ImmutableList<InventoryItem> items, int totalCount, String nextCursor,
+                ImmutableList<CardCache.CachedCard> cardTemplates) {
+            this.items = items;
+            this.totalCount = totalCount;
+            this.nextCursor = nextCursor;
+            this.cardTemplates = cardTemplates;
+        }
+
+        /**
+         * Gets the items on the page.
+         * @return items The items on this page, in result order.
+         */
+        public ImmutableList<InventoryItem> getItems() {
+            return this.items;
+        }
+
+        /**
+         * Gets the number of items matching the filters across all pages.
+         * @return totalCount The total number of matching items.
+         */
+        public int getTotalCount() {
+            return this.totalCount;
+        }
+
+        /**
+         * Gets the cursor of the page that follows this one.
+         * @return nextCursor The cursor of the next page, null if this is the last page.
+         */
+        public String getNextCursor() {
+            return this.nextCursor;
+        }
+
+        /**
+         * Gets the prebuilt shop cards of the items on the page, without their descriptions.
+         * @return cardTemplates The cached cards in item order, null if they were not prebuilt.
+         */
+        public ImmutableList<CardCache.CachedCard> getCardTemplates() {
+            return this.cardTemplates;
+        }
+    }
+
+    /**
+     * Gets the page of items matching the given filters at the given cursor.
+     * @param snapshot The inventory snapshot being searched.
+     * @param conversationId The conversation the results belong to.
+     * @param filters The user's current filters.
+     * @param context The widget context the results are ranked against, null to keep them in
+     * inventory order.
+     * @param cursor The cursor of the page, null for the first page.
+     * @return The page of matching items.
+     */
+    public static Page getPage(InventorySnapshot snapshot, String conversationId, List<Filter> filters,
+            String context, String cursor) {
+        return getPage(snapshot, conversationId, filters, context, null, cursor);
+    }
+
+    /**
+     * Gets the page of items matching the given filters and stocked at one of the given
+     * stores, at the given cursor.
+     * @param snapshot The inventory snapshot being searched.
+     * @param conversationId The conversation the results belong to.
+     * @param filters The user's current filters.
+     * @param context The widget context the results are ranked against, null to keep them in
+     * inventory order.
+     * @param pickupStores The stores the user's cart can be picked up at, null for every store.
+     * @param cursor The cursor of the page, null for the first page.
+     * @return The page of matching items.
+     */
+    public static Page getPage(InventorySnapshot snapshot, String conversationId, List<Filter> filters,
+            String context, List<String> pickupStores, String cursor) {
+        Inventory inventory = snapshot.getInventory();
+        // positions are only valid within the snapshot they were computed for
+        String signature = snapshot.getVersion() + "/" + getSignature(filters)
+            + (context == null ? "" : "#" + context)
+            + (pickupStores == null ? "" : "@" + String.join(",", pickupStores));
+        String signatureHash = String.format("%08x", signature.hashCode());
+        InventoryQueryCache.Result cached = context == null
+            && (pickupStores == null || pickupStores.size() == BotConstants.STORE_NAME_TO_ADDRESS.size())
+            ? snapshot.getQueryCache().get(filters) : null;
+        int[] ordinals = cached != null ? cached.getOrdinals()
+            : matchingOrdinals.getIfPresent(conversationId + ":" + signature);
+        if (ordinals == null) {
+            int[] matching = snapshot.getStoreAvailability().restrict(snapshot.getMatchingOrdinals(filters),
+                pickupStores);
+            ordinals = order(snapshot, matching, filters, context);
+            matchingOrdinals.put(conversationId + ":" + signature, ordinals);
+        }
+
+        int offset = getOffset(cursor, signatureHash);
+        if (offset < 0 || offset >= ordinals.length) {
+            offset = 0;
+        }
+        int end = Math.min(offset + PAGE_SIZE, ordinals.length);
+        List<InventoryItem> allItems = inventory.getInventory().asList();
+        ImmutableList.Builder<InventoryItem> pageItems = ImmutableList.builder();
+        for (int i = offset; i < end; i++) {
+            pageItems.add(allItems.get(ordinals[i]));
+        }
+        String nextCursor = end < ordinals.length ? signatureHash + Integer.toHexString(end) : null;
+        ImmutableList<CardCache.CachedCard> cardTemplates =
+            cached != null && offset == 0 ? cached.getFirstPageCards() : null;
+        return new Page(pageItems.build(), ordinals.length, nextCursor, cardTemplates);
+    }
+
+    /**
+     * Orders the matching items by the user's sort filter, or by relevance to the widget
+     * context if they have not chosen to sort by price.
+     */
+    private static int[] order(InventorySnapshot snapshot, int[] ordinals, List<Filter> filters, String context) {
+        Filter sortFilter = InventorySnapshot.getFilter(filters, BotConstants.SORT_FILTER_NAME);
+        String sortOrder = sortFilter == null ? "" : sortFilter.getValue();
+        if (sortOrder.equalsIgnoreCase(BotConstants.SORT_LOWEST_PRICE)) {
+            return snapshot.getPriceIndex().sort(ordinals, false);
+        } else if (sortOrder.equalsIgnoreCase(BotConstants.SORT_HIGHEST_PRICE)) {
+            return snapshot.getPriceIndex().sort(ordinals, true);
+        } else if (context != null) {
+            return snapshot.getSearchIndex().rank(ordinals, context, PAGE_SIZE);
+        }
+        return ordinals;
+    }
+
+    /**
+     * Builds a signature that identifies a set of filters regardless of their order.
+     */
+    private static String getSignature(List<Filter> filters) {
+        List<String> filterStrings = new ArrayList<>();
+        for (Filter filter : filters) {
+            filterStrings.add(filter.getName() + "=" + filter.getValue());
+        }
+        return filterStrings.stream().sorted().collect(Collectors.joining("&"));
+    }
+
+    /**
+     * Reads the page offset from a cursor.
+     * @return The offset, or 0 if there is no cursor or it belongs to different filters.
+     */
+    private static int getOffset(String cursor, String signatureHash) {
+        if (cursor == null || cursor.length() <= SIGNATURE_HEX_LENGTH
+                || !cursor.startsWith(signatureHash)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(cursor.substring(SIGNATURE_HEX_LENGTH), 16);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
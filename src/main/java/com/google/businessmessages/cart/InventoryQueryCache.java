@@ -0,0 +1,187 @@
+package com.google.businessmessages.cart;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Results of every combination of the size, brand and color filters, computed when an
+ * inventory snapshot is built so that browsing the shop with those filters is a single map
+ * lookup. Each result holds the positions of the matching items and the cached shop cards of
+ * its first page, without their descriptions, which depend on the live stock and are filled in
+ * when the page is sent.
+ *
+ * The results are computed in parallel on a pool of daemon threads shared by every snapshot.
+ * A combination matching more items than MAX_CACHED_ORDINALS is not kept, which bounds the
+ * memory of a large catalog, and is answered by InventoryPager instead.
+ *
+ * Only queries whose other filters are left at their defaults are cached: no price range, the
+ * featured sort order and no widget context. Other queries are answered by InventoryPager.
+ */
+public class InventoryQueryCache {
+    private static final Logger logger = Logger.getLogger(InventoryQueryCache.class.getName());
+    private static final String ALL_FILTER_VALUE = "all";
+    private static final int MAX_CACHED_ORDINALS = 1 << 20;
+    private static final List<String> CACHED_FILTER_NAMES = ImmutableList.of(
+        BotConstants.SIZE_FILTER_NAME, BotConstants.BRAND_FILTER_NAME, BotConstants.COLOR_FILTER_NAME);
+    private static final List<ImmutableSet<String>> CACHED_FILTER_VALUES = ImmutableList.of(
+        withAll(BotConstants.SIZE_LIST), withAll(BotConstants.BRAND_LIST), withAll(BotConstants.COLOR_LIST));
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), DaemonThreads.factory("query-cache-builder"));
+
+    private final ImmutableMap<String, Result> results;
+
+    /**
+     * A cached query result.
+     */
+    public static class Result {
+        private final int[] ordinals;
+        private final ImmutableList<CardCache.CachedCard> firstPageCards;
+
+        Result(int[] ordinals, ImmutableList<CardCache.CachedCard> firstPageCards) {
+            this.ordinals = ordinals;
+            this.firstPageCards = firstPageCards;
+        }
+
+        /**
+         * Gets the positions of the matching items. The array is shared and must not be modified.
+         * @return ordinals The positions of the matching items, in ascending order.
+         */
+        public int[] getOrdinals() {
+            return this.ordinals;
+        }
+
+        /**
+         * Gets the cached shop cards of the first page of matching items.
+         * @return firstPageCards The cached cards, in result order.
+         */
+        public ImmutableList<CardCache.CachedCard> getFirstPageCards() {
+            return this.firstPageCards;
+        }
+    }
+
+    /**
+     * Computes the results of every filter combination over an inventory, in parallel.
+     * @param inventory The inventory of the snapshot being built.
+     * @param cardCache The card cache of the snapshot being built, which the first page cards
+     * are taken from.
+     */
+    public InventoryQueryCache(Inventory inventory, CardCache cardCache) {
+        List<List<Filter>> queries = new ArrayList<>();
+        for (String size : CACHED_FILTER_VALUES.get(0)) {
+            for (String brand : CACHED_FILTER_VALUES.get(1)) {
+                for (String color : CACHED_FILTER_VALUES.get(2)) {
+                    queries.add(ImmutableList.of(new Filter(BotConstants.SIZE_FILTER_NAME, size),
+                        new Filter(BotConstants.BRAND_FILTER_NAME, brand),
+                        new Filter(BotConstants.COLOR_FILTER_NAME, color)));
+                }
+            }
+        }
+        List<Future<Result>> futures = new ArrayList<>();
+        ImmutableMap<String, Result> computed = ImmutableMap.of();
+        try {
+            for (List<Filter> query : queries) {
+                futures.add(WORKERS.submit(() -> compute(inventory, cardCache, query)));
+            }
+            ImmutableMap.Builder<String, Result> builder = ImmutableMap.builder();
+            for (int i = 0; i < queries.size(); i++) {
+                Result result = futures.get(i).get();
+                if (result != null) {
+                    builder.put(getKey(queries.get(i)), result);
+                }
+            }
+            computed = builder.build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.WARNING, "Interrupted while building the inventory query cache.", e);
+        } catch (ExecutionException e) {
+            logger.log(Level.SEVERE, "Unable to build the inventory query cache.", e.getCause());
+        } finally {
+            // stop the rest of a failed build, which does nothing once every result is in
+            for (Future<Result> future : futures) {
+                future.cancel(true);
+            }
+        }
+        this.results = computed;
+    }
+
+    /**
+     * Gets the cached result of a query.
+     * @param filters The user's current filters.
+     * @return The result, null if the query is not cached.
+     */
+    public Result get(List<Filter> filters) {
+        String[] values = new String[CACHED_FILTER_NAMES.size()];
+        for (Filter filter : filters) {
+            String value = filter.getValue().toLowerCase();
+            int index = CACHED_FILTER_NAMES.indexOf(filter.getName());
+            if (index >= 0) {
+                values[index] = value;
+            } else if (filter.getName().equals(BotConstants.PRICE_FILTER_NAME)) {
+                if (!value.equals(ALL_FILTER_VALUE)) {
+                    return null;
+                }
+            } else if (filter.getName().equals(BotConstants.SORT_FILTER_NAME)) {
+                if (!value.equalsIgnoreCase(BotConstants.SORT_FEATURED)) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+        StringBuilder key = new StringBuilder();
+        for (String value : values) {
+            key.append(value == null ? ALL_FILTER_VALUE : value).append('|');
+        }
+        return results.get(key.toString());
+    }
+
+    /**
+     * Gets the number of cached results.
+     * @return The number of filter combinations cached.
+     */
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * Computes the result of a query, null if it matches too many items to be kept.
+     */
+    private static Result compute(Inventory inventory, CardCache cardCache, List<Filter> query) {
+        int[] ordinals = inventory.getMatchingOrdinals(query);
+        if (ordinals.length > MAX_CACHED_ORDINALS) {
+            return null;
+        }
+        List<InventoryItem> items = inventory.getInventory().asList();
+        ImmutableList.Builder<CardCache.CachedCard> cards = ImmutableList.builder();
+        for (int i = 0; i < ordinals.length && i < InventoryPager.PAGE_SIZE; i++) {
+            cards.add(cardCache.getShopCard(items.get(ordinals[i])));
+        }
+        return new Result(ordinals, cards.build());
+    }
+
+    private static String getKey(List<Filter> query) {
+        StringBuilder key = new StringBuilder();
+        for (Filter filter : query) {
+            key.append(filter.getValue()).append('|');
+        }
+        return key.toString();
+    }
+
+    private static ImmutableSet<String> withAll(List<String> options) {
+        ImmutableSet.Builder<String> values = ImmutableSet.builder();
+        values.add(ALL_FILTER_VALUE);
+        for (String option : options) {
+            values.add(option.toLowerCase());
+        }
+        return values.build();
+    }
+}
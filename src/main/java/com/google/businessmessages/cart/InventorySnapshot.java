@@ -0,0 +1,170 @@
+package com.google.businessmessages.cart;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, fully built store inventory together with the version it was published as.
+ * Snapshots are published by InventoryHolder, and a turn reads every item from the single
+ * snapshot it captured, even if a newer one is published while the turn is being handled.
+ * The snapshot's search, price and store indexes and its query cache are built along with it,
+ * before the snapshot is published, and queries that combine item properties with a price
+ * range go through the snapshot. Item cards are cached per snapshot, so a new catalog version
+ * never reuses a card rendered from the previous one.
+ */
+public class InventorySnapshot {
+    private final Inventory inventory;
+    private final long version;
+    private final SearchIndex searchIndex;
+    private final PriceIndex priceIndex;
+    private final StoreAvailability storeAvailability;
+    private final CardCache cardCache;
+    private final InventoryQueryCache queryCache;
+
+    public InventorySnapshot(Inventory inventory, long version) {
+        this.inventory = inventory;
+        this.version = version;
+        this.searchIndex = new SearchIndex(inventory.getInventory().asList());
+        this.priceIndex = new PriceIndex(inventory.getInventory().asList());
+        this.storeAvailability = new StoreAvailability(inventory);
+        this.cardCache = new CardCache();
+        this.queryCache = new InventoryQueryCache(inventory, cardCache);
+    }
+
+    /**
+     * Gets the inventory of this snapshot.
+     * @return inventory The fully indexed store inventory.
+     */
+    public Inventory getInventory() {
+        return this.inventory;
+    }
+
+    /**
+     * Gets the version of this snapshot. Versions increase every time a new snapshot is published.
+     * @return version The version of the snapshot.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Gets the full-text index over the items of this snapshot.
+     * @return searchIndex The search index of the inventory.
+     */
+    public SearchIndex getSearchIndex() {
+        return this.searchIndex;
+    }
+
+    /**
+     * Gets the price index over the items of this snapshot.
+     * @return priceIndex The price index of the inventory.
+     */
+    public PriceIndex getPriceIndex() {
+        return this.priceIndex;
+    }
+
+    /**
+     * Gets the availability of the items of this snapshot at each store.
+     * @return storeAvailability The store availability of the inventory.
+     */
+    public StoreAvailability getStoreAvailability() {
+        return this.storeAvailability;
+    }
+
+    /**
+     * Gets the cache of the rendered cards of the items of this snapshot.
+     * @return cardCache The card cache of the inventory.
+     */
+    public CardCache getCardCache() {
+        return this.cardCache;
+    }
+
+    /**
+     * Gets the precomputed results of the size, brand and color filter combinations.
+     * @return queryCache The query cache of the inventory.
+     */
+    public InventoryQueryCache getQueryCache() {
+        return this.queryCache;
+    }
+
+    /**
+     * Gets the positions of the given items. Items that are not in the inventory, i.e. because
+     * they were removed from the catalog, are skipped.
+     * @param itemIds The unique ids of the items.
+     * @return The positions of the items, in ascending order.
+     */
+    public int[] getOrdinals(Collection<String> itemIds) {
+        return itemIds.stream()
+            .mapToInt(inventory::getOrdinal)
+            .filter(ordinal -> ordinal >= 0)
+            .sorted()
+            .toArray();
+    }
+
+    /**
+     * Gets the positions of the items that match every property filter and are within the
+     * price range filter, if any.
+     * @param filters The filters the items must match.
+     * @return The positions of the matching items, in ascending order.
+     */
+    public int[] getMatchingOrdinals(List<Filter> filters) {
+        return priceIndex.filter(inventory.getMatchingOrdinals(filters),
+            getFilter(filters, BotConstants.PRICE_FILTER_NAME));
+    }
+
+    /**
+     * Counts the items each option of a filter would match when combined with the user's
+     * other filters, including the price range.
+     * @param filters The filters the user currently has set.
+     * @param filterName The name of the filter whose options are counted.
+     * @param options The options of the filter.
+     * @return The number of matching items for each option, in the order given.
+     */
+    public Map<String, Integer> getFacetCounts(List<Filter> filters, String filterName, List<String> options) {
+        Filter priceFilter = getFilter(filters, BotConstants.PRICE_FILTER_NAME);
+        if (filterName.equals(BotConstants.PRICE_FILTER_NAME)) {
+            return priceIndex.getFacetCounts(inventory.getMatchingOrdinals(filters), options);
+        }
+        if (filterName.equals(BotConstants.SORT_FILTER_NAME)) {
+            // sorting does not change which items match
+            int matchingCount = getMatchingOrdinals(filters).length;
+            Map<String, Integer> optionCounts = new LinkedHashMap<>();
+            for (String option : options) {
+                optionCounts.put(option, matchingCount);
+            }
+            return optionCounts;
+        }
+        if (priceFilter == null || PriceIndex.parseRange(priceFilter.getValue()) == null) {
+            return inventory.getFacetCounts(filters, filterName, options);
+        }
+        List<Filter> otherFilters = new ArrayList<>();
+        for (Filter filter : filters) {
+            if (!filter.getName().equals(filterName)) {
+                otherFilters.add(filter);
+            }
+        }
+        Map<String, Integer> optionCounts = new LinkedHashMap<>();
+        for (String option : options) {
+            List<Filter> optionFilters = new ArrayList<>(otherFilters);
+            optionFilters.add(new Filter(filterName, option.toLowerCase()));
+            optionCounts.put(option, getMatchingOrdinals(optionFilters).length);
+        }
+        return optionCounts;
+    }
+
+    /**
+     * Finds the filter with the given name.
+     * @return The filter, null if there is none.
+     */
+    static Filter getFilter(List<Filter> filters, String filterName) {
+        for (Filter filter : filters) {
+            if (filter.getName().equals(filterName)) {
+                return filter;
+            }
+        }
+        return null;
+    }
+}
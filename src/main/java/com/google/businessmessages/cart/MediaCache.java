@@ -0,0 +1,118 @@
+package com.google.businessmessages.cart;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * On-disk cache of generated media, i.e. thumbnails. Every entry is a file in the cache
+ * directory that is memory-mapped once written, so serving it copies straight from the page
+ * cache without reading it onto the heap. The total size of the entries is bounded, and the
+ * least recently used entries are evicted and their files deleted to stay within it.
+ *
+ * The cache directory is emptied when the cache is created, since the entries are cheap to
+ * generate again. Mappings of evicted entries are released when they are garbage collected.
+ */
+public class MediaCache {
+    private static final Logger logger = Logger.getLogger(MediaCache.class.getName());
+
+    private final Path directory;
+    private final long maxBytes;
+    // Guarded by this, in access order so the eldest entry is the least recently used
+    private final LinkedHashMap<String, MappedByteBuffer> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * Creates an empty cache.
+     * @param directory The directory the entries are stored in. It is created if needed.
+     * @param maxBytes The maximum total size of the entries.
+     * @throws IOException If the directory cannot be created or emptied.
+     */
+    public MediaCache(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Stores an entry, replacing any entry with the same key.
+     * @param key The key of the entry, which must be usable as a file name, i.e. a hex hash.
+     * @param content The content of the entry.
+     * @throws IOException If the entry cannot be written.
+     */
+    public void put(String key, byte[] content) throws IOException {
+        if (content.length > maxBytes) {
+            return;
+        }
+        // write under a temporary name so a partially written file is never mapped
+        Path file = directory.resolve(key);
+        Path partialFile = Files.createTempFile(directory, key, ".partial");
+        Files.write(partialFile, content);
+        Files.move(partialFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, content.length);
+        }
+        synchronized (this) {
+            MappedByteBuffer previous = entries.put(key, buffer);
+            totalBytes += content.length - (previous == null ? 0 : previous.capacity());
+            evict();
+        }
+    }
+
+    /**
+     * Gets an entry, marking it as recently used.
+     * @param key The key of the entry.
+     * @return A read-only view of the entry's content, null if it is not cached.
+     */
+    public synchronized ByteBuffer get(String key) {
+        MappedByteBuffer buffer = entries.get(key);
+        return buffer == null ? null : buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Checks whether an entry is cached, without marking it as recently used.
+     * @param key The key of the entry.
+     * @return True if the entry is cached.
+     */
+    public synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Gets the total size of the cached entries.
+     * @return The size of the entries in bytes.
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, MappedByteBuffer>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, MappedByteBuffer> entry = eldest.next();
+            totalBytes -= entry.getValue().capacity();
+            eldest.remove();
+            try {
+                Files.deleteIfExists(directory.resolve(entry.getKey()));
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to delete evicted media " + entry.getKey(), e);
+            }
+        }
+    }
+}
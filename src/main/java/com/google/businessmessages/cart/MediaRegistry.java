@@ -0,0 +1,195 @@
+package com.google.businessmessages.cart;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Registry of content versions of the images shown on cards. Each image is downloaded and
+ * hashed in the background, and once its hash is known the image is linked with the hash
+ * appended to its URL, i.e. "...shoe.png?v=1f3a9c02b7de". Cards can then let the platform
+ * and clients cache the image rather than force-refreshing it on every send, since a change
+ * in content changes the URL.
+ *
+ * The static card art, the mock inventory images and the store maps are registered up front,
+ * and any other image, i.e. from a catalog feed, is registered the first time it is shown.
+ * Images that have not been hashed yet are shown unversioned and force-refreshed, as before.
+ * Every registered image is hashed again periodically, and cached cards compare the URL they
+ * link with the current one so they pick up new versions.
+ */
+public class MediaRegistry {
+    public static final String REFRESH_MINUTES_PROPERTY = "cartbot.media.refresh_minutes";
+
+    private static final Logger logger = Logger.getLogger(MediaRegistry.class.getName());
+    private static final long DEFAULT_REFRESH_MINUTES = 60;
+    private static final long NEW_MEDIA_POLL_SECONDS = 10;
+    private static final int MAX_TRACKED_URLS = 20000;
+    private static final int VERSION_LENGTH = 12;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+    private static final String UNKNOWN_VERSION = "";
+
+    private static MediaRegistry instance;
+
+    private final MediaSource source;
+    // url to the hash of its content, UNKNOWN_VERSION until it has been hashed
+    private final Map<String, String> versions = new ConcurrentHashMap<>();
+    // urls that could not be read, only retried when every image is hashed again
+    private final Set<String> unreadable = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Opens the content of an image.
+     */
+    public interface MediaSource {
+        InputStream open(String url) throws IOException;
+    }
+
+    /**
+     * Creates an empty registry.
+     * @param source Where the content of registered images is read from.
+     */
+    public MediaRegistry(MediaSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Gets the registry of this instance. On first use, the static images are registered and
+     * the thread that hashes them is started.
+     * @return The media registry.
+     */
+    public static synchronized MediaRegistry getInstance() {
+        if (instance == null) {
+            instance = new MediaRegistry(MediaRegistry::download);
+            for (String url : new String[] {BotConstants.PICKUP_IMAGE, BotConstants.CALENDAR_IMAGE,
+                    BotConstants.COLOR_CARD_IMAGE, BotConstants.BRAND_CARD_IMAGE, BotConstants.SIZE_CARD_IMAGE}) {
+                instance.register(url);
+            }
+            BotConstants.INVENTORY_IMAGES.values().forEach(instance::register);
+            BotConstants.STORE_NAME_TO_LOCATION.values().forEach(instance::register);
+            instance.startHasher(Long.getLong(REFRESH_MINUTES_PROPERTY, DEFAULT_REFRESH_MINUTES));
+        }
+        return instance;
+    }
+
+    /**
+     * Registers an image so its content is hashed.
+     * @param url The URL of the image.
+     */
+    public void register(String url) {
+        if (url != null && versions.size() < MAX_TRACKED_URLS) {
+            versions.putIfAbsent(url, UNKNOWN_VERSION);
+        }
+    }
+
+    /**
+     * Gets the URL of an image with its content version appended, registering the image if
+     * it is not registered yet.
+     * @param url The URL of the image.
+     * @return The versioned URL, null if the content of the image has not been hashed yet.
+     */
+    public String getVersionedUrl(String url) {
+        String version = getVersion(url);
+        return version == null ? null : url + (url.indexOf('?') < 0 ? "?v=" : "&v=") + version;
+    }
+
+    /**
+     * Gets the content version of an image, registering the image if it is not registered yet.
+     * @param url The URL of the image.
+     * @return The hash of the image's content, null if it has not been hashed yet.
+     */
+    public String getVersion(String url) {
+        if (url == null) {
+            return null;
+        }
+        String version = versions.get(url);
+        if (version == null) {
+            register(url);
+            return null;
+        }
+        return version.equals(UNKNOWN_VERSION) ? null : version;
+    }
+
+    /**
+     * Hashes registered images. Images that cannot be read keep their last known version.
+     * @param all True to hash every image again, false to only hash images that have no
+     * version yet and have not failed to be read.
+     */
+    public void refresh(boolean all) {
+        for (Map.Entry<String, String> entry : versions.entrySet()) {
+            if (!all && (!entry.getValue().equals(UNKNOWN_VERSION) || unreadable.contains(entry.getKey()))) {
+                continue;
+            }
+            try {
+                String version = hash(entry.getKey());
+                versions.put(entry.getKey(), version);
+                unreadable.remove(entry.getKey());
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Unable to read image " + entry.getKey(), e);
+                unreadable.add(entry.getKey());
+            }
+        }
+    }
+
+    private String hash(String url) throws IOException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        try (InputStream in = source.open(url);
+                OutputStream out = Funnels.asOutputStream(hasher)) {
+            ByteStreams.copy(in, out);
+        }
+        return hasher.hash().toString().substring(0, VERSION_LENGTH);
+    }
+
+    /**
+     * Downloads an image.
+     */
+    static InputStream download(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new IOException("Unexpected response " + connection.getResponseCode() + " for " + url);
+        }
+        return connection.getInputStream();
+    }
+
+    /**
+     * Starts the daemon thread that hashes new images every few seconds and every image once
+     * per refresh interval.
+     */
+    private void startHasher(long refreshMinutes) {
+        DaemonThreads.start("media-hasher", () -> hashPeriodically(refreshMinutes),
+            "media will not be versioned and cards keep force-refreshing it");
+    }
+
+    private void hashPeriodically(long refreshMinutes) {
+        long nextRefreshNanos = System.nanoTime();
+        while (true) {
+            try {
+                boolean all = System.nanoTime() - nextRefreshNanos >= 0;
+                if (all) {
+                    nextRefreshNanos = System.nanoTime() + TimeUnit.MINUTES.toNanos(refreshMinutes);
+                }
+                refresh(all);
+                TimeUnit.SECONDS.sleep(NEW_MEDIA_POLL_SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Exception thrown while hashing media.", e);
+            }
+        }
+    }
+}
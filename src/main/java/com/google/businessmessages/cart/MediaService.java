@@ -0,0 +1,310 @@
+package com.google.businessmessages.cart;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.communications.businessmessages.v1.MediaHeight;
+
+/**
+ * Generates right-sized JPEG thumbnails of card images for each card height and serves them
+ * from a MediaCache through the MediaServlet. Source images are read from a local directory
+ * if one is configured and has the image, and downloaded otherwise. Thumbnails are generated
+ * on a pool of worker threads, one task per source image, which decodes the image once and
+ * resizes it to every height.
+ *
+ * A thumbnail's path holds the source image's URL and content version, as known by the
+ * MediaRegistry, so the content at a path never changes and it can be cached indefinitely. Any
+ * instance can serve any thumbnail path of a known image, generating the thumbnail on the
+ * request if it is not cached there. Cards link a thumbnail once it has been generated, and
+ * link the source image until then. The service is disabled unless the public base URL of the
+ * app is configured, since cards need an absolute URL.
+ */
+public class MediaService {
+    public static final String BASE_URL_PROPERTY = "cartbot.media.base_url";
+    public static final String SOURCE_DIR_PROPERTY = "cartbot.media.source_dir";
+    public static final String CACHE_DIR_PROPERTY = "cartbot.media.cache_dir";
+    public static final String CACHE_MB_PROPERTY = "cartbot.media.cache_mb";
+    public static final String MEDIA_PATH = "/media";
+
+    private static final Logger logger = Logger.getLogger(MediaService.class.getName());
+    private static final long DEFAULT_CACHE_MB = 64;
+    private static final String THUMBNAIL_EXTENSION = ".jpg";
+    private static final float JPEG_QUALITY = 0.85f;
+    // Heights in pixels, twice the height of each card in density-independent pixels
+    private static final ImmutableMap<MediaHeight, Integer> THUMBNAIL_HEIGHTS = ImmutableMap.of(
+        MediaHeight.SHORT, 224,
+        MediaHeight.MEDIUM, 336,
+        MediaHeight.TALL, 528);
+    private static final ImmutableSet<String> STATIC_IMAGES = ImmutableSet.<String>builder()
+        .add(BotConstants.PICKUP_IMAGE, BotConstants.CALENDAR_IMAGE, BotConstants.COLOR_CARD_IMAGE,
+            BotConstants.BRAND_CARD_IMAGE, BotConstants.SIZE_CARD_IMAGE)
+        .addAll(BotConstants.INVENTORY_IMAGES.values())
+        .addAll(BotConstants.STORE_NAME_TO_LOCATION.values())
+        .build();
+
+    private static MediaService instance;
+
+    private final String baseUrl;
+    private final Path sourceDirectory;
+    private final MediaCache cache;
+    private final ExecutorService workers;
+    // source urls whose thumbnails are being generated
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    // the media urls of the inventory snapshot last checked, to only serve thumbnails of known images
+    private volatile InventorySnapshot knownSnapshot;
+    private volatile Set<String> knownInventoryUrls;
+
+    /**
+     * Creates a service.
+     * @param baseUrl The public base URL of the app, i.e. "https://example.appspot.com", or
+     * null to disable the service.
+     * @param sourceDirectory The local directory source images are read from, by the last
+     * segment of their URLs, or null to download every source image.
+     * @param cache The cache thumbnails are stored in.
+     * @param workers The pool thumbnails are generated on.
+     */
+    public MediaService(String baseUrl, Path sourceDirectory, MediaCache cache, ExecutorService workers) {
+        this.baseUrl = baseUrl;
+        this.sourceDirectory = sourceDirectory;
+        this.cache = cache;
+        this.workers = workers;
+    }
+
+    /**
+     * Gets the service of this instance.
+     * @return The media service.
+     */
+    public static synchronized MediaService getInstance() {
+        if (instance == null) {
+            String baseUrl = System.getProperty(BASE_URL_PROPERTY, "");
+            String sourceDir = System.getProperty(SOURCE_DIR_PROPERTY, "");
+            Path cacheDir = Paths.get(System.getProperty(CACHE_DIR_PROPERTY,
+                Paths.get(System.getProperty("java.io.tmpdir"), "cartbot-media").toString()));
+            MediaCache cache = null;
+            if (!baseUrl.isEmpty()) {
+                try {
+                    cache = new MediaCache(cacheDir, Long.getLong(CACHE_MB_PROPERTY, DEFAULT_CACHE_MB) * 1024 * 1024);
+                } catch (IOException | SecurityException e) {
+                    logger.log(Level.WARNING, "Unable to create the media cache, thumbnails are disabled.", e);
+                }
+            }
+            if (cache == null) {
+                instance = new MediaService(null, null, null, null);
+            } else {
+                instance = new MediaService(baseUrl.replaceAll("/+$", ""),
+                    sourceDir.isEmpty() ? null : Paths.get(sourceDir), cache,
+                    Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                        DaemonThreads.factory("thumbnail-worker")));
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the URL of an image's thumbnail, queueing the thumbnail for generation if it has
+     * not been generated yet.
+     * @param sourceUrl The URL of the full-size image.
+     * @param height The height of the card the image is shown on.
+     * @return The absolute URL of the thumbnail, null if it is not available yet.
+     */
+    public String getThumbnailUrl(String sourceUrl, MediaHeight height) {
+        if (baseUrl == null || sourceUrl == null) {
+            return null;
+        }
+        String version = MediaRegistry.getInstance().getVersion(sourceUrl);
+        if (version == null) {
+            return null;
+        }
+        String path = getPath(sourceUrl, version, height);
+        if (cache.contains(getKey(path))) {
+            return baseUrl + MEDIA_PATH + path;
+        }
+        if (pending.add(sourceUrl)) {
+            try {
+                workers.execute(() -> {
+                    try {
+                        generate(sourceUrl, version);
+                    } catch (IOException | RuntimeException e) {
+                        logger.log(Level.WARNING, "Unable to generate thumbnails of " + sourceUrl, e);
+                    } finally {
+                        pending.remove(sourceUrl);
+                    }
+                });
+            } catch (RejectedExecutionException | SecurityException | IllegalStateException e) {
+                pending.remove(sourceUrl);
+                logger.log(Level.WARNING, "Unable to queue thumbnails of " + sourceUrl, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets a thumbnail to serve, generating it on this thread if it is not cached.
+     * @param path The path of the thumbnail below MEDIA_PATH, as linked by getThumbnailUrl.
+     * @return A read-only view of the JPEG thumbnail, null if the path is not the thumbnail
+     * of a known image.
+     */
+    public ByteBuffer getThumbnail(String path) {
+        if (baseUrl == null || path == null) {
+            return null;
+        }
+        ByteBuffer thumbnail = cache.get(getKey(path));
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+        // paths are /<height>/<version>/<base64 source url>.jpg
+        String[] parts = path.split("/");
+        if (parts.length != 4 || !parts[3].endsWith(THUMBNAIL_EXTENSION)) {
+            return null;
+        }
+        String sourceUrl;
+        try {
+            sourceUrl = new String(Base64.getUrlDecoder().decode(
+                parts[3].substring(0, parts[3].length() - THUMBNAIL_EXTENSION.length())), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        // only the current version of a known image is generated, so arbitrary paths cannot fill the cache
+        if (!isKnownImage(sourceUrl) || !parts[2].equals(MediaRegistry.getInstance().getVersion(sourceUrl))
+                || !path.equals(getPath(sourceUrl, parts[2], parseHeight(parts[1])))) {
+            return null;
+        }
+        try {
+            generate(sourceUrl, parts[2]);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to generate thumbnails of " + sourceUrl, e);
+            return null;
+        }
+        return cache.get(getKey(path));
+    }
+
+    /**
+     * Scales an image to a height, keeping its aspect ratio. Images are never scaled up, and
+     * transparent areas are filled with white since thumbnails are JPEGs.
+     * @param source The full-size image.
+     * @param height The height of the thumbnail in pixels.
+     * @return The thumbnail.
+     */
+    public static BufferedImage resize(BufferedImage source, int height) {
+        int targetHeight = Math.min(height, source.getHeight());
+        int targetWidth = Math.max(1, (int) Math.round((double) source.getWidth() * targetHeight / source.getHeight()));
+        BufferedImage thumbnail = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, targetWidth, targetHeight, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Decodes a source image once and stores its thumbnail at every height.
+     */
+    private void generate(String sourceUrl, String version) throws IOException {
+        BufferedImage source;
+        try (InputStream in = openSource(sourceUrl)) {
+            source = ImageIO.read(in);
+        }
+        if (source == null) {
+            throw new IOException("Unsupported image format: " + sourceUrl);
+        }
+        for (Map.Entry<MediaHeight, Integer> height : THUMBNAIL_HEIGHTS.entrySet()) {
+            cache.put(getKey(getPath(sourceUrl, version, height.getKey())), encode(resize(source, height.getValue())));
+        }
+    }
+
+    private InputStream openSource(String sourceUrl) throws IOException {
+        if (sourceDirectory != null) {
+            String path = sourceUrl.replaceFirst("[?#].*$", "");
+            Path localFile = sourceDirectory.resolve(path.substring(path.lastIndexOf('/') + 1));
+            if (localFile.startsWith(sourceDirectory) && Files.isRegularFile(localFile)) {
+                return Files.newInputStream(localFile);
+            }
+        }
+        return MediaRegistry.download(sourceUrl);
+    }
+
+    private static byte[] encode(BufferedImage thumbnail) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream imageOut = new MemoryCacheImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(imageOut);
+            writer.write(null, new IIOImage(thumbnail, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Checks whether an image is shown on cards, so thumbnails are not generated for
+     * arbitrary URLs.
+     */
+    private boolean isKnownImage(String sourceUrl) {
+        if (STATIC_IMAGES.contains(sourceUrl)) {
+            return true;
+        }
+        InventorySnapshot snapshot = InventoryHolder.getSnapshot();
+        Set<String> inventoryUrls = knownInventoryUrls;
+        if (snapshot != knownSnapshot || inventoryUrls == null) {
+            inventoryUrls = snapshot.getInventory().getInventory().stream()
+                .map(InventoryItem::getMediaUrl)
+                .collect(Collectors.toSet());
+            knownInventoryUrls = inventoryUrls;
+            knownSnapshot = snapshot;
+        }
+        return inventoryUrls.contains(sourceUrl);
+    }
+
+    private static MediaHeight parseHeight(String height) {
+        for (MediaHeight mediaHeight : MediaHeight.values()) {
+            if (mediaHeight.name().toLowerCase().equals(height)) {
+                return mediaHeight;
+            }
+        }
+        return null;
+    }
+
+    private static String getPath(String sourceUrl, String version, MediaHeight height) {
+        return "/" + (height == null ? "" : height.name().toLowerCase()) + "/" + version + "/"
+            + Base64.getUrlEncoder().withoutPadding().encodeToString(sourceUrl.getBytes(StandardCharsets.UTF_8))
+            + THUMBNAIL_EXTENSION;
+    }
+
+    private static String getKey(String path) {
+        return Hashing.sha256().hashString(path, StandardCharsets.UTF_8).toString();
+    }
+}
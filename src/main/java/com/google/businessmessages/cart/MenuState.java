@@ -0,0 +1,86 @@
+package com.google.businessmessages.cart;
+
+import java.util.Date;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Materialized summary of everything the default menu needs to know about a user. The
+ * menu state is kept up to date by the managers whenever the user's cart, filters, orders
+ * or pickups change, so building the menu only takes a single read.
+ *
+ * Check-in readiness depends on the current time, so rather than storing it the state keeps
+ * the times of the user's scheduled pickups and evaluates their windows when read.
+ */
+public class MenuState {
+    private final String cartId;
+    private final boolean cartNonEmpty;
+    private final boolean hasFilters;
+    private final ImmutableList<String> unscheduledOrderIds;
+    private final ImmutableList<String> scheduledOrderIds;
+    private final ImmutableList<Date> scheduledPickupTimes;
+
+    public MenuState(String cartId, boolean cartNonEmpty, boolean hasFilters,
+            ImmutableList<String> unscheduledOrderIds, ImmutableList<String> scheduledOrderIds,
+            ImmutableList<Date> scheduledPickupTimes) {
+        this.cartId = cartId;
+        this.cartNonEmpty = cartNonEmpty;
+        this.hasFilters = hasFilters;
+        this.unscheduledOrderIds = unscheduledOrderIds;
+        this.scheduledOrderIds = scheduledOrderIds;
+        this.scheduledPickupTimes = scheduledPickupTimes;
+    }
+
+    /**
+     * Gets the id of the user's cart.
+     * @return cartId The unique id belonging to the user's cart.
+     */
+    public String getCartId() {
+        return this.cartId;
+    }
+
+    /**
+     * Returns whether the user's cart has any items in it.
+     * @return cartNonEmpty True if the cart has at least one item.
+     */
+    public boolean isCartNonEmpty() {
+        return this.cartNonEmpty;
+    }
+
+    /**
+     * Returns whether the user has set any filters.
+     * @return hasFilters True if the user has at least one filter.
+     */
+    public boolean hasFilters() {
+        return this.hasFilters;
+    }
+
+    /**
+     * Returns whether the user has any scheduled pickups.
+     * @return True if the user has at least one scheduled pickup.
+     */
+    public boolean hasScheduledPickups() {
+        return !this.scheduledOrderIds.isEmpty();
+    }
+
+    /**
+     * Gets the first of the user's orders that has not been scheduled for pickup.
+     * @return The order id, null if every order has a pickup.
+     */
+    public String getFirstUnscheduledOrderId() {
+        return unscheduledOrderIds.isEmpty() ? null : unscheduledOrderIds.get(0);
+    }
+
+    /**
+     * Gets the first of the user's scheduled pickups whose time window is currently open.
+     * @return The order id of the pickup, null if no pickup is ready for check-in.
+     */
+    public String getFirstCheckinReadyOrderId() {
+        Date currentTime = new Date();
+        for (int i = 0; i < scheduledOrderIds.size(); i++) {
+            if (PickupManager.isReadyForCheckin(scheduledPickupTimes.get(i), currentTime)) {
+                return scheduledOrderIds.get(i);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,200 @@
+package com.google.businessmessages.cart;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import com.google.appengine.api.datastore.Entity;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Manages the materialized menu state of each user. The state is built from the user's data
+ * the first time it is read and is then updated incrementally by the managers that modify
+ * carts, filters, orders and pickups.
+ */
+public class MenuStateManager {
+
+    /**
+     * Gets the menu state of the user in the given turn, building and saving it from the
+     * user's data if the user does not have one yet.
+     * @param turnContext The user's data for the current turn.
+     * @return The user's menu state.
+     */
+    public static MenuState getMenuState(TurnContext turnContext) {
+        Entity menuStateEntity = DataManager.getInstance().getOrCreateMenuState(
+            turnContext.getConversationId(), () -> buildMenuStateEntity(turnContext));
+        return entityToMenuState(menuStateEntity);
+    }
+
+    /**
+     * Records whether the user's cart has any items in it.
+     * @param conversationId The unique id mapping between the user and the agent.
+     * @param cartNonEmpty Whether the cart has at least one item.
+     */
+    public static void setCartNonEmpty(String conversationId, boolean cartNonEmpty) {
+        DataManager.getInstance().updateMenuState(conversationId,
+            ent -> ent.setProperty(DataManager.PROPERTY_CART_NON_EMPTY, cartNonEmpty));
+    }
+
+    /**
+     * Records that the user has set at least one filter.
+     * @param conversationId The unique id mapping between the user and the agent.
+     */
+    public static void setHasFilters(String conversationId) {
+        DataManager.getInstance().updateMenuState(conversationId,
+            ent -> ent.setProperty(DataManager.PROPERTY_HAS_FILTERS, true));
+    }
+
+    /**
+     * Records a newly placed order that still needs a pickup.
+     * @param conversationId The unique id mapping between the user and the agent.
+     * @param orderId The id of the order that was placed.
+     */
+    public static void addUnscheduledOrder(String conversationId, String orderId) {
+        DataManager.getInstance().updateMenuState(conversationId, ent -> {
+            List<String> orderIds = getStringList(ent, DataManager.PROPERTY_UNSCHEDULED_ORDER_IDS);
+            if (!orderIds.contains(orderId)) {
+                orderIds.add(orderId);
+            }
+            ent.setUnindexedProperty(DataManager.PROPERTY_UNSCHEDULED_ORDER_IDS, orderIds);
+        });
+    }
+
+    /**
+     * Records that the user has started scheduling a pickup for the given order.
+     * @param conversationId The unique id mapping between the user and the agent.
+     * @param orderId The id of the order the pickup is for.
+     */
+    public static void removeUnscheduledOrder(String conversationId, String orderId) {
+        DataManager.getInstance().updateMenuState(conversationId, ent -> {
+            List<String> orderIds = getStringList(ent, DataManager.PROPERTY_UNSCHEDULED_ORDER_IDS);
+            orderIds.remove(orderId);
+            ent.setUnindexedProperty(DataManager.PROPERTY_UNSCHEDULED_ORDER_IDS, orderIds);
+        });
+    }
+
+    /**
+     * Records that the given pickup has been fully scheduled.
+     * @param conversationId The unique id mapping between the user and the agent.
+     * @param pickup The pickup that was scheduled.
+     */
+    public static void addScheduledPickup(String conversationId, Pickup pickup) {
+        if (pickup == null || pickup.getTime() == null) {
+            return;
+        }
+        DataManager.getInstance().updateMenuState(conversationId, ent -> {
+            List<String> orderIds = getStringList(ent, DataManager.PROPERTY_SCHEDULED_ORDER_IDS);
+            List<Date> times = getDateList(ent, DataManager.PROPERTY_SCHEDULED_PICKUP_TIMES);
+            removeScheduledEntry(orderIds, times, pickup.getOrderId());
+            orderIds.add(pickup.getOrderId());
+            times.add(pickup.getTime());
+            ent.setUnindexedProperty(DataManager.PROPERTY_SCHEDULED_ORDER_IDS, orderIds);
+            ent.setUnindexedProperty(DataManager.PROPERTY_SCHEDULED_PICKUP_TIMES, times);
+        });
+    }
+
+    /**
+     * Records that the pickup for the given order is no longer scheduled (i.e. the user
+     * has checked in).
+     * @param conversationId The unique id mapping between the user and the agent.
+     * @param orderId The id of the order the pickup is for.
+     */
+    public static void removeScheduledPickup(String conversationId, String orderId) {
+        DataManager.getInstance().updateMenuState(conversationId, ent -> {
+            List<String> orderIds = getStringList(ent, DataManager.PROPERTY_SCHEDULED_ORDER_IDS);
+            List<Date> times = getDateList(ent, DataManager.PROPERTY_SCHEDULED_PICKUP_TIMES);
+            removeScheduledEntry(orderIds, times, orderId);
+            ent.setUnindexedProperty(DataManager.PROPERTY_SCHEDULED_ORDER_IDS, orderIds);
+            ent.setUnindexedProperty(DataManager.PROPERTY_SCHEDULED_PICKUP_TIMES, times);
+        });
+    }
+
+    /**
+     * Records that the pickup for the given order was cancelled, which makes the order
+     * unscheduled again.
+     * @param conversationId The unique id mapping between the user and the agent.
+     * @param orderId The id of the order the pickup was for.
+     */
+    public static void cancelPickup(String conversationId, String orderId) {
+        DataManager.getInstance().updateMenuState(conversationId, ent -> {
+            List<String> orderIds = getStringList(ent, DataManager.PROPERTY_SCHEDULED_ORDER_IDS);
+            List<Date> times = getDateList(ent, DataManager.PROPERTY_SCHEDULED_PICKUP_TIMES);
+            removeScheduledEntry(orderIds, times, orderId);
+            ent.setUnindexedProperty(DataManager.PROPERTY_SCHEDULED_ORDER_IDS, orderIds);
+            ent.setUnindexedProperty(DataManager.PROPERTY_SCHEDULED_PICKUP_TIMES, times);
+            List<String> unscheduledOrderIds = getStringList(ent, DataManager.PROPERTY_UNSCHEDULED_ORDER_IDS);
+            if (!unscheduledOrderIds.contains(orderId)) {
+                unscheduledOrderIds.add(orderId);
+            }
+            ent.setUnindexedProperty(DataManager.PROPERTY_UNSCHEDULED_ORDER_IDS, unscheduledOrderIds);
+        });
+    }
+
+    /**
+     * Builds the menu state entity from the user's data.
+     * @param turnContext The user's data for the current turn.
+     * @return The menu state entity, keyed by the conversation id.
+     */
+    private static Entity buildMenuStateEntity(TurnContext turnContext) {
+        Cart cart = turnContext.getCart();
+        List<Pickup> scheduledPickups = turnContext.getScheduledPickups();
+        Entity menuStateEntity = new Entity(DataManager.MENU_STATE_TYPE, turnContext.getConversationId());
+        menuStateEntity.setProperty(DataManager.PROPERTY_CART_ID, cart.getId());
+        menuStateEntity.setProperty(DataManager.PROPERTY_CART_NON_EMPTY, !cart.getItems().isEmpty());
+        menuStateEntity.setProperty(DataManager.PROPERTY_HAS_FILTERS, !turnContext.getFilters().isEmpty());
+        menuStateEntity.setUnindexedProperty(DataManager.PROPERTY_UNSCHEDULED_ORDER_IDS,
+            turnContext.getUnscheduledOrders().stream().map(Order::getId).collect(Collectors.toList()));
+        menuStateEntity.setUnindexedProperty(DataManager.PROPERTY_SCHEDULED_ORDER_IDS,
+            scheduledPickups.stream().map(Pickup::getOrderId).collect(Collectors.toList()));
+        menuStateEntity.setUnindexedProperty(DataManager.PROPERTY_SCHEDULED_PICKUP_TIMES,
+            scheduledPickups.stream().map(Pickup::getTime).collect(Collectors.toList()));
+        return menuStateEntity;
+    }
+
+    /**
+     * Converts an Entity datatype returned by datastore to a MenuState object.
+     * @param menuStateEntity The entity to be converted to a menu state object.
+     * @return The menu state object.
+     */
+    private static MenuState entityToMenuState(Entity menuStateEntity) {
+        return new MenuState(
+            (String) menuStateEntity.getProperty(DataManager.PROPERTY_CART_ID),
+            Boolean.TRUE.equals(menuStateEntity.getProperty(DataManager.PROPERTY_CART_NON_EMPTY)),
+            Boolean.TRUE.equals(menuStateEntity.getProperty(DataManager.PROPERTY_HAS_FILTERS)),
+            ImmutableList.copyOf(getStringList(menuStateEntity, DataManager.PROPERTY_UNSCHEDULED_ORDER_IDS)),
+            ImmutableList.copyOf(getStringList(menuStateEntity, DataManager.PROPERTY_SCHEDULED_ORDER_IDS)),
+            ImmutableList.copyOf(getDateList(menuStateEntity, DataManager.PROPERTY_SCHEDULED_PICKUP_TIMES)));
+    }
+
+    /**
+     * Removes the scheduled pickup of the given order from the parallel id and time lists.
+     */
+    private static void removeScheduledEntry(List<String> orderIds, List<Date> times, String orderId) {
+        int index = orderIds.indexOf(orderId);
+        if (index >= 0) {
+            orderIds.remove(index);
+            times.remove(index);
+        }
+    }
+
+    /**
+     * Reads a multi-valued string property. Datastore stores empty lists as null, so a
+     * missing or null property is returned as an empty list.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<String> getStringList(Entity ent, String propertyName) {
+        Object value = ent.getProperty(propertyName);
+        return value == null ? new ArrayList<>() : new ArrayList<>((Collection<String>) value);
+    }
+
+    /**
+     * Reads a multi-valued date property. A missing or null property is returned as an
+     * empty list.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Date> getDateList(Entity ent, String propertyName) {
+        Object value = ent.getProperty(propertyName);
+        return value == null ? new ArrayList<>() : new ArrayList<>((Collection<Date>) value);
+    }
+}
@@ -0,0 +1,416 @@
+package com.google.businessmessages.cart;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesCardContent;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesCarouselCard;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesContentInfo;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesDialAction;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesMedia;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesMessage;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesOpenUrlAction;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesRepresentative;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesRichCard;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesStandaloneCard;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesSuggestedAction;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesSuggestedReply;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesSuggestion;
+
+/**
+ * Serializes outbound messages, and the rich cards and suggestions they are made of, straight
+ * to UTF-8 JSON. The fields of each shape are written directly from their getters, so
+ * serializing a message neither reflects over the model classes nor goes through a generic
+ * JSON generator, and the output is identical to that of the API client's JacksonFactory:
+ * fields in alphabetical order, null fields left out and strings escaped the same way, which
+ * includes escaping control characters and surrogate pairs in hex.
+ *
+ * Each thread renders into its own reusable buffer, so the only allocation per message is
+ * the returned array. Only the declared fields of the model classes are written, so unknown
+ * keys set on a model object are not serialized.
+ */
+public class MessageJsonWriter {
+    private static final int INITIAL_CAPACITY = 4096;
+    // buffers that grew past this for an unusually large message are not kept for the thread
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final ThreadLocal<MessageJsonWriter> threadWriter =
+        ThreadLocal.withInitial(MessageJsonWriter::new);
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int size;
+    private boolean inUse;
+    // whether the next field of the current object needs a separating comma
+    private boolean needsComma;
+
+    private MessageJsonWriter() {
+    }
+
+    /**
+     * Renders JSON with the thread's writer.
+     * @param content Writes the JSON value.
+     * @return The JSON, encoded as UTF-8.
+     */
+    public static byte[] render(Consumer<MessageJsonWriter> content) {
+        MessageJsonWriter writer = threadWriter.get();
+        if (writer.inUse) {
+            // rendering from within a render, so the thread's buffer is taken
+            writer = new MessageJsonWriter();
+        }
+        writer.inUse = true;
+        try {
+            content.accept(writer);
+            return Arrays.copyOf(writer.buffer, writer.size);
+        } finally {
+            writer.reset();
+        }
+    }
+
+    /**
+     * Serializes a message.
+     * @param message The message.
+     * @return The message serialized as UTF-8 JSON.
+     */
+    public static byte[] toJson(BusinessMessagesMessage message) {
+        return render(writer -> writer.writeMessage(message));
+    }
+
+    /**
+     * Serializes a card.
+     * @param cardContent The card.
+     * @return The card serialized as UTF-8 JSON.
+     */
+    public static byte[] toJson(BusinessMessagesCardContent cardContent) {
+        return render(writer -> writer.writeCardContent(cardContent));
+    }
+
+    /**
+     * Serializes a list of suggestions.
+     * @param suggestions The suggestions.
+     * @return The suggestions serialized as a UTF-8 JSON array.
+     */
+    public static byte[] toJson(List<BusinessMessagesSuggestion> suggestions) {
+        return render(writer -> writer.writeSuggestions(suggestions));
+    }
+
+    /**
+     * Writes a message.
+     * @param message The message.
+     */
+    public void writeMessage(BusinessMessagesMessage message) {
+        startObject();
+        writeField("fallback", message.getFallback());
+        writeField("messageId", message.getMessageId());
+        writeField("name", message.getName());
+        if (message.getRepresentative() != null) {
+            writeFieldName("representative");
+            writeRepresentative(message.getRepresentative());
+        }
+        if (message.getRichCard() != null) {
+            writeFieldName("richCard");
+            writeRichCard(message.getRichCard());
+        }
+        if (message.getSuggestions() != null) {
+            writeFieldName("suggestions");
+            writeSuggestions(message.getSuggestions());
+        }
+        writeField("text", message.getText());
+        endObject();
+    }
+
+    /**
+     * Writes a representative.
+     * @param representative The representative.
+     */
+    public void writeRepresentative(BusinessMessagesRepresentative representative) {
+        startObject();
+        writeField("displayName", representative.getDisplayName());
+        writeField("representativeType", representative.getRepresentativeType());
+        endObject();
+    }
+
+    /**
+     * Writes a rich card.
+     * @param richCard The rich card.
+     */
+    public void writeRichCard(BusinessMessagesRichCard richCard) {
+        startObject();
+        BusinessMessagesCarouselCard carouselCard = richCard.getCarouselCard();
+        if (carouselCard != null) {
+            writeFieldName("carouselCard");
+            startObject();
+            if (carouselCard.getCardContents() != null) {
+                writeFieldName("cardContents");
+                startArray();
+                for (BusinessMessagesCardContent cardContent : carouselCard.getCardContents()) {
+                    writeElementSeparator();
+                    writeCardContent(cardContent);
+                }
+                endArray();
+            }
+            writeField("cardWidth", carouselCard.getCardWidth());
+            endObject();
+        }
+        BusinessMessagesStandaloneCard standaloneCard = richCard.getStandaloneCard();
+        if (standaloneCard != null) {
+            writeFieldName("standaloneCard");
+            startObject();
+            if (standaloneCard.getCardContent() != null) {
+                writeFieldName("cardContent");
+                writeCardContent(standaloneCard.getCardContent());
+            }
+            endObject();
+        }
+        endObject();
+    }
+
+    /**
+     * Writes a card.
+     * @param cardContent The card.
+     */
+    public void writeCardContent(BusinessMessagesCardContent cardContent) {
+        startObject();
+        writeField("description", cardContent.getDescription());
+        BusinessMessagesMedia media = cardContent.getMedia();
+        if (media != null) {
+            writeFieldName("media");
+            startObject();
+            BusinessMessagesContentInfo contentInfo = media.getContentInfo();
+            if (contentInfo != null) {
+                writeFieldName("contentInfo");
+                startObject();
+                writeField("altText", contentInfo.getAltText());
+                writeField("fileUrl", contentInfo.getFileUrl());
+                if (contentInfo.getForceRefresh() != null) {
+                    writeFieldName("forceRefresh");
+                    writeRaw(contentInfo.getForceRefresh() ? "true" : "false");
+                }
+                writeField("thumbnailUrl", contentInfo.getThumbnailUrl());
+                endObject();
+            }
+            writeField("height", media.getHeight());
+            endObject();
+        }
+        if (cardContent.getSuggestions() != null) {
+            writeFieldName("suggestions");
+            writeSuggestions(cardContent.getSuggestions());
+        }
+        writeField("title", cardContent.getTitle());
+        endObject();
+    }
+
+    /**
+     * Writes a list of suggestions as an array.
+     * @param suggestions The suggestions.
+     */
+    public void writeSuggestions(List<BusinessMessagesSuggestion> suggestions) {
+        startArray();
+        for (BusinessMessagesSuggestion suggestion : suggestions) {
+            writeElementSeparator();
+            writeSuggestion(suggestion);
+        }
+        endArray();
+    }
+
+    /**
+     * Writes a suggestion.
+     * @param suggestion The suggestion.
+     */
+    public void writeSuggestion(BusinessMessagesSuggestion suggestion) {
+        startObject();
+        BusinessMessagesSuggestedAction action = suggestion.getAction();
+        if (action != null) {
+            writeFieldName("action");
+            startObject();
+            BusinessMessagesDialAction dialAction = action.getDialAction();
+            if (dialAction != null) {
+                writeFieldName("dialAction");
+                startObject();
+                writeField("phoneNumber", dialAction.getPhoneNumber());
+                endObject();
+            }
+            BusinessMessagesOpenUrlAction openUrlAction = action.getOpenUrlAction();
+            if (openUrlAction != null) {
+                writeFieldName("openUrlAction");
+                startObject();
+                writeField("url", openUrlAction.getUrl());
+                endObject();
+            }
+            writeField("postbackData", action.getPostbackData());
+            writeField("text", action.getText());
+            endObject();
+        }
+        BusinessMessagesSuggestedReply reply = suggestion.getReply();
+        if (reply != null) {
+            writeFieldName("reply");
+            startObject();
+            writeField("postbackData", reply.getPostbackData());
+            writeField("text", reply.getText());
+            endObject();
+        }
+        endObject();
+    }
+
+    /**
+     * Writes a string as a quoted and escaped JSON string.
+     * @param value The string.
+     */
+    public void writeString(String value) {
+        // a char takes at most six bytes, when it is escaped in hex
+        ensureCapacity(value.length() * 6 + 2);
+        buffer[size++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    writeEscape((byte) c);
+                } else if (c < 0x20) {
+                    writeControlEscape(c);
+                } else {
+                    buffer[size++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                buffer[size++] = (byte) (0xC0 | (c >> 6));
+                buffer[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Jackson escapes each half of a surrogate pair rather than encoding the code point
+                writeUnicodeEscape(c);
+            } else {
+                buffer[size++] = (byte) (0xE0 | (c >> 12));
+                buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buffer[size++] = '"';
+    }
+
+    /**
+     * Writes bytes that are already valid JSON, i.e. pre-rendered fields.
+     * @param json The UTF-8 JSON.
+     */
+    public void writeRaw(byte[] json) {
+        ensureCapacity(json.length);
+        System.arraycopy(json, 0, buffer, size, json.length);
+        size += json.length;
+    }
+
+    /**
+     * Writes a single ASCII character that is already valid JSON, i.e. a brace or comma.
+     * @param c The character.
+     */
+    public void writeRaw(char c) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) c;
+    }
+
+    private void writeRaw(String ascii) {
+        ensureCapacity(ascii.length());
+        for (int i = 0; i < ascii.length(); i++) {
+            buffer[size++] = (byte) ascii.charAt(i);
+        }
+    }
+
+    private void writeField(String name, String value) {
+        if (value != null) {
+            writeFieldName(name);
+            writeString(value);
+        }
+    }
+
+    private void writeFieldName(String name) {
+        ensureCapacity(name.length() + 4);
+        if (needsComma) {
+            buffer[size++] = ',';
+        }
+        buffer[size++] = '"';
+        for (int i = 0; i < name.length(); i++) {
+            buffer[size++] = (byte) name.charAt(i);
+        }
+        buffer[size++] = '"';
+        buffer[size++] = ':';
+        // the value is written next, so the following field is separated by a comma
+        needsComma = true;
+    }
+
+    private void writeElementSeparator() {
+        if (needsComma) {
+            writeRaw(',');
+        }
+        needsComma = true;
+    }
+
+    private void startObject() {
+        writeRaw('{');
+        needsComma = false;
+    }
+
+    private void endObject() {
+        writeRaw('}');
+        needsComma = true;
+    }
+
+    private void startArray() {
+        writeRaw('[');
+        needsComma = false;
+    }
+
+    private void endArray() {
+        writeRaw(']');
+        needsComma = true;
+    }
+
+    private void writeEscape(byte c) {
+        buffer[size++] = '\\';
+        buffer[size++] = c;
+    }
+
+    /**
+     * Escapes a control character the way Jackson does, with a short escape where JSON has one.
+     */
+    private void writeControlEscape(char c) {
+        switch (c) {
+            case '\b':
+                writeEscape((byte) 'b');
+                break;
+            case '\t':
+                writeEscape((byte) 't');
+                break;
+            case '\n':
+                writeEscape((byte) 'n');
+                break;
+            case '\f':
+                writeEscape((byte) 'f');
+                break;
+            case '\r':
+                writeEscape((byte) 'r');
+                break;
+            default:
+                writeUnicodeEscape(c);
+        }
+    }
+
+    private void writeUnicodeEscape(char c) {
+        buffer[size++] = '\\';
+        buffer[size++] = 'u';
+        buffer[size++] = HEX_DIGITS[c >> 12];
+        buffer[size++] = HEX_DIGITS[(c >> 8) & 0xF];
+        buffer[size++] = HEX_DIGITS[(c >> 4) & 0xF];
+        buffer[size++] = HEX_DIGITS[c & 0xF];
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    private void reset() {
+        size = 0;
+        needsComma = false;
+        inUse = false;
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.google.businessmessages.cart;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -14,9 +15,15 @@ public class MockInventory implements Inventory {
     private ImmutableCollection<InventoryItem> inventoryItems;
     
     public MockInventory(Map<String, String> nameToMedia, Map<String, Map<String, List<String>>> nameToProperties) {
+        this(nameToMedia, nameToProperties, Collections.emptyMap());
+    }
+
+    public MockInventory(Map<String, String> nameToMedia, Map<String, Map<String, List<String>>> nameToProperties,
+            Map<String, Long> nameToPriceCents) {
         ImmutableCollection.Builder<InventoryItem> builder = new ImmutableList.Builder<>();
         for (Map.Entry<String, String> ent : nameToMedia.entrySet()) {
-            builder.add(new InventoryItem(ent.getKey(), ent.getValue(), nameToProperties.get(ent.getKey())));
+            builder.add(new InventoryItem(ent.getKey(), ent.getValue(),
+                nameToPriceCents.getOrDefault(ent.getKey(), 0L), nameToProperties.get(ent.getKey())));
         }
         inventoryItems = builder.build();
     }
@@ -1,14 +1,22 @@
 package com.google.businessmessages.cart;
 
+import com.google.common.collect.ImmutableList;
+
 /**
  * Represents all details of a user placed order needed to schedule a pickup/
  * track the status of the order.
  */
 public class Order {
     private String id;
+    private ImmutableList<String> itemIds;
 
     public Order(String id) {
+        this(id, ImmutableList.of());
+    }
+
+    public Order(String id, ImmutableList<String> itemIds) {
         this.id = id;
+        this.itemIds = itemIds;
     }
 
     /**
@@ -18,4 +26,13 @@ public class Order {
     public String getId() {
         return this.id;
     }
+
+    /**
+     * Gets the ids of the items in the order. Orders placed before item ids were recorded
+     * have none.
+     * @return itemIds The ids of the ordered items.
+     */
+    public ImmutableList<String> getItemIds() {
+        return this.itemIds;
+    }
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package com.google.businessmessages.cart;
 
+import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
+import com.google.appengine.api.datastore.Entity;
 import com.google.common.collect.ImmutableList;
 
 /**
@@ -16,7 +19,8 @@ public class OrderManager {
     public static ImmutableList<Order> getAllOrders(String conversationId) {
         return ImmutableList.copyOf(DataManager.getInstance().getOrdersFromData(conversationId)
             .stream()
-            .map(ent -> new Order((String) ent.getProperty(DataManager.PROPERTY_ORDER_ID)))
+            .map(ent -> new Order((String) ent.getProperty(DataManager.PROPERTY_ORDER_ID),
+                getItemIds(ent)))
             .collect(Collectors.toList()));
     }
 
@@ -34,13 +38,64 @@ public class OrderManager {
             .collect(Collectors.toList()));
     }
 
+    /**
+     * Gets all orders associated with the user that have not been scheduled for 
+     * pickup yet, using pickups that have already been loaded instead of querying
+     * for the pickup of each order.
+     * @param conversationId The unique id mapping between the agent and the user.
+     * @param pickups All pickups associated with the user.
+     * @return All user orders not scheduled for pickup yet.
+     */
+    public static ImmutableList<Order> getUnscheduledOrders(String conversationId, List<Pickup> pickups) {
+        Set<String> pickupOrderIds = pickups.stream()
+            .map(Pickup::getOrderId)
+            .collect(Collectors.toSet());
+        return ImmutableList.copyOf(getAllOrders(conversationId)
+            .stream()
+            .filter(order -> !pickupOrderIds.contains(order.getId()))
+            .collect(Collectors.toList()));
+    }
+
+    /**
+     * Gets the order with the given id.
+     * @param conversationId The unique id mapping between the agent and the user.
+     * @param orderId The id of the order.
+     * @return The order, null if the user has no order with the id.
+     */
+    public static Order getOrder(String conversationId, String orderId) {
+        return getAllOrders(conversationId).stream()
+            .filter(order -> order.getId().equals(orderId))
+            .findFirst()
+            .orElse(null);
+    }
+
     /**
      * Adds the specified order to the database.
      * @param conversationId The unique id mapping between the agent and the user.
      * @param orderId The id of the order being added to the database.
      */
     public static void addOrder(String conversationId, String orderId) {
+        addOrder(conversationId, orderId, ImmutableList.of());
+    }
+
+    /**
+     * Adds the specified order, with the ids of the items in it, to the database.
+     * @param conversationId The unique id mapping between the agent and the user.
+     * @param orderId The id of the order being added to the database.
+     * @param itemIds The ids of the items in the order.
+     */
+    public static void addOrder(String conversationId, String orderId, List<String> itemIds) {
         DataManager dataManager = DataManager.getInstance();
-        dataManager.addOrder(conversationId, orderId);
+        dataManager.addOrder(conversationId, orderId, itemIds);
+        MenuStateManager.addUnscheduledOrder(conversationId, orderId);
+        if (itemIds.size() > 1) {
+            CoPurchaseModel.getInstance().recordOrder(orderId, itemIds);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ImmutableList<String> getItemIds(Entity orderEntity) {
+        List<String> itemIds = (List<String>) orderEntity.getProperty(DataManager.PROPERTY_ORDER_ITEM_IDS);
+        return itemIds == null ? ImmutableList.of() : ImmutableList.copyOf(itemIds);
     }
 }
\ No newline at end of file
@@ -1,7 +1,8 @@
 package com.google.businessmessages.cart;
 
-import java.util.Calendar;
+import java.time.ZoneId;
 import java.util.Date;
+import java.util.List;
 import java.util.stream.Collectors;
 import com.google.appengine.api.datastore.Entity;
 import com.google.common.collect.ImmutableList;
@@ -19,6 +20,7 @@ public class PickupManager {
     public static void addPickup(String conversationId, String orderId) {
         DataManager dataManager = DataManager.getInstance();
         dataManager.addPickup(conversationId, orderId);
+        MenuStateManager.removeUnscheduledOrder(conversationId, orderId);
     }
 
     /**
@@ -30,6 +32,7 @@ public class PickupManager {
     public static void cancelPickup(String conversationId, String orderId) {
         DataManager dataManager = DataManager.getInstance();
         dataManager.cancelPickup(conversationId, orderId);
+        MenuStateManager.cancelPickup(conversationId, orderId);
     }
 
     /**
@@ -48,6 +51,13 @@ public class PickupManager {
             orderId, 
             propertyName, 
             propertyValue);
+        if (propertyName.equals(BotConstants.PICKUP_STATUS)) {
+            if (propertyValue == Pickup.Status.SCHEDULED) {
+                MenuStateManager.addScheduledPickup(conversationId, getPickup(conversationId, orderId));
+            } else {
+                MenuStateManager.removeScheduledPickup(conversationId, orderId);
+            }
+        }
     }
 
     /**
@@ -94,24 +104,38 @@ public class PickupManager {
      * @return The list of pickups ready for pickup. Empty if there are none.
      */
     public static ImmutableList<Pickup> getPickupsReadyForCheckin(String conversationId) {
-        ImmutableList.Builder<Pickup> builder = new ImmutableList.Builder<>();
-        ImmutableList<Pickup> activePickups = getPickupsWithStatus(
+        return filterReadyForCheckin(getPickupsWithStatus(
             conversationId, 
-            Pickup.Status.SCHEDULED);
+            Pickup.Status.SCHEDULED));
+    }
+
+    /**
+     * Filters the given scheduled pickups down to the ones whose pickup time windows
+     * are active and are therefore ready for check-in.
+     * @param activePickups The scheduled pickups to check.
+     * @return The list of pickups ready for pickup. Empty if there are none.
+     */
+    public static ImmutableList<Pickup> filterReadyForCheckin(List<Pickup> activePickups) {
+        ImmutableList.Builder<Pickup> builder = new ImmutableList.Builder<>();
         Date currentTime = new Date();
         for (Pickup pickup : activePickups) {
-            Calendar endTimeCal = new Calendar.Builder()
-                .setInstant(pickup.getTime())
-                .build();
-            endTimeCal.add(Calendar.HOUR, BotConstants.TIME_SLOT_DURATION);
-            Date endTime = endTimeCal.getTime();
-            if (currentTime.after(pickup.getTime()) && currentTime.before(endTime)) {
+            if (isReadyForCheckin(pickup.getTime(), currentTime)) {
                 builder.add(pickup);
             }
         }
         return builder.build();
     }
 
+    /**
+     * Returns whether the pickup time window starting at the given time is active.
+     * @param pickupTime The start of the pickup time window.
+     * @param currentTime The time to check the window against.
+     * @return True if the current time falls within the pickup time window.
+     */
+    public static boolean isReadyForCheckin(Date pickupTime, Date currentTime) {
+        return PickupSlots.isActive(pickupTime, currentTime);
+    }
+
     /**
      * Converts an Entity datatype returned by datastore to a Pickup object.
      * @param pickupEntity The entity to be converted to a pickup object.
@@ -144,25 +168,13 @@ public class PickupManager {
     }
 
     /**
-     * Creates a pickup Date object by parsing the inputted time zone and date strings.
-     * @param timeZoneOffset The timezone offset off of UTC that the dateString assumes.
+     * Creates a pickup Date object by parsing the inputted date string in the store's time zone.
+     * @param storeZone The time zone of the store, which the dateString assumes.
      * @param dateString The string containing the month, date, and hour of the user's
      * scheduled pickup.
      * @return The date object containing the time of the pickup.
      */
-    public static Date createPickupDate(int timeZoneOffset, String dateString) {
-        Calendar cal = new Calendar.Builder().build();
-        int year = Calendar.getInstance().get(Calendar.YEAR);
-        String[] dateStringParts = dateString.split("/", 2);
-        int month = Integer.parseInt(dateStringParts[0]) - 1;
-        dateString = dateStringParts[1];
-        dateStringParts = dateString.split("-", 2);
-        int date = Integer.parseInt(dateStringParts[0]);
-        dateString = dateStringParts[1];
-        dateStringParts = dateString.split("-", 2);
-        int hourOfDay = Integer.parseInt(dateStringParts[0]) + timeZoneOffset;
-        int minute = 0;
-        cal.set(year, month, date, hourOfDay, minute);
-        return cal.getTime();
+    public static Date createPickupDate(ZoneId storeZone, String dateString) {
+        return PickupSlots.getSlotStart(storeZone, dateString);
     }
 }
\ No newline at end of file
@@ -0,0 +1,135 @@
+package com.google.businessmessages.cart;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Pickup time slots and their labels. Slot times are stored as instants and shown in the time
+ * zone of the store the pickup is at. The labels of every slot offered at every store, i.e.
+ * every combination of BotConstants.PICKUP_DATES and BotConstants.PICKUP_TIMES in the current
+ * year, are formatted once when the class is loaded, so showing a scheduled pickup is a map
+ * lookup. Pickups outside of the offered slots are formatted with the same cached formatters.
+ */
+public class PickupSlots {
+    private static final DateTimeFormatter START_FORMATTER =
+        DateTimeFormatter.ofPattern("EEE MM/dd hh:mm a", Locale.US);
+    private static final DateTimeFormatter END_FORMATTER = DateTimeFormatter.ofPattern("hh:mm a", Locale.US);
+    private static final DateTimeFormatter CALENDAR_FORMATTER =
+        DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmssX", Locale.US).withZone(ZoneOffset.UTC);
+    private static final Duration SLOT_DURATION = Duration.ofHours(BotConstants.TIME_SLOT_DURATION);
+    // store name to the labels of its slots, keyed by the start of the slot in epoch millis
+    private static final ImmutableMap<String, ImmutableMap<Long, String>> slotLabels = buildSlotLabels();
+
+    /**
+     * Gets the time zone of a store.
+     * @param storeName The name of the store.
+     * @return The time zone of the store, UTC if the store is unknown.
+     */
+    public static ZoneId getZone(String storeName) {
+        return BotConstants.STORE_NAME_TO_ZONE.getOrDefault(storeName, ZoneOffset.UTC);
+    }
+
+    /**
+     * Gets the start of a pickup slot.
+     * @param zone The time zone of the store the pickup is at.
+     * @param slot The slot as sent in a pickup time postback, i.e. "9/3-8-10" for the slot
+     * from 8 to 10 in the morning of September 3rd.
+     * @return The start of the slot, in the current year.
+     */
+    public static Date getSlotStart(ZoneId zone, String slot) {
+        int monthEnd = slot.indexOf('/');
+        int dayEnd = slot.indexOf('-', monthEnd + 1);
+        int hourEnd = slot.indexOf('-', dayEnd + 1);
+        if (monthEnd < 0 || dayEnd < 0) {
+            throw new IllegalArgumentException("Invalid pickup slot: " + slot);
+        }
+        LocalDateTime start = Year.now(zone)
+            .atMonth(parseNumber(slot, 0, monthEnd))
+            .atDay(parseNumber(slot, monthEnd + 1, dayEnd))
+            .atTime(parseNumber(slot, dayEnd + 1, hourEnd < 0 ? slot.length() : hourEnd), 0);
+        return Date.from(start.atZone(zone).toInstant());
+    }
+
+    /**
+     * Describes the time window of a pickup in the time zone of its store,
+     * i.e. "Thu 09/03 08:00 AM - 10:00 AM".
+     * @param pickup The scheduled pickup.
+     * @return The label of the pickup's slot.
+     */
+    public static String getSlotLabel(Pickup pickup) {
+        ImmutableMap<Long, String> storeLabels = slotLabels.get(pickup.getStoreAddress());
+        String label = storeLabels == null ? null : storeLabels.get(pickup.getTime().getTime());
+        return label != null ? label : formatSlot(pickup.getTime().toInstant(), getZone(pickup.getStoreAddress()));
+    }
+
+    /**
+     * Formats the start and end of a pickup's slot for a Google Calendar link.
+     * @param pickup The scheduled pickup.
+     * @return The start and end of the slot in UTC, i.e. "20200903T150000Z".
+     */
+    public static String[] getCalendarTimes(Pickup pickup) {
+        Instant start = pickup.getTime().toInstant();
+        return new String[] {CALENDAR_FORMATTER.format(start), CALENDAR_FORMATTER.format(start.plus(SLOT_DURATION))};
+    }
+
+    /**
+     * Returns whether the pickup time window starting at the given time is active.
+     * @param slotStart The start of the pickup time window.
+     * @param currentTime The time to check the window against.
+     * @return True if the current time falls within the pickup time window.
+     */
+    public static boolean isActive(Date slotStart, Date currentTime) {
+        long start = slotStart.getTime();
+        long now = currentTime.getTime();
+        return now > start && now < start + SLOT_DURATION.toMillis();
+    }
+
+    private static String formatSlot(Instant start, ZoneId zone) {
+        ZonedDateTime localStart = start.atZone(zone);
+        return START_FORMATTER.format(localStart) + " - " + END_FORMATTER.format(localStart.plus(SLOT_DURATION));
+    }
+
+    private static ImmutableMap<String, ImmutableMap<Long, String>> buildSlotLabels() {
+        ImmutableMap.Builder<String, ImmutableMap<Long, String>> labels = ImmutableMap.builder();
+        for (Map.Entry<String, ZoneId> store : BotConstants.STORE_NAME_TO_ZONE.entrySet()) {
+            Map<Long, String> storeLabels = new HashMap<>();
+            for (String date : BotConstants.PICKUP_DATES.values()) {
+                for (String time : BotConstants.PICKUP_TIMES.values()) {
+                    Date start = getSlotStart(store.getValue(), date + "-" + time);
+                    storeLabels.put(start.getTime(), formatSlot(start.toInstant(), store.getValue()));
+                }
+            }
+            labels.put(store.getKey(), ImmutableMap.copyOf(storeLabels));
+        }
+        return labels.build();
+    }
+
+    /**
+     * Parses the decimal number between the given positions without creating a substring.
+     */
+    private static int parseNumber(String value, int start, int end) {
+        if (start >= end) {
+            throw new IllegalArgumentException("Invalid pickup slot: " + value);
+        }
+        int number = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(value.charAt(i), 10);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid pickup slot: " + value);
+            }
+            number = number * 10 + digit;
+        }
+        return number;
+    }
+}
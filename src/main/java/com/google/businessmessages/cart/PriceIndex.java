@@ -0,0 +1,185 @@
+package com.google.businessmessages.cart;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Index of the prices of an inventory's items, sorted from lowest to highest. A price range
+ * maps to a contiguous run of the sorted prices, found by binary search, and sorting a set of
+ * items by price only marks their price ranks in a bitmap and reads them back in order.
+ *
+ * Price range filter values are dollar amounts, "min-max" with the maximum exclusive or "min+"
+ * with no upper bound, as listed in BotConstants.PRICE_LIST.
+ */
+public class PriceIndex {
+    private static final String ALL_FILTER_VALUE = "all";
+
+    private final long[] priceCents;
+    private final long[] sortedPriceCents;
+    private final int[] sortedOrdinals;
+    // priceRanks[i] is the position of item i in the sorted order
+    private final int[] priceRanks;
+
+    public PriceIndex(ImmutableList<InventoryItem> items) {
+        this.priceCents = new long[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            priceCents[i] = items.get(i).getPriceCents();
+        }
+        // a stable sort, so items with the same price keep their inventory order
+        this.sortedOrdinals = IntStream.range(0, items.size()).boxed()
+            .sorted((first, second) -> Long.compare(priceCents[first], priceCents[second]))
+            .mapToInt(Integer::intValue)
+            .toArray();
+        this.sortedPriceCents = new long[items.size()];
+        this.priceRanks = new int[items.size()];
+        for (int rank = 0; rank < sortedOrdinals.length; rank++) {
+            sortedPriceCents[rank] = priceCents[sortedOrdinals[rank]];
+            priceRanks[sortedOrdinals[rank]] = rank;
+        }
+    }
+
+    /**
+     * Gets the price of an item.
+     * @param ordinal The position of the item in the inventory.
+     * @return The price of the item in cents.
+     */
+    public long getPriceCents(int ordinal) {
+        return priceCents[ordinal];
+    }
+
+    /**
+     * Keeps the items whose price is within the range selected by a price filter.
+     * @param ordinals The positions of the items to filter.
+     * @param priceFilter The price filter, null or "all" to keep every item.
+     * @return The positions of the items within the range, in the order given.
+     */
+    public int[] filter(int[] ordinals, Filter priceFilter) {
+        long[] range = priceFilter == null ? null : parseRange(priceFilter.getValue());
+        if (range == null) {
+            return ordinals;
+        }
+        int fromRank = lowerBound(range[0]);
+        int toRank = lowerBound(range[1]);
+        return Arrays.stream(ordinals)
+            .filter(ordinal -> priceRanks[ordinal] >= fromRank && priceRanks[ordinal] < toRank)
+            .toArray();
+    }
+
+    /**
+     * Sorts items by price. Items with the same price keep their inventory order.
+     * @param ordinals The positions of the items to sort.
+     * @param descending True to sort from the highest to the lowest price.
+     * @return The sorted positions, in a new array.
+     */
+    public int[] sort(int[] ordinals, boolean descending) {
+        BitSet ranks = new BitSet(sortedOrdinals.length);
+        for (int ordinal : ordinals) {
+            ranks.set(priceRanks[ordinal]);
+        }
+        int[] sorted = new int[ordinals.length];
+        int next = 0;
+        for (int rank = ranks.nextSetBit(0); rank >= 0; rank = ranks.nextSetBit(rank + 1)) {
+            sorted[next++] = sortedOrdinals[rank];
+        }
+        if (descending) {
+            reverseEqualPriceRuns(sorted);
+        }
+        return sorted;
+    }
+
+    /**
+     * Counts the items within each price range.
+     * @param ordinals The positions of the items to count.
+     * @param options The price ranges, matched case-insensitively.
+     * @return The number of items within each range, in the order given.
+     */
+    public Map<String, Integer> getFacetCounts(int[] ordinals, List<String> options) {
+        Map<String, Integer> optionCounts = new LinkedHashMap<>();
+        for (String option : options) {
+            optionCounts.put(option, filter(ordinals, new Filter(BotConstants.PRICE_FILTER_NAME,
+                option.toLowerCase())).length);
+        }
+        return optionCounts;
+    }
+
+    /**
+     * Formats a price in cents for display, i.e. "$89.99".
+     * @param priceCents The price in cents.
+     * @return The formatted price.
+     */
+    public static String formatPrice(long priceCents) {
+        return String.format("$%d.%02d", priceCents / 100, priceCents % 100);
+    }
+
+    /**
+     * Parses a price range filter value into its bounds in cents.
+     * @return The inclusive lower and exclusive upper bound, null for "all" or an invalid value.
+     */
+    static long[] parseRange(String value) {
+        if (value == null || value.equals(ALL_FILTER_VALUE)) {
+            return null;
+        }
+        try {
+            if (value.endsWith("+")) {
+                return new long[] {dollarsToCents(value.substring(0, value.length() - 1)), Long.MAX_VALUE};
+            }
+            int separator = value.indexOf('-');
+            if (separator < 0) {
+                return null;
+            }
+            return new long[] {dollarsToCents(value.substring(0, separator)),
+                dollarsToCents(value.substring(separator + 1))};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long dollarsToCents(String dollars) {
+        return InventoryItem.toCents(Double.parseDouble(dollars.trim()));
+    }
+
+    /**
+     * Finds the rank of the first item whose price is not lower than the given price.
+     */
+    private int lowerBound(long cents) {
+        int low = 0;
+        int high = sortedPriceCents.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedPriceCents[middle] < cents) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Reverses items sorted by ascending price into descending order, keeping items with the
+     * same price in inventory order.
+     */
+    private void reverseEqualPriceRuns(int[] sorted) {
+        reverse(sorted, 0, sorted.length);
+        int start = 0;
+        for (int i = 1; i <= sorted.length; i++) {
+            if (i == sorted.length || priceCents[sorted[i]] != priceCents[sorted[start]]) {
+                reverse(sorted, start, i);
+                start = i;
+            }
+        }
+    }
+
+    private static void reverse(int[] values, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+}
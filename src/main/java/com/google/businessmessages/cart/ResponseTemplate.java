@@ -0,0 +1,176 @@
+package com.google.businessmessages.cart;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesMessage;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesRepresentative;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesSuggestion;
+
+/**
+ * A message whose invariant fields have been serialized to JSON ahead of time. Rendering a
+ * template only writes the per-message fields (message id, representative and, optionally, the
+ * text and suggestions) around the pre-rendered bytes, so static replies skip building and
+ * serializing a BusinessMessagesMessage on every send. Text or suggestions supplied at send time
+ * replace the template's static ones. Messages are rendered with the thread's MessageJsonWriter.
+ */
+public class ResponseTemplate {
+
+    private static final byte[] MESSAGE_ID_FIELD = bytes("{\"messageId\":");
+    private static final byte[] REPRESENTATIVE_FIELD = bytes(",\"representative\":");
+    private static final byte[] TEXT_FIELD = bytes(",\"text\":");
+    private static final byte[] FALLBACK_FIELD = bytes(",\"fallback\":");
+    private static final byte[] SUGGESTIONS_FIELD = bytes(",\"suggestions\":");
+    private static final byte[] RICH_CARD_FIELD = bytes(",\"richCard\":");
+
+    public static final ResponseTemplate HELP = new ResponseTemplate(BotConstants.HELP_RESPONSE_TEXT, null);
+    public static final ResponseTemplate HOURS = new ResponseTemplate(BotConstants.HOURS_RESPONSE_TEXT, null);
+    public static final ResponseTemplate DEFAULT = new ResponseTemplate(BotConstants.DEFAULT_RESPONSE_TEXT, null);
+    public static final ResponseTemplate CHECK_IN = new ResponseTemplate(BotConstants.CHECK_IN_RESPONSE_TEXT,
+        UIManager.getParkingSpotSuggestions().getSuggestions());
+    public static final ResponseTemplate RATE_LIMITED = new ResponseTemplate(
+        BotConstants.RATE_LIMITED_RESPONSE_TEXT, null);
+    public static final ResponseTemplate CONTEXT_SUGGESTIONS = new ResponseTemplate(null,
+        UIManager.getContextResponseSuggestions().getSuggestions());
+    public static final ResponseTemplate TEXT = new ResponseTemplate(null, null);
+    public static final ResponseTemplate RICH_CARD = new ResponseTemplate(null, null);
+
+    // The static fields of the message, each serialized without the enclosing braces
+    private final byte[] staticText;
+    private final byte[] staticFallback;
+    private final byte[] staticSuggestions;
+
+    /**
+     * Pre-renders a template.
+     * @param text The static text of the message, null if the text is supplied at send time.
+     * @param suggestions The static suggestions of the message, null if they are supplied
+     * at send time.
+     */
+    public ResponseTemplate(String text, List<BusinessMessagesSuggestion> suggestions) {
+        this.staticText = toFields(new BusinessMessagesMessage().setText(text));
+        this.staticFallback = toFields(new BusinessMessagesMessage().setFallback(text));
+        this.staticSuggestions = toFields(new BusinessMessagesMessage().setSuggestions(suggestions));
+    }
+
+    /**
+     * Renders the message with the given per-message fields.
+     * @param messageId The unique id of the message.
+     * @param representative The representative sending the message.
+     * @param text The text of the message, null to use the template's static text.
+     * @param suggestions The suggestions of the message, null to use the template's static
+     * suggestions.
+     * @return The message serialized as UTF-8 JSON.
+     */
+    public byte[] render(String messageId, BusinessMessagesRepresentative representative, String text,
+            List<BusinessMessagesSuggestion> suggestions) {
+        return MessageJsonWriter.render(writer -> {
+            writeMessageFields(writer, messageId, representative);
+            writeText(writer, text);
+            if (suggestions != null) {
+                writer.writeRaw(SUGGESTIONS_FIELD);
+                writer.writeSuggestions(suggestions);
+            } else {
+                writeStaticField(writer, staticSuggestions);
+            }
+            writer.writeRaw('}');
+        });
+    }
+
+    /**
+     * Renders the message with the given per-message fields and a shared chip set, whose
+     * cached JSON is spliced in as is.
+     * @param messageId The unique id of the message.
+     * @param representative The representative sending the message.
+     * @param text The text of the message, null to use the template's static text.
+     * @param suggestions The suggestions of the message, null to use the template's static
+     * suggestions.
+     * @return The message serialized as UTF-8 JSON.
+     */
+    public byte[] renderWithSuggestionSet(String messageId, BusinessMessagesRepresentative representative,
+            String text, SuggestionSet suggestions) {
+        return MessageJsonWriter.render(writer -> {
+            writeMessageFields(writer, messageId, representative);
+            writeText(writer, text);
+            if (suggestions != null) {
+                writer.writeRaw(SUGGESTIONS_FIELD);
+                writer.writeRaw(suggestions.getJson());
+            } else {
+                writeStaticField(writer, staticSuggestions);
+            }
+            writer.writeRaw('}');
+        });
+    }
+
+    /**
+     * Renders a rich card message with the given per-message fields.
+     * @param messageId The unique id of the message.
+     * @param representative The representative sending the message.
+     * @param richCard The rich card of the message, already serialized, i.e. by
+     * CardCache.renderRichCard.
+     * @param fallback The fallback text of the message, null to use the template's static text.
+     * @param suggestions The suggestions of the message, null to use the template's static
+     * suggestions.
+     * @return The message serialized as UTF-8 JSON.
+     */
+    public byte[] renderRichCard(String messageId, BusinessMessagesRepresentative representative, byte[] richCard,
+            String fallback, List<BusinessMessagesSuggestion> suggestions) {
+        return MessageJsonWriter.render(writer -> {
+            writeMessageFields(writer, messageId, representative);
+            writer.writeRaw(RICH_CARD_FIELD);
+            writer.writeRaw(richCard);
+            if (fallback != null) {
+                writer.writeRaw(FALLBACK_FIELD);
+                writer.writeString(fallback);
+            } else {
+                writeStaticField(writer, staticFallback);
+            }
+            if (suggestions != null) {
+                writer.writeRaw(SUGGESTIONS_FIELD);
+                writer.writeSuggestions(suggestions);
+            } else {
+                writeStaticField(writer, staticSuggestions);
+            }
+            writer.writeRaw('}');
+        });
+    }
+
+    private static void writeMessageFields(MessageJsonWriter writer, String messageId,
+            BusinessMessagesRepresentative representative) {
+        writer.writeRaw(MESSAGE_ID_FIELD);
+        writer.writeString(messageId);
+        writer.writeRaw(REPRESENTATIVE_FIELD);
+        writer.writeRepresentative(representative);
+    }
+
+    private void writeText(MessageJsonWriter writer, String text) {
+        if (text != null) {
+            writer.writeRaw(TEXT_FIELD);
+            writer.writeString(text);
+            writer.writeRaw(FALLBACK_FIELD);
+            writer.writeString(text);
+        } else {
+            writeStaticField(writer, staticText);
+            writeStaticField(writer, staticFallback);
+        }
+    }
+
+    private static void writeStaticField(MessageJsonWriter writer, byte[] field) {
+        if (field.length > 0) {
+            writer.writeRaw(',');
+            writer.writeRaw(field);
+        }
+    }
+
+    /**
+     * Serializes the fields of a prototype message, stripping the enclosing braces so they can
+     * be spliced into the rendered message.
+     */
+    private static byte[] toFields(BusinessMessagesMessage prototype) {
+        byte[] json = MessageJsonWriter.toJson(prototype);
+        return Arrays.copyOfRange(json, 1, json.length - 1);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
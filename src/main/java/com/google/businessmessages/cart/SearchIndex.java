@@ -0,0 +1,378 @@
+package com.google.businessmessages.cart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * In-memory full-text index over the titles and property options of inventory items, used to
+ * answer free-text shopping queries such as "blue nike size 9".
+ *
+ * Text is split into lowercase alphanumeric tokens and plurals are stemmed. Every query token
+ * matches its exact term and, if its stem is at least MIN_PREFIX_LENGTH characters long, every
+ * term the stem is a prefix of, so partially typed words still match. Items are scored with
+ * BM25 and the best results are selected with a bounded heap rather than by sorting every match.
+ * The scores of a query are accumulated in a small hash table sized to the postings the query
+ * touches, so a query never allocates or holds state proportional to the whole inventory.
+ */
+public class SearchIndex {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MIN_PREFIX_LENGTH = 3;
+
+    private final ImmutableList<InventoryItem> items;
+    // The indexed terms in sorted order, so prefixes map to a contiguous range
+    private final String[] terms;
+    // postingItems[t] holds the positions of the items containing terms[t], in ascending order
+    private final int[][] postingItems;
+    // postingScores[t][p] is the BM25 score of terms[t] for item postingItems[t][p]. The
+    // inventory never changes after the index is built, so scores are computed ahead of time
+    private final double[][] postingScores;
+
+    public SearchIndex(ImmutableList<InventoryItem> items) {
+        this.items = items;
+        int[] itemLengths = new int[items.size()];
+        Map<String, List<int[]>> postings = new HashMap<>();
+        long totalLength = 0;
+        for (int i = 0; i < items.size(); i++) {
+            List<String> tokens = getItemTokens(items.get(i));
+            itemLengths[i] = tokens.size();
+            totalLength += tokens.size();
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String token : tokens) {
+                frequencies.merge(token, 1, Integer::sum);
+            }
+            for (Map.Entry<String, Integer> frequency : frequencies.entrySet()) {
+                postings.computeIfAbsent(frequency.getKey(), unused -> new ArrayList<>())
+                    .add(new int[] {i, frequency.getValue()});
+            }
+        }
+        double averageItemLength = items.isEmpty() ? 0 : (double) totalLength / items.size();
+
+        this.terms = postings.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        this.postingItems = new int[terms.length][];
+        this.postingScores = new double[terms.length][];
+        for (int t = 0; t < terms.length; t++) {
+            List<int[]> termPostings = postings.get(terms[t]);
+            postingItems[t] = new int[termPostings.size()];
+            postingScores[t] = new double[termPostings.size()];
+            double idf = Math.log(1 + (items.size() - termPostings.size() + 0.5) / (termPostings.size() + 0.5));
+            for (int p = 0; p < termPostings.size(); p++) {
+                int item = termPostings.get(p)[0];
+                double frequency = termPostings.get(p)[1];
+                postingItems[t][p] = item;
+                postingScores[t][p] = idf * frequency * (K1 + 1)
+                    / (frequency + K1 * (1 - B + B * itemLengths[item] / averageItemLength));
+            }
+        }
+    }
+
+    /**
+     * Searches the index for the items best matching a free-text query.
+     * @param query The text typed by the user.
+     * @param limit The maximum number of items to return.
+     * @return The matching items, best match first. Empty if no query token matches any item.
+     */
+    public List<InventoryItem> search(String query, int limit) {
+        return selectTop(scoreQuery(query), limit);
+    }
+
+    /**
+     * Orders item positions by their relevance to a query with a partial sort: the limit most
+     * relevant items are moved to the front, best first, and the remaining items keep their
+     * original order. Items that do not match the query are never moved to the front.
+     * @param ordinals The positions of the items to order, i.e. the items matching the user's filters.
+     * @param query The text the items are ranked against.
+     * @param limit The number of items to move to the front.
+     * @return The reordered positions, in a new array.
+     */
+    public int[] rank(int[] ordinals, String query, int limit) {
+        Scratch state = scoreQuery(query);
+        if (limit <= 0 || state.matchedCount == 0) {
+            return ordinals.clone();
+        }
+        PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1, byScore(state));
+        for (int ordinal : ordinals) {
+            double score = state.getScore(ordinal);
+            // ordinals are ascending, so an item only displaces the head on a strictly better score
+            if (score > 0 && (heap.size() < limit || score > state.getScore(heap.peek()))) {
+                heap.offer(ordinal);
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            }
+        }
+        int[] ranked = new int[ordinals.length];
+        int top = heap.size();
+        for (int i = top - 1; i >= 0; i--) {
+            ranked[i] = heap.poll();
+        }
+        // mark the items moved to the front, so they are skipped when copying the rest
+        for (int i = 0; i < top; i++) {
+            state.negateScore(ranked[i]);
+        }
+        int next = top;
+        for (int ordinal : ordinals) {
+            if (state.getScore(ordinal) >= 0) {
+                ranked[next++] = ordinal;
+            }
+        }
+        return ranked;
+    }
+
+    /**
+     * Scores every item matching a query. The term ranges of every token are looked up first,
+     * so the scratch space can be sized to the number of postings they hold.
+     */
+    private Scratch scoreQuery(String query) {
+        List<int[]> termRanges = new ArrayList<>();
+        long postingCount = 0;
+        for (String token : tokenize(query)) {
+            int[] termRange = getTermRange(token);
+            if (termRange != null) {
+                termRanges.add(termRange);
+                for (int t = termRange[0]; t < termRange[1]; t++) {
+                    postingCount += postingItems[t].length;
+                }
+            }
+        }
+        Scratch state = new Scratch((int) Math.min(postingCount, items.size()));
+        for (int[] termRange : termRanges) {
+            scoreToken(termRange[0], termRange[1], state);
+        }
+        return state;
+    }
+
+    /**
+     * Finds the terms a query token matches: its exact term and, if its stem is long enough,
+     * every term the stem is a prefix of.
+     * @return The range of matching terms as {from, to}, null if no term matches.
+     */
+    private int[] getTermRange(String token) {
+        String stem = stem(token);
+        if (stem.length() >= MIN_PREFIX_LENGTH) {
+            int from = lowerBound(stem);
+            int to = from;
+            while (to < terms.length && terms[to].startsWith(stem)) {
+                to++;
+            }
+            return from < to ? new int[] {from, to} : null;
+        }
+        int position = Arrays.binarySearch(terms, stem);
+        return position >= 0 ? new int[] {position, position + 1} : null;
+    }
+
+    /**
+     * Adds the score of a single query token, which matches the terms in [from, to), to every
+     * item it matches. When the token matches several terms of the same item through prefix
+     * expansion, only the best of them counts, so a short prefix does not outweigh a whole word.
+     */
+    private void scoreToken(int from, int to, Scratch state) {
+        if (to - from == 1) {
+            state.addScores(postingItems[from], postingScores[from]);
+            return;
+        }
+        for (int t = from; t < to; t++) {
+            int[] termItems = postingItems[t];
+            for (int p = 0; p < termItems.length; p++) {
+                state.offerTokenScore(termItems[p], postingScores[t][p]);
+            }
+        }
+        state.finishToken();
+    }
+
+    /**
+     * Selects the highest scoring items with a min-heap holding at most limit entries.
+     */
+    private List<InventoryItem> selectTop(Scratch state, int limit) {
+        if (limit <= 0 || state.matchedCount == 0) {
+            return Collections.emptyList();
+        }
+        PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1, byScore(state));
+        for (int item : state.getMatched()) {
+            heap.offer(item);
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+        InventoryItem[] results = new InventoryItem[heap.size()];
+        for (int i = results.length - 1; i >= 0; i--) {
+            results[i] = items.get(heap.poll());
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Orders items from the worst to the best score, so the head of a min-heap is the item to
+     * evict. Ties are broken by inventory order.
+     */
+    private static Comparator<Integer> byScore(Scratch state) {
+        return (first, second) -> {
+            int byScore = Double.compare(state.getScore(first), state.getScore(second));
+            return byScore != 0 ? byScore : Integer.compare(second, first);
+        };
+    }
+
+    /**
+     * Finds the position of the first term that is not smaller than the given prefix.
+     */
+    private int lowerBound(String prefix) {
+        int position = Arrays.binarySearch(terms, prefix);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    private static List<String> getItemTokens(InventoryItem item) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : tokenize(item.getTitle())) {
+            tokens.add(stem(token));
+        }
+        for (ItemProperty property : item.getProperties()) {
+            for (String option : property.getOptions()) {
+                for (String token : tokenize(option)) {
+                    tokens.add(stem(token));
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Splits text into lowercase tokens of letters and digits.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean tokenChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Reduces plural forms to their singular, e.g. "sneakers" to "sneaker" and "accessories"
+     * to "accessory". Only plurals are stemmed, which is enough for product titles and keeps
+     * unrelated words from being conflated.
+     */
+    static String stem(String token) {
+        if (token.length() > 4 && token.endsWith("ies")) {
+            return token.substring(0, token.length() - 3) + "y";
+        }
+        if (token.length() > 4 && (token.endsWith("sses") || token.endsWith("shes") || token.endsWith("ches"))) {
+            return token.substring(0, token.length() - 2);
+        }
+        if (token.length() > 3 && token.endsWith("s") && !token.endsWith("ss") && !token.endsWith("us")) {
+            return token.substring(0, token.length() - 1);
+        }
+        return token;
+    }
+
+    /**
+     * Score accumulators of a single query: an open-addressing hash table from item positions
+     * to scores, using linear probing, sized to hold every item the query's postings reference.
+     */
+    private static class Scratch {
+        private static final int EMPTY = -1;
+
+        private final int[] keys;
+        private final double[] scores;
+        private final double[] tokenScores;
+        private int matchedCount;
+
+        Scratch(int maxItems) {
+            // at most half full, so probe sequences stay short
+            int capacity = Integer.highestOneBit(Math.max(1, maxItems) * 2 - 1) * 2;
+            this.keys = new int[capacity];
+            this.scores = new double[capacity];
+            this.tokenScores = new double[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        void addScores(int[] termItems, double[] termScores) {
+            for (int p = 0; p < termItems.length; p++) {
+                int slot = insert(termItems[p]);
+                if (scores[slot] == 0) {
+                    matchedCount++;
+                }
+                scores[slot] += termScores[p];
+            }
+        }
+
+        void offerTokenScore(int item, double score) {
+            int slot = insert(item);
+            tokenScores[slot] = Math.max(tokenScores[slot], score);
+        }
+
+        void finishToken() {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (tokenScores[slot] != 0) {
+                    if (scores[slot] == 0) {
+                        matchedCount++;
+                    }
+                    scores[slot] += tokenScores[slot];
+                    tokenScores[slot] = 0;
+                }
+            }
+        }
+
+        double getScore(int item) {
+            int slot = find(item);
+            return keys[slot] == item ? scores[slot] : 0;
+        }
+
+        void negateScore(int item) {
+            int slot = find(item);
+            if (keys[slot] == item) {
+                scores[slot] = -scores[slot];
+            }
+        }
+
+        /**
+         * Gets the positions of the items with a score, in no particular order.
+         */
+        int[] getMatched() {
+            int[] matched = new int[matchedCount];
+            int next = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY && scores[slot] != 0) {
+                    matched[next++] = keys[slot];
+                }
+            }
+            return matched;
+        }
+
+        private int insert(int item) {
+            int slot = find(item);
+            keys[slot] = item;
+            return slot;
+        }
+
+        /**
+         * Finds the slot holding the item, or the empty slot it would be inserted at.
+         */
+        private int find(int item) {
+            int mask = keys.length - 1;
+            int hash = item * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != item) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
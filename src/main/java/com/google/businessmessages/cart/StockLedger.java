@@ -0,0 +1,416 @@
+package com.google.businessmessages.cart;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-memory ledger of the stock of every item, used to reserve stock when an item is added to
+ * a cart and to commit the reservation when the order is submitted.
+ *
+ * Each item is given a stable slot the first time it is seen, and its counters live in a chunk
+ * of padded AtomicLongArray slots, one cache line per item, so updates to different items never
+ * contend on the same line. Reserving and releasing stock are compare-and-set loops on the
+ * item's available counter and never block. An item has two counters: the stock available to
+ * reserve, and the stock on hand, which only drops when an order is committed.
+ *
+ * Reservations of carts that have not been touched for a while are released, so abandoned carts
+ * do not hold on to stock.
+ *
+ * The stock on hand is owned by the StockStore, the datastore in production, and the ledger
+ * is a cache of it. Reservations are held by the instance that made them, so an instance does
+ * not see the carts of other instances and may let its users reserve more than is left. The
+ * store is therefore what decides whether an order can be placed: committing an order
+ * subtracts the sold counts from the store as deltas, and the store rejects the whole order
+ * if any item does not have enough stock on hand left. A daemon thread reloads the stock on
+ * hand periodically, and after every rejected order, so sales made by other instances reduce
+ * the stock this instance offers.
+ */
+public class StockLedger {
+    public static final String DEFAULT_STOCK_PROPERTY = "cartbot.stock.default";
+    public static final String RESERVATION_MINUTES_PROPERTY = "cartbot.stock.reservation_minutes";
+    public static final String REFRESH_SECONDS_PROPERTY = "cartbot.stock.refresh_seconds";
+
+    private static final Logger logger = Logger.getLogger(StockLedger.class.getName());
+    private static final long DEFAULT_STOCK = 100;
+    private static final long DEFAULT_RESERVATION_MINUTES = 30;
+    private static final long DEFAULT_REFRESH_SECONDS = 30;
+    private static final long MAX_SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final int CHUNK_SLOTS = 1024;
+    private static final int MAX_CHUNKS = 4096;
+    // Each slot spans 8 longs, a 64 byte cache line: the available counter, the on hand counter
+    // and padding
+    private static final int SLOT_STRIDE = 8;
+    private static final int AVAILABLE_OFFSET = 0;
+    private static final int ON_HAND_OFFSET = 1;
+
+    private static StockLedger instance;
+
+    private final long defaultStock;
+    private final long reservationNanos;
+    private final StockStore store;
+    // the stock on hand of items that have no slot yet, as last loaded from the store
+    private volatile Map<String, Long> initialStock;
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final AtomicReferenceArray<AtomicLongArray> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final Map<String, CartReservation> reservations = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepNanos = new AtomicLong(System.nanoTime());
+    // commits hold the read lock, so a refresh never sees a commit applied to only one of the
+    // store and the ledger
+    private final ReadWriteLock refreshLock = new ReentrantReadWriteLock();
+
+    /**
+     * The outcome of committing an order's stock.
+     */
+    public enum CommitResult {
+        // the sold counts were subtracted from the stock on hand
+        COMMITTED,
+        // an item does not have enough stock on hand left, nothing was subtracted
+        SOLD_OUT,
+        // the store could not be updated, nothing was subtracted
+        FAILED
+    }
+
+    /**
+     * Where the stock on hand is kept.
+     */
+    public interface StockStore {
+        /**
+         * Gets the stock on hand of every item that has been sold.
+         * @return The stock on hand keyed by item id.
+         * @throws RuntimeException If the stock levels could not be loaded.
+         */
+        Map<String, Long> getStockLevels();
+
+        /**
+         * Subtracts sold counts from the stock on hand. Either every count is subtracted or,
+         * if an item does not have enough stock on hand or the store fails, none is.
+         * @param itemCounts The count sold of each item.
+         * @param defaultStock The stock on hand of items that have not been sold before.
+         * @return Whether the counts were subtracted.
+         */
+        CommitResult commitStock(Map<String, Integer> itemCounts, long defaultStock);
+    }
+
+    /**
+     * Creates a ledger, loading the stock on hand from the store.
+     * @param defaultStock The stock of items that have no stock level in the store.
+     * @param reservationMillis How long a cart's reservations are held after the cart was last touched.
+     * @param store Where the stock on hand is kept.
+     * @throws RuntimeException If the stock levels could not be loaded.
+     */
+    public StockLedger(long defaultStock, long reservationMillis, StockStore store) {
+        this.defaultStock = defaultStock;
+        this.reservationNanos = TimeUnit.MILLISECONDS.toNanos(reservationMillis);
+        this.store = store;
+        this.initialStock = new HashMap<>(store.getStockLevels());
+    }
+
+    /**
+     * Gets the ledger of this instance. On first use, the ledger is loaded from the datastore
+     * and the refresh thread is started. If the datastore fails to load, the exception is
+     * thrown and the ledger is loaded again on the next call.
+     * @return The stock ledger.
+     */
+    public static synchronized StockLedger getInstance() {
+        if (instance == null) {
+            instance = new StockLedger(
+                Long.getLong(DEFAULT_STOCK_PROPERTY, DEFAULT_STOCK),
+                TimeUnit.MINUTES.toMillis(Long.getLong(RESERVATION_MINUTES_PROPERTY, DEFAULT_RESERVATION_MINUTES)),
+                DataManager.getInstance());
+            instance.startRefresher(Long.getLong(REFRESH_SECONDS_PROPERTY, DEFAULT_REFRESH_SECONDS));
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the stock of an item that is not reserved by any cart.
+     * @param itemId The unique id of the item.
+     * @return The available stock.
+     */
+    public long getAvailable(String itemId) {
+        int slot = getSlot(itemId);
+        return getChunk(slot).get(index(slot, AVAILABLE_OFFSET));
+    }
+
+    /**
+     * Reserves one unit of an item for a cart.
+     * @param cartId The unique id of the cart the item is being added to.
+     * @param itemId The unique id of the item.
+     * @return True if the item was reserved, false if it is out of stock.
+     */
+    public boolean reserve(String cartId, String itemId) {
+        sweepIfDue();
+        int slot = getSlot(itemId);
+        if (!take(slot)) {
+            return false;
+        }
+        while (true) {
+            CartReservation reservation = reservations.computeIfAbsent(cartId, unused -> new CartReservation());
+            if (reservation.add(itemId, 1)) {
+                return true;
+            }
+            // the reservation expired or was committed concurrently, so start a new one
+            reservations.remove(cartId, reservation);
+        }
+    }
+
+    /**
+     * Releases one unit of an item reserved by a cart, i.e. when it is deleted from the cart.
+     * Nothing is released if the cart holds no reservation for the item.
+     * @param cartId The unique id of the cart the item is being deleted from.
+     * @param itemId The unique id of the item.
+     */
+    public void release(String cartId, String itemId) {
+        CartReservation reservation = reservations.get(cartId);
+        if (reservation != null && reservation.remove(itemId)) {
+            int slot = getSlot(itemId);
+            getChunk(slot).incrementAndGet(index(slot, AVAILABLE_OFFSET));
+        }
+    }
+
+    /**
+     * Keeps a cart's reservations from expiring, i.e. while the user is checking out.
+     * @param cartId The unique id of the cart.
+     */
+    public void touch(String cartId) {
+        CartReservation reservation = reservations.get(cartId);
+        if (reservation != null) {
+            reservation.touch();
+        }
+    }
+
+    /**
+     * Commits an order submitted from a cart, removing the items from the stock on hand in the
+     * store and, if the store accepts the order, in the ledger along with the cart's
+     * reservations. Items whose reservation expired before the order was submitted, or was made
+     * on another instance, are taken from the available stock. If the store rejects the order
+     * because an item sold out on another instance, the ledger is refreshed and the cart keeps
+     * its reservations.
+     * @param cartId The unique id of the cart.
+     * @param itemCounts The count of each item in the submitted order.
+     * @return Whether the order's stock was committed.
+     */
+    public CommitResult commit(String cartId, Map<String, Integer> itemCounts) {
+        CommitResult result;
+        refreshLock.readLock().lock();
+        try {
+            result = store.commitStock(itemCounts, defaultStock);
+            if (result == CommitResult.COMMITTED) {
+                commitReservations(cartId, itemCounts);
+            }
+        } finally {
+            refreshLock.readLock().unlock();
+        }
+        if (result == CommitResult.SOLD_OUT) {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Exception thrown while refreshing the stock ledger.", e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reloads the stock on hand from the store, so the ledger picks up the sales of other
+     * instances. If the store fails to load, the ledger is left as it was.
+     * @throws RuntimeException If the stock levels could not be loaded.
+     */
+    public void refresh() {
+        refreshLock.writeLock().lock();
+        try {
+            Map<String, Long> stockLevels = store.getStockLevels();
+            for (Map.Entry<String, Long> stockLevel : stockLevels.entrySet()) {
+                Integer slot = slots.get(stockLevel.getKey());
+                if (slot == null) {
+                    continue;
+                }
+                long onHand = stockLevel.getValue();
+                AtomicLongArray chunk = getChunk(slot);
+                long previous = chunk.getAndSet(index(slot, ON_HAND_OFFSET), onHand);
+                chunk.addAndGet(index(slot, AVAILABLE_OFFSET), onHand - previous);
+            }
+            initialStock = stockLevels;
+        } finally {
+            refreshLock.writeLock().unlock();
+        }
+    }
+
+    private void commitReservations(String cartId, Map<String, Integer> itemCounts) {
+        CartReservation reservation = reservations.remove(cartId);
+        Map<String, Integer> reserved = reservation == null ? new HashMap<>() : reservation.close();
+        for (Map.Entry<String, Integer> itemCount : itemCounts.entrySet()) {
+            int slot = getSlot(itemCount.getKey());
+            int shortfall = itemCount.getValue() - reserved.getOrDefault(itemCount.getKey(), 0);
+            // the store accepted the order, so the units exist even if this instance has
+            // handed them out to other carts: take only what is still available
+            int taken = 0;
+            while (taken < shortfall && take(slot)) {
+                taken++;
+            }
+            getChunk(slot).addAndGet(index(slot, ON_HAND_OFFSET), -itemCount.getValue());
+            // release anything reserved beyond what was ordered
+            int surplus = -shortfall;
+            if (surplus > 0) {
+                getChunk(slot).addAndGet(index(slot, AVAILABLE_OFFSET), surplus);
+            }
+        }
+    }
+
+    /**
+     * Decrements the available stock of an item if there is any left.
+     */
+    private boolean take(int slot) {
+        AtomicLongArray chunk = getChunk(slot);
+        int index = index(slot, AVAILABLE_OFFSET);
+        while (true) {
+            long available = chunk.get(index);
+            if (available <= 0) {
+                return false;
+            }
+            if (chunk.compareAndSet(index, available, available - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gets the slot of an item, assigning it the next free slot the first time it is seen.
+     * The slot's counters are set before it is published.
+     */
+    private int getSlot(String itemId) {
+        Integer slot = slots.get(itemId);
+        if (slot != null) {
+            return slot;
+        }
+        return slots.computeIfAbsent(itemId, unused -> {
+            int newSlot = nextSlot.getAndIncrement();
+            if (newSlot >= CHUNK_SLOTS * MAX_CHUNKS) {
+                throw new IllegalStateException("The stock ledger is full.");
+            }
+            long stock = initialStock.getOrDefault(itemId, defaultStock);
+            AtomicLongArray chunk = getChunk(newSlot);
+            chunk.set(index(newSlot, AVAILABLE_OFFSET), stock);
+            chunk.set(index(newSlot, ON_HAND_OFFSET), stock);
+            return newSlot;
+        });
+    }
+
+    private AtomicLongArray getChunk(int slot) {
+        int chunkIndex = slot / CHUNK_SLOTS;
+        AtomicLongArray chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            chunks.compareAndSet(chunkIndex, null, new AtomicLongArray(CHUNK_SLOTS * SLOT_STRIDE));
+            chunk = chunks.get(chunkIndex);
+        }
+        return chunk;
+    }
+
+    private static int index(int slot, int offset) {
+        return (slot % CHUNK_SLOTS) * SLOT_STRIDE + offset;
+    }
+
+    /**
+     * Releases the reservations of carts that have not been touched within the reservation
+     * time. At most one thread sweeps at a time, and sweeps run at most every few seconds.
+     */
+    private void sweepIfDue() {
+        long now = System.nanoTime();
+        long nextSweep = nextSweepNanos.get();
+        if (now - nextSweep < 0 || !nextSweepNanos.compareAndSet(nextSweep, now + Math.min(reservationNanos, MAX_SWEEP_INTERVAL_NANOS))) {
+            return;
+        }
+        for (Map.Entry<String, CartReservation> entry : reservations.entrySet()) {
+            Map<String, Integer> expired = entry.getValue().expireIfIdle(now, reservationNanos);
+            if (expired != null) {
+                reservations.remove(entry.getKey(), entry.getValue());
+                for (Map.Entry<String, Integer> itemCount : expired.entrySet()) {
+                    int slot = getSlot(itemCount.getKey());
+                    getChunk(slot).addAndGet(index(slot, AVAILABLE_OFFSET), itemCount.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts the daemon thread that refreshes the ledger.
+     */
+    private void startRefresher(long refreshSeconds) {
+        DaemonThreads.start("stock-refresher", () -> refreshPeriodically(refreshSeconds),
+            "other instances' sales are only loaded on restart");
+    }
+
+    private void refreshPeriodically(long refreshSeconds) {
+        while (true) {
+            try {
+                TimeUnit.SECONDS.sleep(refreshSeconds);
+                refresh();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Exception thrown while refreshing the stock ledger.", e);
+            }
+        }
+    }
+
+    /**
+     * The items a cart has reserved. Once a reservation has expired or been committed it is
+     * closed, and a new reservation is started for the cart if it reserves items again.
+     */
+    private static class CartReservation {
+        private final Map<String, Integer> itemCounts = new HashMap<>();
+        private long lastTouchedNanos = System.nanoTime();
+        private boolean closed;
+
+        synchronized boolean add(String itemId, int count) {
+            if (closed) {
+                return false;
+            }
+            itemCounts.merge(itemId, count, Integer::sum);
+            lastTouchedNanos = System.nanoTime();
+            return true;
+        }
+
+        synchronized boolean remove(String itemId) {
+            Integer count = itemCounts.get(itemId);
+            if (closed || count == null) {
+                return false;
+            }
+            if (count == 1) {
+                itemCounts.remove(itemId);
+            } else {
+                itemCounts.put(itemId, count - 1);
+            }
+            lastTouchedNanos = System.nanoTime();
+            return true;
+        }
+
+        synchronized void touch() {
+            lastTouchedNanos = System.nanoTime();
+        }
+
+        synchronized Map<String, Integer> close() {
+            closed = true;
+            return itemCounts;
+        }
+
+        synchronized Map<String, Integer> expireIfIdle(long now, long reservationNanos) {
+            if (closed || now - lastTouchedNanos < reservationNanos) {
+                return null;
+            }
+            return close();
+        }
+    }
+}
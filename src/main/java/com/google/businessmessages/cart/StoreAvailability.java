@@ -0,0 +1,108 @@
+package com.google.businessmessages.cart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of which items can be picked up at each store, held as one bitmap per store over item
+ * positions. Items list the stores that stock them in their "store" property; items that list
+ * none of the stores are stocked at every store.
+ *
+ * Checking whether a store can fulfil a cart costs one bit lookup per item in the cart, and
+ * restricting a set of items to the stores that can fulfil a cart is a bitmap union followed
+ * by one lookup per item.
+ */
+public class StoreAvailability {
+    private final Map<String, BitSet> storeItems = new LinkedHashMap<>();
+    // true if some item is not stocked at every store
+    private final boolean restricted;
+
+    /**
+     * Builds the availability of an inventory's items at the stores in
+     * BotConstants.STORE_NAME_TO_ADDRESS.
+     * @param inventory The inventory whose items are indexed.
+     */
+    public StoreAvailability(Inventory inventory) {
+        int size = inventory.getInventory().size();
+        BitSet listed = new BitSet(size);
+        for (String storeName : BotConstants.STORE_NAME_TO_ADDRESS.keySet()) {
+            BitSet items = new BitSet(size);
+            for (int ordinal : inventory.getMatchingOrdinals(Collections.singletonList(
+                    new Filter(BotConstants.STORE_FILTER_NAME, storeName.toLowerCase())))) {
+                items.set(ordinal);
+            }
+            listed.or(items);
+            storeItems.put(storeName, items);
+        }
+        BitSet everywhere = new BitSet(size);
+        everywhere.set(0, size);
+        everywhere.andNot(listed);
+        boolean someItemRestricted = false;
+        for (BitSet items : storeItems.values()) {
+            items.or(everywhere);
+            someItemRestricted |= items.cardinality() < size;
+        }
+        this.restricted = someItemRestricted;
+    }
+
+    /**
+     * Gets the stores that stock every one of the given items, i.e. the stores a cart or order
+     * can be picked up at.
+     * @param ordinals The positions of the items, i.e. the items in a cart or order.
+     * @return The names of the stores, in the order of BotConstants.STORE_NAME_TO_ADDRESS,
+     * empty if no single store stocks every item.
+     */
+    public List<String> getStoresStocking(int[] ordinals) {
+        List<String> storeNames = new ArrayList<>();
+        for (Map.Entry<String, BitSet> store : storeItems.entrySet()) {
+            if (stocksAll(store.getValue(), ordinals)) {
+                storeNames.add(store.getKey());
+            }
+        }
+        return storeNames;
+    }
+
+    /**
+     * Keeps the items stocked at at least one of the given stores.
+     * @param ordinals The positions of the items to restrict, in ascending order.
+     * @param storeNames The stores the items can be picked up at, null or every store to keep
+     * every item, empty to keep none.
+     * @return The positions of the items stocked at one of the stores, in the order given.
+     */
+    public int[] restrict(int[] ordinals, Collection<String> storeNames) {
+        if (!restricted || storeNames == null || storeNames.size() == storeItems.size()) {
+            return ordinals;
+        }
+        BitSet items = new BitSet();
+        for (String storeName : storeNames) {
+            BitSet stocked = storeItems.get(storeName);
+            if (stocked != null) {
+                items.or(stocked);
+            }
+        }
+        return Arrays.stream(ordinals).filter(items::get).toArray();
+    }
+
+    /**
+     * Checks whether every item is stocked at every store, in which case no restriction applies.
+     * @return True if some item can only be picked up at some of the stores.
+     */
+    public boolean isRestricted() {
+        return restricted;
+    }
+
+    private static boolean stocksAll(BitSet items, int[] ordinals) {
+        for (int ordinal : ordinals) {
+            if (!items.get(ordinal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,47 @@
+package com.google.businessmessages.cart;
+
+import java.util.List;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesSuggestion;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A fixed set of suggestion chips together with its JSON encoding. Chip sets that only depend
+ * on constants, or on a small number of parameters, are built once and shared between replies,
+ * and templated messages splice the cached JSON in rather than serializing the chips again.
+ *
+ * The suggestions are shared, so they must not be modified.
+ */
+public class SuggestionSet {
+    private final ImmutableList<BusinessMessagesSuggestion> suggestions;
+    private final byte[] json;
+
+    private SuggestionSet(ImmutableList<BusinessMessagesSuggestion> suggestions, byte[] json) {
+        this.suggestions = suggestions;
+        this.json = json;
+    }
+
+    /**
+     * Builds a chip set, serializing it once.
+     * @param suggestions The suggestion chips, in display order.
+     * @return The chip set.
+     */
+    public static SuggestionSet of(List<BusinessMessagesSuggestion> suggestions) {
+        return new SuggestionSet(ImmutableList.copyOf(suggestions), MessageJsonWriter.toJson(suggestions));
+    }
+
+    /**
+     * Gets the suggestion chips.
+     * @return suggestions The chips, in display order.
+     */
+    public ImmutableList<BusinessMessagesSuggestion> getSuggestions() {
+        return this.suggestions;
+    }
+
+    /**
+     * Gets the JSON encoding of the chips. The array is shared and must not be modified.
+     * @return json The chips serialized as a UTF-8 JSON array.
+     */
+    public byte[] getJson() {
+        return this.json;
+    }
+}
@@ -0,0 +1,183 @@
+package com.google.businessmessages.cart;
+
+import java.util.stream.Collectors;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Holds everything the bot knows about a user for the duration of a single inbound message.
+ * A TurnContext is created once per turn and lazily loads the user's cart, filters, orders
+ * and pickups the first time they are needed, so every reply sent during the turn (and the
+ * default menu attached to each of them) shares the same datastore reads. Handlers that modify
+ * the user's data invalidate only the pieces they changed.
+ */
+public class TurnContext {
+    private final String conversationId;
+    private Cart cart;
+    private ImmutableList<Filter> filters;
+    private ImmutableList<Pickup> pickups;
+    private ImmutableList<Order> unscheduledOrders;
+    private MenuState menuState;
+    private InventorySnapshot inventorySnapshot;
+
+    public TurnContext(String conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    /**
+     * Gets the conversation this turn belongs to.
+     * @return conversationId The unique id mapping between the user and the agent.
+     */
+    public String getConversationId() {
+        return this.conversationId;
+    }
+
+    /**
+     * Gets the user's cart, creating it on first use if the user does not have one yet.
+     * @return cart The cart instance associated with the current user.
+     */
+    public Cart getCart() {
+        if (cart == null) {
+            cart = CartManager.getOrCreateCart(conversationId);
+        }
+        return cart;
+    }
+
+    /**
+     * Replaces the memoized cart with the updated instance returned by CartManager after
+     * the cart has been modified.
+     * @param cart The updated cart instance.
+     */
+    public void setCart(Cart cart) {
+        this.cart = cart;
+        this.menuState = null;
+    }
+
+    /**
+     * Gets all filters the user has set.
+     * @return filters The list of the user's filters. Empty if there are none.
+     */
+    public ImmutableList<Filter> getFilters() {
+        if (filters == null) {
+            filters = FilterManager.getAllFilters(conversationId);
+        }
+        return filters;
+    }
+
+    /**
+     * Gets the user's filter with the given name.
+     * @param filterName The name of the filter being looked up.
+     * @return The Filter if the user has set one, null otherwise.
+     */
+    public Filter getFilter(String filterName) {
+        for (Filter filter : getFilters()) {
+            if (filter.getName().equals(filterName)) {
+                return filter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops the memoized filters so they are reloaded the next time they are read.
+     */
+    public void invalidateFilters() {
+        filters = null;
+        menuState = null;
+    }
+
+    /**
+     * Gets all of the user's pickups, regardless of their status.
+     * @return pickups The list of the user's pickups. Empty if there are none.
+     */
+    public ImmutableList<Pickup> getPickups() {
+        if (pickups == null) {
+            pickups = PickupManager.getAllPickups(conversationId);
+        }
+        return pickups;
+    }
+
+    /**
+     * Gets the pickup scheduled for the given order.
+     * @param orderId The order identifier the pickup belongs to.
+     * @return The pickup for the order, null if there is none.
+     */
+    public Pickup getPickup(String orderId) {
+        for (Pickup pickup : getPickups()) {
+            if (pickup.getOrderId().equals(orderId)) {
+                return pickup;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the user's pickups that have been fully scheduled.
+     * @return The list of scheduled pickups. Empty if there are none.
+     */
+    public ImmutableList<Pickup> getScheduledPickups() {
+        return ImmutableList.copyOf(getPickups()
+            .stream()
+            .filter(pickup -> pickup.getStatus() == Pickup.Status.SCHEDULED)
+            .collect(Collectors.toList()));
+    }
+
+    /**
+     * Gets the user's orders that do not have a pickup yet.
+     * @return The list of unscheduled orders. Empty if there are none.
+     */
+    public ImmutableList<Order> getUnscheduledOrders() {
+        if (unscheduledOrders == null) {
+            unscheduledOrders = OrderManager.getUnscheduledOrders(conversationId, getPickups());
+        }
+        return unscheduledOrders;
+    }
+
+    /**
+     * Drops the memoized orders so they are reloaded the next time they are read.
+     */
+    public void invalidateOrders() {
+        unscheduledOrders = null;
+        menuState = null;
+    }
+
+    /**
+     * Drops the memoized pickups so they are reloaded the next time they are read. Since
+     * an order is unscheduled exactly when it has no pickup, the orders are dropped as well.
+     */
+    public void invalidatePickups() {
+        pickups = null;
+        unscheduledOrders = null;
+        menuState = null;
+    }
+
+    /**
+     * Gets the user's materialized menu state.
+     * @return menuState The summary of the user's data needed to build the default menu.
+     */
+    public MenuState getMenuState() {
+        if (menuState == null) {
+            menuState = MenuStateManager.getMenuState(this);
+        }
+        return menuState;
+    }
+
+    /**
+     * Gets the inventory snapshot the turn reads from. The snapshot is captured the first time
+     * it is needed, and the turn keeps using it even if a newer one is published meanwhile.
+     * @return inventorySnapshot The store inventory snapshot of this turn.
+     */
+    public InventorySnapshot getInventorySnapshot() {
+        if (inventorySnapshot == null) {
+            inventorySnapshot = InventoryHolder.getSnapshot();
+        }
+        return inventorySnapshot;
+    }
+
+    /**
+     * Gets the store inventory of the turn's snapshot.
+     * @return inventory The store inventory.
+     */
+    public Inventory getInventory() {
+        return getInventorySnapshot().getInventory();
+    }
+}
@@ -1,12 +1,9 @@
 package com.google.businessmessages.cart;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
-import java.util.logging.Level;
+import java.util.Objects;
 import java.util.logging.Logger;
 
 import com.google.api.services.businessmessages.v1.model.BusinessMessagesCardContent;
@@ -19,6 +16,9 @@ import com.google.api.services.businessmessages.v1.model.BusinessMessagesStandal
 import com.google.api.services.businessmessages.v1.model.BusinessMessagesSuggestedAction;
 import com.google.api.services.businessmessages.v1.model.BusinessMessagesSuggestedReply;
 import com.google.api.services.businessmessages.v1.model.BusinessMessagesSuggestion;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.communications.businessmessages.v1.CardWidth;
 import com.google.communications.businessmessages.v1.MediaHeight;
 
@@ -27,44 +27,64 @@ import com.google.communications.businessmessages.v1.MediaHeight;
  * rich card carousels to send back to CartBot. 
  */
 public class UIManager {
-  private static final int MAX_CAROUSEL_LIMIT = 10;
+  static final int MAX_CAROUSEL_LIMIT = 10;
+  static final String CAROUSEL_CARD_WIDTH = CardWidth.MEDIUM.toString();
   private static final String COLOR_FILTER_CARD_TITLE = "Color";
   private static final String BRAND_FILTER_CARD_TITLE = "Brand";
   private static final String SIZE_FILTER_CARD_TITLE = "Size";
+  private static final String PRICE_FILTER_CARD_TITLE = "Price";
+  private static final String SORT_FILTER_CARD_TITLE = "Sort By";
+  private static final long LOW_STOCK_THRESHOLD = 5;
+  private static final int MAX_CACHED_FILTER_SUGGESTIONS = 1000;
+  private static final List<String> FILTER_NAMES = ImmutableList.of(BotConstants.COLOR_FILTER_NAME,
+      BotConstants.BRAND_FILTER_NAME, BotConstants.SIZE_FILTER_NAME, BotConstants.PRICE_FILTER_NAME,
+      BotConstants.SORT_FILTER_NAME);
+  // chip sets that only depend on constants, built once and shared between replies
+  private static final SuggestionSet CONTEXT_RESPONSE_SUGGESTIONS = SuggestionSet.of(buildContextResponseSuggestions());
+  private static final SuggestionSet PARKING_SPOT_SUGGESTIONS = SuggestionSet.of(buildParkingSpotSuggestions());
+  private static final SuggestionSet CHECKIN_SUGGESTIONS = SuggestionSet.of(buildCheckinSuggestions());
+  private static final ImmutableMap<String, BusinessMessagesSuggestion> REMOVE_FILTER_SUGGESTIONS =
+      buildRemoveFilterSuggestions();
+  // filter option chips only depend on the filter name and the option counts, which take
+  // few distinct values, so each combination is built once
+  private static final Map<String, SuggestionSet> filterSuggestions = newSuggestionCache();
+  private static final Map<String, SuggestionSet> initFilterSuggestions = newSuggestionCache();
   private static final Logger logger = Logger.getLogger(Cart.class.getName());
 
  /**
   * Creates a list of default list of suggestions to accompany a response
-  * @param conversationId The unique id mapping between the user and the agent.
-  * @param userCart The cart instance associated with the current user.
+  * @param turnContext The user's data for the current turn.
   * @return List of default suggestions.
   */
-  public static List<BusinessMessagesSuggestion> getDefaultMenu(String conversationId, Cart userCart) {
+  public static List<BusinessMessagesSuggestion> getDefaultMenu(TurnContext turnContext) {
     List<BusinessMessagesSuggestion> suggestions = new ArrayList<>();
+    MenuState menuState = turnContext.getMenuState();
 
-    if (!PickupManager.getPickupsReadyForCheckin(conversationId).isEmpty()) {
+    String checkinReadyOrderId = menuState.getFirstCheckinReadyOrderId();
+    if (checkinReadyOrderId != null) {
       suggestions.add(new BusinessMessagesSuggestion()
         .setReply(new BusinessMessagesSuggestedReply()
             .setText(BotConstants.CHECK_IN_TEXT).setPostbackData(String.format(BotConstants.CHECK_IN_POSTBACK,
-              PickupManager.getPickupsReadyForCheckin(conversationId).get(0).getOrderId()))
+              checkinReadyOrderId))
         ));
     }
 
-    if (!OrderManager.getUnscheduledOrders(conversationId).isEmpty()) {
+    String unscheduledOrderId = menuState.getFirstUnscheduledOrderId();
+    if (unscheduledOrderId != null) {
       suggestions.add(new BusinessMessagesSuggestion()
         .setReply(new BusinessMessagesSuggestedReply()
             .setText(BotConstants.SCHEDULE_PICKUP_TEXT).setPostbackData(String.format(BotConstants.SCHEDULE_PICKUP_POSTBACK,
-              OrderManager.getUnscheduledOrders(conversationId).get(0).getId()))
+              unscheduledOrderId))
         ));
     }
 
-    if (!userCart.getItems().isEmpty()) {
+    if (menuState.isCartNonEmpty()) {
       suggestions.add(new BusinessMessagesSuggestion()
             .setAction(new BusinessMessagesSuggestedAction()
                 .setOpenUrlAction(
                     new BusinessMessagesOpenUrlAction()
                         .setUrl(
-                          String.format(BotConstants.CHECKOUT_LINK, userCart.getId())
+          String.format(BotConstants.CHECKOUT_LINK, menuState.getCartId())
                         ))
                 .setText(BotConstants.CHECKOUT_TEXT).setPostbackData(
                   BotConstants.CHECKOUT_COMMAND
@@ -86,14 +106,14 @@ public class UIManager {
         ));
     }
     
-    if (!FilterManager.getAllFilters(conversationId).isEmpty()) {
+    if (menuState.hasFilters()) {
       suggestions.add(new BusinessMessagesSuggestion()
         .setReply(new BusinessMessagesSuggestedReply()
             .setText(BotConstants.FILTERS_TEXT).setPostbackData(BotConstants.SEE_FILTERS_COMMAND)
         ));
     }
 
-    if (!PickupManager.getPickupsWithStatus(conversationId, Pickup.Status.SCHEDULED).isEmpty()) {
+    if (menuState.hasScheduledPickups()) {
       suggestions.add(new BusinessMessagesSuggestion()
         .setReply(new BusinessMessagesSuggestedReply()
             .setText(BotConstants.VIEW_PICKUPS_TEXT).setPostbackData(BotConstants.VIEW_PICKUP_COMMAND)
@@ -114,9 +134,13 @@ public class UIManager {
     * Returns yes or no suggestions when the user is asked whether
     * they would like to continue browsing the products they had already 
     * been searching for. 
-    * @return List of yes/no suggestions.
+    * @return The shared set of yes/no suggestions.
     */
-   public static List<BusinessMessagesSuggestion> getContextResponseSuggestions() {
+   public static SuggestionSet getContextResponseSuggestions() {
+    return CONTEXT_RESPONSE_SUGGESTIONS;
+   }
+
+   private static List<BusinessMessagesSuggestion> buildContextResponseSuggestions() {
     List<BusinessMessagesSuggestion> suggestions = new ArrayList<>();
 
     suggestions.add(new BusinessMessagesSuggestion()
@@ -135,9 +159,13 @@ public class UIManager {
 
    /**
     * Gets parking slots that the user can choose from to check in for their pickup.
-    * @return A list of available parking slots.
+    * @return The shared set of available parking slots.
     */
-   public static List<BusinessMessagesSuggestion> getParkingSpotSuggestions() {
+   public static SuggestionSet getParkingSpotSuggestions() {
+    return PARKING_SPOT_SUGGESTIONS;
+   }
+
+   private static List<BusinessMessagesSuggestion> buildParkingSpotSuggestions() {
     List<BusinessMessagesSuggestion> suggestions = new ArrayList<>();
 
     for (Integer parkingSlot : BotConstants.PARKING_SLOTS) {
@@ -153,9 +181,13 @@ public class UIManager {
    /**
     * Creates suggestions for when the user has checked in for their pickup. 
     * Allows the user to call an associate in case there are any issues with their pickup.
-    * @return Call suggestion. 
+    * @return The shared call suggestion. 
     */
-   public static List<BusinessMessagesSuggestion> getCheckinSuggestions() {
+   public static SuggestionSet getCheckinSuggestions() {
+     return CHECKIN_SUGGESTIONS;
+   }
+
+   private static List<BusinessMessagesSuggestion> buildCheckinSuggestions() {
      List<BusinessMessagesSuggestion> suggestions = new ArrayList<>();
 
      suggestions.add(new BusinessMessagesSuggestion()
@@ -168,70 +200,127 @@ public class UIManager {
     return suggestions;
    }
 
-   /**
-   * Creates suggestions to return when the user is being asked questions to initialize their
-   * filters for the first time.
-   * @param filterName The name of the filter that the suggestions will pertain to.
-   * @return List of suggestions.
+  /**
+   * Gets the options the user can choose from for a filter.
+   * @param filterName The name of the filter.
+   * @return The list of options, empty if the filter is not supported.
    */
-  public static List<BusinessMessagesSuggestion> getInitFilterSuggestions(String filterName) {
-    List<BusinessMessagesSuggestion> suggestions = new ArrayList<>();
-
-    List<String> filterOptions;
+  public static List<String> getFilterOptions(String filterName) {
     if (filterName.equals(BotConstants.COLOR_FILTER_NAME)) {
-      filterOptions = BotConstants.COLOR_LIST;
+      return BotConstants.COLOR_LIST;
     } else if (filterName.equals(BotConstants.BRAND_FILTER_NAME)) {
-      filterOptions = BotConstants.BRAND_LIST;
+      return BotConstants.BRAND_LIST;
     } else if (filterName.equals(BotConstants.SIZE_FILTER_NAME)) {
-      filterOptions = BotConstants.SIZE_LIST;
-    } else {
-      filterOptions = new ArrayList<>();
+      return BotConstants.SIZE_LIST;
+    } else if (filterName.equals(BotConstants.PRICE_FILTER_NAME)) {
+      return BotConstants.PRICE_LIST;
+    } else if (filterName.equals(BotConstants.SORT_FILTER_NAME)) {
+      return BotConstants.SORT_LIST;
+    }
+    return new ArrayList<>();
+  }
+
+   /**
+   * Creates suggestions to return when the user is being asked questions to initialize their
+   * filters for the first time. Options that would not match any items are left out.
+   * @param filterName The name of the filter that the suggestions will pertain to.
+   * @param optionCounts The number of items each of the filter's options would match.
+   * @return The shared set of suggestions.
+   */
+  public static SuggestionSet getInitFilterSuggestions(String filterName,
+      Map<String, Integer> optionCounts) {
+    String key = filterName + optionCounts;
+    SuggestionSet suggestions = initFilterSuggestions.get(key);
+    if (suggestions == null) {
+      suggestions = SuggestionSet.of(buildInitFilterSuggestions(filterName, optionCounts));
+      initFilterSuggestions.put(key, suggestions);
     }
+    return suggestions;
+  }
 
-    for (String option : filterOptions) {
+  private static List<BusinessMessagesSuggestion> buildInitFilterSuggestions(String filterName,
+      Map<String, Integer> optionCounts) {
+    List<BusinessMessagesSuggestion> suggestions = new ArrayList<>();
+
+    for (Map.Entry<String, Integer> optionCount : optionCounts.entrySet()) {
+      if (optionCount.getValue() == 0) {
+        continue;
+      }
       suggestions.add(
           new BusinessMessagesSuggestion()
               .setReply(new BusinessMessagesSuggestedReply()
-                  .setText(option).setPostbackData(String.format(BotConstants.INIT_FILTER_POSTBACK, 
-                    filterName, option))));
+                  .setText(getFacetText(optionCount)).setPostbackData(String.format(BotConstants.INIT_FILTER_POSTBACK, 
+                    filterName, optionCount.getKey()))));
     }
     return suggestions;
   }
 
    /**
-   * Creates suggestions to return when the user clicks on change/edit on a particular filter. 
+   * Creates suggestions to return when the user clicks on change/edit on a particular filter.
+   * Options that would not match any items are left out.
    * @param filterName The name of the filter that the suggestions will pertain to.
-   * @return List of suggestions.
+   * @param optionCounts The number of items each of the filter's options would match.
+   * @return The shared set of suggestions.
    */
-  public static List<BusinessMessagesSuggestion> getFilterSuggestions(String filterName) {
-    List<BusinessMessagesSuggestion> suggestions = new ArrayList<>();
-
-    List<String> filterOptions;
-    if (filterName.equals(BotConstants.COLOR_FILTER_NAME)) {
-      filterOptions = BotConstants.COLOR_LIST;
-    } else if (filterName.equals(BotConstants.BRAND_FILTER_NAME)) {
-      filterOptions = BotConstants.BRAND_LIST;
-    } else if (filterName.equals(BotConstants.SIZE_FILTER_NAME)) {
-      filterOptions = BotConstants.SIZE_LIST;
-    } else {
-      filterOptions = new ArrayList<>();
+  public static SuggestionSet getFilterSuggestions(String filterName,
+      Map<String, Integer> optionCounts) {
+    String key = filterName + optionCounts;
+    SuggestionSet suggestions = filterSuggestions.get(key);
+    if (suggestions == null) {
+      suggestions = SuggestionSet.of(buildFilterSuggestions(filterName, optionCounts));
+      filterSuggestions.put(key, suggestions);
     }
+    return suggestions;
+  }
 
-    suggestions.add(
-          new BusinessMessagesSuggestion()
-              .setReply(new BusinessMessagesSuggestedReply()
-                  .setText("Remove").setPostbackData(
-                    String.format(BotConstants.REMOVE_FILTER_POSTBACK, filterName))));
-    for (String option : filterOptions) {
+  private static List<BusinessMessagesSuggestion> buildFilterSuggestions(String filterName,
+      Map<String, Integer> optionCounts) {
+    List<BusinessMessagesSuggestion> suggestions = new ArrayList<>();
+
+    BusinessMessagesSuggestion removeSuggestion = REMOVE_FILTER_SUGGESTIONS.get(filterName);
+    suggestions.add(removeSuggestion != null ? removeSuggestion : buildRemoveFilterSuggestion(filterName));
+    for (Map.Entry<String, Integer> optionCount : optionCounts.entrySet()) {
+      if (optionCount.getValue() == 0) {
+        continue;
+      }
       suggestions.add(
           new BusinessMessagesSuggestion()
               .setReply(new BusinessMessagesSuggestedReply()
-                  .setText(option).setPostbackData(
-                    String.format(BotConstants.SET_FILTER_POSTBACK, filterName, option))));
+                  .setText(getFacetText(optionCount)).setPostbackData(
+                    String.format(BotConstants.SET_FILTER_POSTBACK, filterName, optionCount.getKey()))));
     }
     return suggestions;
   }
 
+  private static BusinessMessagesSuggestion buildRemoveFilterSuggestion(String filterName) {
+    return new BusinessMessagesSuggestion()
+        .setReply(new BusinessMessagesSuggestedReply()
+            .setText("Remove").setPostbackData(
+              String.format(BotConstants.REMOVE_FILTER_POSTBACK, filterName)));
+  }
+
+  private static ImmutableMap<String, BusinessMessagesSuggestion> buildRemoveFilterSuggestions() {
+    ImmutableMap.Builder<String, BusinessMessagesSuggestion> suggestions = ImmutableMap.builder();
+    for (String filterName : FILTER_NAMES) {
+      suggestions.put(filterName, buildRemoveFilterSuggestion(filterName));
+    }
+    return suggestions.build();
+  }
+
+  private static Map<String, SuggestionSet> newSuggestionCache() {
+    return CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_FILTER_SUGGESTIONS)
+        .<String, SuggestionSet>build()
+        .asMap();
+  }
+
+  /**
+   * Formats a filter option with the number of items it matches, i.e. "Blue (12)".
+   */
+  private static String getFacetText(Map.Entry<String, Integer> optionCount) {
+    return optionCount.getKey() + " (" + optionCount.getValue() + ")";
+  }
+
   /**
    * Creates suggestions to add to filter cards. 
    * @param filterName The name of the filter that the suggestions will pertain to.
@@ -369,11 +458,9 @@ public class UIManager {
     List<BusinessMessagesSuggestion> suggestions = new ArrayList<>();
 
     if (!pickup.getAddedToCal()) {
-      SimpleDateFormat formatter = new SimpleDateFormat("YYYYMMdd'T'HHmmssZ");
-      String startTime = formatter.format(pickup.getTime());
-      Calendar endTimeCal = new Calendar.Builder().setInstant(pickup.getTime()).build();
-      endTimeCal.add(Calendar.HOUR, BotConstants.TIME_SLOT_DURATION);
-      String endTime = formatter.format(endTimeCal.getTime());
+      String[] calendarTimes = PickupSlots.getCalendarTimes(pickup);
+      String startTime = calendarTimes[0];
+      String endTime = calendarTimes[1];
 
       String storeAddress = BotConstants.STORE_NAME_TO_ADDRESS_HTML.get(pickup.getStoreAddress());
 
@@ -408,24 +495,76 @@ public class UIManager {
   }
 
   /**
-   * Creates a single shop card. Used when there is only one item in the business inventory
-   * that matches a user's filters.
-   * @return A standalone shop item card.
+   * Creates the suggestion that shows the next page of inventory results.
+   * @param cursor The cursor of the next page.
+   * @return The "More Results" suggestion.
+   */
+  public static BusinessMessagesSuggestion getMoreResultsSuggestion(String cursor) {
+    return new BusinessMessagesSuggestion()
+        .setReply(new BusinessMessagesSuggestedReply()
+            .setText(BotConstants.MORE_RESULTS_TEXT).setPostbackData(
+              String.format(BotConstants.MORE_RESULTS_POSTBACK, cursor)));
+  }
+
+  /**
+   * Builds the parts of an item's shop card that do not change while its inventory snapshot
+   * is current, which is everything but the description.
+   * @param item The item the card is built for.
+   * @return The card without a description. It may be shared, so it must not be modified.
+   */
+  public static BusinessMessagesCardContent getShopCardTemplate(InventoryItem item) {
+    return new BusinessMessagesCardContent()
+      .setTitle(item.getTitle())
+      .setSuggestions(getInventorySuggestions(item.getId()))
+      .setMedia(new BusinessMessagesMedia()
+        .setHeight(MediaHeight.MEDIUM.toString())
+        .setContentInfo(getContentInfo(item.getMediaUrl(), MediaHeight.MEDIUM)));
+  }
+
+  /**
+   * Builds the parts of an item's cart card that do not change while its inventory snapshot
+   * is current, which is everything but the description.
+   * @param item The item the card is built for.
+   * @return The card without a description. It may be shared, so it must not be modified.
    */
-  public static BusinessMessagesStandaloneCard getShopCard(List<InventoryItem> validItems) {
-    BusinessMessagesCardContent card = null;
-    for (InventoryItem currentItem : validItems) {
-      card = new BusinessMessagesCardContent()
-      .setTitle(currentItem.getTitle())
-      .setDescription("In stock.")
-      .setSuggestions(getInventorySuggestions(currentItem.getId()))
+  public static BusinessMessagesCardContent getCartCardTemplate(InventoryItem item) {
+    return new BusinessMessagesCardContent()
+      .setTitle(item.getTitle())
+      .setSuggestions(getCartSuggestions(item.getId()))
       .setMedia(new BusinessMessagesMedia()
         .setHeight(MediaHeight.MEDIUM.toString())
-        .setContentInfo(new BusinessMessagesContentInfo()
-          .setFileUrl(currentItem.getMediaUrl())
-          .setForceRefresh(true)));
+        .setContentInfo(getContentInfo(item.getMediaUrl(), MediaHeight.MEDIUM)));
+  }
+
+  /**
+   * Describes a card's image. Images are linked by their thumbnail for the card's height once
+   * it has been generated, and by their versioned URL once their content version is known.
+   * Either way they are not force-refreshed, so clients only fetch them again when they change.
+   * @param fileUrl The URL of the image.
+   * @param height The height of the card the image is shown on.
+   * @return The content info of the image.
+   */
+  static BusinessMessagesContentInfo getContentInfo(String fileUrl, MediaHeight height) {
+    String linkedUrl = getLinkedUrl(fileUrl, height);
+    return new BusinessMessagesContentInfo()
+      .setFileUrl(linkedUrl)
+      .setForceRefresh(Objects.equals(linkedUrl, fileUrl));
+  }
+
+  /**
+   * Gets the URL a card currently links an image by: its thumbnail for the card's height, its
+   * versioned URL, or the image's own URL if neither is available yet.
+   * @param fileUrl The URL of the image.
+   * @param height The height of the card the image is shown on.
+   * @return The URL to link.
+   */
+  static String getLinkedUrl(String fileUrl, MediaHeight height) {
+    String thumbnailUrl = MediaService.getInstance().getThumbnailUrl(fileUrl, height);
+    if (thumbnailUrl != null) {
+      return thumbnailUrl;
     }
-    return new BusinessMessagesStandaloneCard().setCardContent(card);
+    String versionedUrl = MediaRegistry.getInstance().getVersionedUrl(fileUrl);
+    return versionedUrl != null ? versionedUrl : fileUrl;
   }
 
   /**
@@ -435,62 +574,49 @@ public class UIManager {
    * @return The rich card with pickup information.
    */
   public static BusinessMessagesStandaloneCard getPickupCard(Pickup pickup) {
-    SimpleDateFormat formatter = new SimpleDateFormat("EEE MM/dd hh:mm a");
-    Calendar pickupTimeCal = new Calendar.Builder().setInstant(pickup.getTime()).build();
-    pickupTimeCal.add(Calendar.HOUR, -1 * BotConstants.STORE_NAME_TO_TIME_ZONE_OFFSET.get(pickup.getStoreAddress()));
-    String startTime = formatter.format(pickupTimeCal.getTime());
-    pickupTimeCal.add(Calendar.HOUR, BotConstants.TIME_SLOT_DURATION);
-    formatter = new SimpleDateFormat("hh:mm a");
-    String endTime = formatter.format(pickupTimeCal.getTime());
-
     BusinessMessagesCardContent card = new BusinessMessagesCardContent()
       .setTitle(String.format(BotConstants.PICKUP_TITLE, pickup.getOrderId()))
       .setDescription("Store: " + pickup.getStoreAddress() + "\n"
-        + "Time: " + startTime + " - " + endTime)
+        + "Time: " + PickupSlots.getSlotLabel(pickup))
       .setSuggestions(getPickupCardSuggestions(pickup))
       .setMedia(new BusinessMessagesMedia()
         .setHeight(MediaHeight.MEDIUM.toString())
-        .setContentInfo(new BusinessMessagesContentInfo()
-          .setFileUrl(BotConstants.PICKUP_IMAGE)
-          .setForceRefresh(true)));
+        .setContentInfo(getContentInfo(BotConstants.PICKUP_IMAGE, MediaHeight.MEDIUM)));
     return new BusinessMessagesStandaloneCard().setCardContent(card);
   }
 
   /**
-   * Creates a single cart card. Used when there is a single item in a user's cart.
-   * @return A standalone cart item card.
+   * Describes an inventory item on a shop card, with its price if it has one.
    */
-  public static BusinessMessagesStandaloneCard getCartCard(Inventory storeInventory, Cart userCart) {
-    BusinessMessagesCardContent card = null;
-    for (CartItem currentItem : userCart.getItems()) {
-      try {
-        InventoryItem itemInStore = storeInventory.getItem(currentItem.getId()).get();
-        card = new BusinessMessagesCardContent()
-        .setTitle(currentItem.getTitle())
-        .setDescription("Quantity: " + currentItem.getCount())
-        .setSuggestions(getCartSuggestions(currentItem.getId()))
-        .setMedia(new BusinessMessagesMedia()
-          .setHeight(MediaHeight.MEDIUM.toString())
-          .setContentInfo(new BusinessMessagesContentInfo()
-            .setFileUrl(itemInStore.getMediaUrl())
-            .setForceRefresh(true)));
-      } catch (NoSuchElementException e) {
-        logger.log(Level.SEVERE, "Item in cart that is no longer in inventory.", e);
-      }
+  static String getShopDescription(InventoryItem item) {
+    long available = StockLedger.getInstance().getAvailable(item.getId());
+    String stock = available <= 0 ? "Out of stock."
+        : available <= LOW_STOCK_THRESHOLD ? "Only " + available + " left!" : "In stock.";
+    return item.getPriceCents() > 0
+        ? PriceIndex.formatPrice(item.getPriceCents()) + " - " + stock : stock;
+  }
+
+  /**
+   * Describes an item on a cart card, with the total price of every unit of it in the cart.
+   */
+  static String getCartDescription(CartItem cartItem, InventoryItem itemInStore) {
+    String description = "Quantity: " + cartItem.getCount();
+    if (itemInStore.getPriceCents() > 0) {
+      description += "\nSubtotal: " + PriceIndex.formatPrice(itemInStore.getPriceCents() * cartItem.getCount());
     }
-    return new BusinessMessagesStandaloneCard().setCardContent(card);
+    return description;
   }
 
   /**
    * Creates a rich card carousel out of the user's filters.
    * @return A carousel rich card.
    */
-  public static BusinessMessagesCarouselCard getFilterCarousel(String conversationId) {
+  public static BusinessMessagesCarouselCard getFilterCarousel(TurnContext turnContext) {
     List<BusinessMessagesCardContent> cardContents = new ArrayList<>();
 
-    Filter colorFilter = FilterManager.getFilter(conversationId, BotConstants.COLOR_FILTER_NAME);
-    Filter brandFilter = FilterManager.getFilter(conversationId, BotConstants.BRAND_FILTER_NAME);
-    Filter sizeFilter = FilterManager.getFilter(conversationId, BotConstants.SIZE_FILTER_NAME);
+    Filter colorFilter = turnContext.getFilter(BotConstants.COLOR_FILTER_NAME);
+    Filter brandFilter = turnContext.getFilter(BotConstants.BRAND_FILTER_NAME);
+    Filter sizeFilter = turnContext.getFilter(BotConstants.SIZE_FILTER_NAME);
     String colorOption;
     String brandOption;
     String sizeOption;
@@ -507,9 +633,7 @@ public class UIManager {
       .setSuggestions(getFilterCardSuggestions(BotConstants.COLOR_FILTER_NAME))
       .setMedia(new BusinessMessagesMedia()
           .setHeight(MediaHeight.MEDIUM.toString())
-          .setContentInfo(new BusinessMessagesContentInfo()
-            .setFileUrl(BotConstants.COLOR_CARD_IMAGE)
-            .setForceRefresh(true))));
+          .setContentInfo(getContentInfo(BotConstants.COLOR_CARD_IMAGE, MediaHeight.MEDIUM))));
 
     cardContents.add(new BusinessMessagesCardContent()
       .setTitle(BRAND_FILTER_CARD_TITLE)
@@ -517,9 +641,7 @@ public class UIManager {
       .setSuggestions(getFilterCardSuggestions(BotConstants.BRAND_FILTER_NAME))
       .setMedia(new BusinessMessagesMedia()
           .setHeight(MediaHeight.MEDIUM.toString())
-          .setContentInfo(new BusinessMessagesContentInfo()
-            .setFileUrl(BotConstants.BRAND_CARD_IMAGE)
-            .setForceRefresh(true))));
+          .setContentInfo(getContentInfo(BotConstants.BRAND_CARD_IMAGE, MediaHeight.MEDIUM))));
 
     cardContents.add(new BusinessMessagesCardContent()
       .setTitle(SIZE_FILTER_CARD_TITLE)
@@ -527,9 +649,21 @@ public class UIManager {
       .setSuggestions(getFilterCardSuggestions(BotConstants.SIZE_FILTER_NAME))
       .setMedia(new BusinessMessagesMedia()
           .setHeight(MediaHeight.MEDIUM.toString())
-          .setContentInfo(new BusinessMessagesContentInfo()
-            .setFileUrl(BotConstants.SIZE_CARD_IMAGE)
-            .setForceRefresh(true))));
+          .setContentInfo(getContentInfo(BotConstants.SIZE_CARD_IMAGE, MediaHeight.MEDIUM))));
+
+    // price and sort are optional, so their cards show the default when they are not set
+    Filter priceFilter = turnContext.getFilter(BotConstants.PRICE_FILTER_NAME);
+    Filter sortFilter = turnContext.getFilter(BotConstants.SORT_FILTER_NAME);
+    cardContents.add(new BusinessMessagesCardContent()
+      .setTitle(PRICE_FILTER_CARD_TITLE)
+      .setDescription(priceFilter == null ? "All" : priceFilter.getValue())
+      .setSuggestions(getFilterCardSuggestions(BotConstants.PRICE_FILTER_NAME)));
+
+    cardContents.add(new BusinessMessagesCardContent()
+      .setTitle(SORT_FILTER_CARD_TITLE)
+      .setDescription(sortFilter == null || sortFilter.getValue().equals("all")
+          ? BotConstants.SORT_FEATURED : sortFilter.getValue())
+      .setSuggestions(getFilterCardSuggestions(BotConstants.SORT_FILTER_NAME)));
 
     return new BusinessMessagesCarouselCard()
         .setCardContents(cardContents)
@@ -555,79 +689,27 @@ public class UIManager {
         .setCardWidth(CardWidth.MEDIUM.toString());
   }
 
-  /**
-   * Creates a rich card carousel out of items in business inventory.
-   * @return A carousel rich card.
-   */
-  public static BusinessMessagesCarouselCard getShopCarousel(List<InventoryItem> validItems) {
-    List<BusinessMessagesCardContent> cardContents = new ArrayList<>();
-
-    for (int i = 0; i < validItems.size() && i < MAX_CAROUSEL_LIMIT; i++) {
-      InventoryItem currentItem = validItems.get(i);
-      cardContents.add(new BusinessMessagesCardContent()
-        .setTitle(currentItem.getTitle())
-        .setDescription("In stock.")
-        .setSuggestions(getInventorySuggestions(currentItem.getId()))
-        .setMedia(new BusinessMessagesMedia()
-          .setHeight(MediaHeight.MEDIUM.toString())
-          .setContentInfo(new BusinessMessagesContentInfo()
-            .setFileUrl(currentItem.getMediaUrl())
-            .setForceRefresh(true))));
-    }
-
-    return new BusinessMessagesCarouselCard()
-        .setCardContents(cardContents)
-        .setCardWidth(CardWidth.MEDIUM.toString());
-  }
-
-  /**
-   * Creates a rich card carousel out of items in the user's cart.
-   * @return A carousel rich card.
-   */
-  public static BusinessMessagesCarouselCard getCartCarousel(Inventory storeInventory, Cart userCart) {
-    List<BusinessMessagesCardContent> cardContents = new ArrayList<>();
-
-    for (CartItem currentItem : userCart.getItems()) {
-      try {
-        InventoryItem itemInStore = storeInventory.getItem(currentItem.getId()).get();
-        cardContents.add(new BusinessMessagesCardContent()
-        .setTitle(currentItem.getTitle())
-        .setDescription("Quantity: " + currentItem.getCount())
-        .setSuggestions(getCartSuggestions(currentItem.getId()))
-        .setMedia(new BusinessMessagesMedia()
-          .setHeight(MediaHeight.MEDIUM.toString())
-          .setContentInfo(new BusinessMessagesContentInfo()
-            .setFileUrl(itemInStore.getMediaUrl())
-            .setForceRefresh(true))));
-      } catch (NoSuchElementException e) {
-        logger.log(Level.SEVERE, "Item in cart not in inventory.", e);
-      }
-    }
-
-    return new BusinessMessagesCarouselCard()
-        .setCardContents(cardContents)
-        .setCardWidth(CardWidth.MEDIUM.toString());
-  }
-
   /**
    * Constructs and returns a rich card carousel out of the different store locations such that the user
    * can select one to be the location of their scheduled pickup.
    * @param orderId The order identifier for which the pickup is being scheduled.
+   * @param storeNames The stores the order can be picked up at.
    * @return The carousel of different store locations.
    */
-  public static BusinessMessagesCarouselCard getStoreAddressCarousel(String orderId) {
+  public static BusinessMessagesCarouselCard getStoreAddressCarousel(String orderId, List<String> storeNames) {
     List<BusinessMessagesCardContent> cardContents = new ArrayList<>();
 
     for (Map.Entry<String, String> ent : BotConstants.STORE_NAME_TO_LOCATION.entrySet()) {
+        if (!storeNames.contains(ent.getKey())) {
+          continue;
+        }
         cardContents.add(new BusinessMessagesCardContent()
         .setTitle(ent.getKey())
         .setDescription(BotConstants.STORE_NAME_TO_ADDRESS.get(ent.getKey()))
         .setSuggestions(getStoreCardSuggestions(orderId, ent.getKey()))
         .setMedia(new BusinessMessagesMedia()
           .setHeight(MediaHeight.MEDIUM.toString())
-          .setContentInfo(new BusinessMessagesContentInfo()
-            .setFileUrl(ent.getValue())
-            .setForceRefresh(true))));
+          .setContentInfo(getContentInfo(ent.getValue(), MediaHeight.MEDIUM))));
     }
 
     return new BusinessMessagesCarouselCard()
@@ -650,9 +732,7 @@ public class UIManager {
         .setSuggestions(getPickupTimeSuggestions(orderId, ent.getValue()))
         .setMedia(new BusinessMessagesMedia()
           .setHeight(MediaHeight.MEDIUM.toString())
-          .setContentInfo(new BusinessMessagesContentInfo()
-            .setFileUrl(BotConstants.CALENDAR_IMAGE)
-            .setForceRefresh(true))));
+          .setContentInfo(getContentInfo(BotConstants.CALENDAR_IMAGE, MediaHeight.MEDIUM))));
     }
 
     return new BusinessMessagesCarouselCard()
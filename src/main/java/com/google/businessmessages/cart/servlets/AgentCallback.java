@@ -21,6 +21,8 @@ import com.google.appengine.api.memcache.MemcacheService;
 import com.google.appengine.api.memcache.MemcacheServiceFactory;
 import com.google.businessmessages.cart.BotConstants;
 import com.google.businessmessages.cart.CartBot;
+import com.google.businessmessages.cart.ConversationRateLimiter;
+import com.google.businessmessages.cart.EventLogger;
 import com.google.communications.businessmessages.v1.RepresentativeType;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -44,6 +46,9 @@ public class AgentCallback extends HttpServlet {
 
   private static final Logger logger = Logger.getLogger(AgentCallback.class.getName());
 
+  // Shared by all requests handled by this instance
+  private static final ConversationRateLimiter rateLimiter = ConversationRateLimiter.fromSystemProperties();
+
   public AgentCallback() {
     super();
   }
@@ -59,15 +64,26 @@ public class AgentCallback extends HttpServlet {
         Collectors.joining(System.lineSeparator())
     );
 
-    logger.info(jsonResponse);
-
-    // Load the JSON string into a Json parser
-    JsonParser parser = new JsonParser();
-    JsonObject obj = parser.parse(jsonResponse).getAsJsonObject();
-
-    // Parse incoming request
-    String conversationId = obj.get("conversationId").getAsString();
+    String conversationId = null;
+    try {
+      // Load the JSON string into a Json parser
+      JsonParser parser = new JsonParser();
+      JsonObject obj = parser.parse(jsonResponse).getAsJsonObject();
+
+      // Parse incoming request
+      conversationId = obj.get("conversationId").getAsString();
+      EventLogger.log(EventLogger.Category.INBOUND, "request_received", conversationId, null,
+          () -> jsonResponse);
+
+      routeRequest(obj, conversationId);
+    } catch (RuntimeException e) {
+      EventLogger.logFailure(EventLogger.Category.INBOUND, "request_failed", conversationId, null,
+          () -> jsonResponse, e);
+      throw e;
+    }
+  }
 
+  private void routeRequest(JsonObject obj, String conversationId) {
     // Use memcache to de-dupe messages
     MemcacheService syncCache = MemcacheServiceFactory.getMemcacheService();
 
@@ -160,13 +176,39 @@ public class AgentCallback extends HttpServlet {
         String receiptType = element.getAsJsonObject().get("receiptType").getAsString();
         String messageId = element.getAsJsonObject().get("message").getAsString();
 
-        logger.info("Receipt: (" + receiptType + ", " + messageId + ")");
+        EventLogger.log(EventLogger.Category.RECEIPT, "receipt_" + receiptType.toLowerCase(),
+            conversationId, messageId, null);
       }
     }
   }
 
   private void routeTextResponse(String conversationId, String message, String context) {
-      new CartBot(getRepresentative()).routeMessage(message, context, conversationId);
+    ConversationRateLimiter.Decision decision;
+    try {
+      decision = rateLimiter.acquire(conversationId);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      decision = ConversationRateLimiter.Decision.DROP;
+    }
+
+    switch (decision) {
+      case PROCEED:
+        new CartBot(getRepresentative()).routeMessage(message, context, conversationId);
+        break;
+      case DROP_WITH_NOTICE:
+        new CartBot(getRepresentative()).sendRateLimitedNotice(conversationId);
+        logRateLimited(conversationId, message);
+        break;
+      case DROP:
+      default:
+        logRateLimited(conversationId, message);
+        break;
+    }
+  }
+
+  private void logRateLimited(String conversationId, String message) {
+    EventLogger.log(EventLogger.Category.INBOUND, "message_rate_limited", conversationId, null,
+        () -> message);
   }
 }
 // [END callback for receiving consumer messages]
@@ -8,6 +8,11 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import com.google.appengine.api.datastore.Entity;
 import com.google.businessmessages.cart.DataManager;
+import com.google.businessmessages.cart.Inventory;
+import com.google.businessmessages.cart.InventoryHolder;
+import com.google.businessmessages.cart.InventoryItem;
+import com.google.businessmessages.cart.PriceIndex;
+import com.google.businessmessages.cart.StockLedger;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
@@ -30,15 +35,26 @@ public class GetCart extends HttpServlet {
         // get the user's cart and form the json object
         String cartId = request.getParameter("cartId");
         List<Entity> cartItems = DataManager.getInstance().getCartFromData(cartId);
+        // the user is checking out, so keep the cart's stock reservations from expiring
+        StockLedger.getInstance().touch(cartId);
+        // prices come from the in-memory inventory, so they cost no extra datastore reads
+        Inventory storeInventory = InventoryHolder.getSnapshot().getInventory();
         JsonObject cartObject = new JsonObject();
         JsonArray items = new JsonArray();
+        long subtotalCents = 0;
         for (Entity ent : cartItems) {
+            long count = (Long) ent.getProperty("count");
+            long priceCents = storeInventory.getItem((String) ent.getProperty("item_id"))
+                .map(InventoryItem::getPriceCents).orElse(0L);
+            subtotalCents += priceCents * count;
             JsonObject itemObj = new JsonObject();
             itemObj.addProperty("itemTitle", (String) ent.getProperty("item_title"));
-            itemObj.addProperty("itemCount", Long.toString((Long) ent.getProperty("count")));
+            itemObj.addProperty("itemCount", Long.toString(count));
+            itemObj.addProperty("itemPrice", PriceIndex.formatPrice(priceCents));
             items.add(itemObj);
         }
         cartObject.add("items", items);
+        cartObject.addProperty("subtotal", PriceIndex.formatPrice(subtotalCents));
         // write the json object to the response and commit
         response.getWriter().print(cartObject);
         response.getWriter().flush();   
@@ -0,0 +1,43 @@
+package com.google.businessmessages.cart.servlets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.businessmessages.cart.MediaService;
+
+/**
+ * Servlet for the card image thumbnails generated by the MediaService.
+ */
+@WebServlet(name = "MediaServlet", value = "/media/*")
+public class MediaServlet extends HttpServlet {
+    // thumbnail paths include the version of their source image, so their content never changes
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    public MediaServlet() {
+        super();
+    }
+
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ByteBuffer thumbnail = MediaService.getInstance().getThumbnail(request.getPathInfo());
+        if (thumbnail == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setContentType("image/jpeg");
+        response.setContentLength(thumbnail.remaining());
+        response.setHeader("Cache-Control", CACHE_CONTROL);
+        // the servlet stream only takes byte arrays, so the channel copies the mapped file through
+        // its own small heap buffer, a chunk at a time, rather than the whole thumbnail at once
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        while (thumbnail.hasRemaining()) {
+            out.write(thumbnail);
+        }
+        response.flushBuffer();
+    }
+}
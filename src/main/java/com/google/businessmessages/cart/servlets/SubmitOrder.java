@@ -1,7 +1,10 @@
 package com.google.businessmessages.cart.servlets;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -10,8 +13,10 @@ import com.google.api.services.businessmessages.v1.model.BusinessMessagesReprese
 import com.google.appengine.api.datastore.Entity;
 import com.google.businessmessages.cart.BotConstants;
 import com.google.businessmessages.cart.CartBot;
+import com.google.businessmessages.cart.CartManager;
 import com.google.businessmessages.cart.DataManager;
 import com.google.businessmessages.cart.OrderManager;
+import com.google.businessmessages.cart.StockLedger;
 import com.google.communications.businessmessages.v1.RepresentativeType;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
@@ -33,10 +38,38 @@ public class SubmitOrder extends HttpServlet {
         String cartId = request.getParameter("cartId");
         String orderId = request.getParameter("orderId");
         Entity cartEntity = DataManager.getInstance().getUserFromCartId(cartId);
-        OrderManager.addOrder((String) cartEntity.getProperty("conversation_id"), 
-            orderId);
-        // form json object with order items to display on order confirmation page
         List<Entity> orderItems = DataManager.getInstance().getCartFromData(cartId);
+        String conversationId = (String) cartEntity.getProperty("conversation_id");
+        // the item ids decide which stores the order can be picked up at
+        List<String> itemIds = new ArrayList<>();
+        Map<String, Integer> itemCounts = new HashMap<>();
+        for (Entity ent : orderItems) {
+            itemIds.add((String) ent.getProperty("item_id"));
+            itemCounts.put((String) ent.getProperty("item_id"), ((Long) ent.getProperty("count")).intValue());
+        }
+        CartBot bot = new CartBot(new BusinessMessagesRepresentative()
+                .setRepresentativeType(RepresentativeType.BOT.toString())
+                .setDisplayName(BotConstants.BOT_AGENT_NAME));
+        // the datastore decides whether the stock is still there, so the order is only placed
+        // once it has been taken
+        StockLedger.CommitResult result = StockLedger.getInstance().commit(cartId, itemCounts);
+        if (result != StockLedger.CommitResult.COMMITTED) {
+            String errorText = result == StockLedger.CommitResult.SOLD_OUT
+                ? BotConstants.ORDER_SOLD_OUT_RESPONSE_TEXT
+                : BotConstants.ORDER_FAILED_RESPONSE_TEXT;
+            bot.startTurn(conversationId);
+            bot.sendResponse(errorText, conversationId);
+            JsonObject errorObject = new JsonObject();
+            errorObject.addProperty("error", errorText);
+            response.setStatus(result == StockLedger.CommitResult.SOLD_OUT
+                ? HttpServletResponse.SC_CONFLICT
+                : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.getWriter().print(errorObject);
+            response.getWriter().flush();
+            return;
+        }
+        OrderManager.addOrder(conversationId, orderId, itemIds);
+        // form json object with order items to display on order confirmation page
         JsonObject orderObject = new JsonObject();
         JsonArray items = new JsonArray();
         for (Entity ent : orderItems) {
@@ -47,13 +80,10 @@ public class SubmitOrder extends HttpServlet {
         }
         orderObject.add("items", items);
         // delete all items from cart now that order is complete
-        DataManager.getInstance().emptyCart(cartId);
+        CartManager.emptyCart(conversationId, cartId);
         // send message to user indicating they can schedule pickup
-        CartBot bot = new CartBot(new BusinessMessagesRepresentative()
-                .setRepresentativeType(RepresentativeType.BOT.toString())
-                .setDisplayName(BotConstants.BOT_AGENT_NAME));
-        bot.setUserCart((String) cartEntity.getProperty("conversation_id"));
-        bot.sendResponse(BotConstants.PLACED_ORDER_RESPONSE_TEXT, (String) cartEntity.getProperty("conversation_id"));
+        bot.startTurn(conversationId);
+        bot.sendResponse(BotConstants.PLACED_ORDER_RESPONSE_TEXT, conversationId);
         // write the json object to the response and commit
         response.getWriter().print(orderObject);
         response.getWriter().flush();   
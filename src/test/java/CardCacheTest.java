@@ -0,0 +1,83 @@
+import static com.google.common.truth.Truth.assertThat;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesCarouselCard;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesMessage;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesRepresentative;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesRichCard;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesStandaloneCard;
+import com.google.businessmessages.cart.BotConstants;
+import com.google.businessmessages.cart.CardCache;
+import com.google.businessmessages.cart.InventoryItem;
+import com.google.businessmessages.cart.MockInventory;
+import com.google.businessmessages.cart.ResponseTemplate;
+import com.google.businessmessages.cart.UIManager;
+import org.junit.Test;
+
+public class CardCacheTest {
+
+    private final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+    private final List<InventoryItem> testItems = new MockInventory(BotConstants.INVENTORY_IMAGES,
+        BotConstants.INVENTORY_PROPERTIES, BotConstants.INVENTORY_PRICES).getInventory().asList();
+    private final BusinessMessagesRepresentative testRepresentative = new BusinessMessagesRepresentative()
+        .setRepresentativeType("BOT")
+        .setDisplayName("testDisplayName");
+
+    @Test
+    public void testGetShopCard_reusesCard() throws Exception {
+        CardCache testCache = new CardCache();
+
+        CardCache.CachedCard card = testCache.getShopCard(testItems.get(0));
+
+        assertThat(testCache.getShopCard(testItems.get(0))).isSameAs(card);
+        assertThat(testCache.getCartCard(testItems.get(0))).isNotSameAs(card);
+        assertThat(card.withDescription("testDescription").getMedia()).isSameAs(card.getTemplate().getMedia());
+    }
+
+    @Test
+    public void testRenderRichCard_standaloneMatchesSerializedCard() throws Exception {
+        CardCache.CachedCard card = new CardCache().getCartCard(testItems.get(0));
+
+        assertThat(card.getTemplate().getTitle()).isEqualTo(UIManager.getCartCardTemplate(testItems.get(0)).getTitle());
+        assertThat(card.getTemplate().getSuggestions().get(0).getReply().getPostbackData())
+            .isEqualTo(UIManager.getCartSuggestions(testItems.get(0).getId()).get(0).getReply().getPostbackData());
+
+        byte[] rendered = CardCache.renderRichCard(Arrays.asList(card), Arrays.asList("Quantity: 2"));
+
+        BusinessMessagesRichCard expected = new BusinessMessagesRichCard()
+            .setStandaloneCard(new BusinessMessagesStandaloneCard()
+                .setCardContent(card.withDescription("Quantity: 2")));
+        assertThat(reserialize(rendered)).isEqualTo(jsonFactory.toString(expected));
+    }
+
+    @Test
+    public void testRenderRichCard_carouselInMessage() throws Exception {
+        CardCache testCache = new CardCache();
+        List<CardCache.CachedCard> cards = Arrays.asList(
+            testCache.getShopCard(testItems.get(0)), testCache.getShopCard(testItems.get(1)));
+        List<String> descriptions = Arrays.asList("test \"quoted\" description", "In stock.");
+
+        byte[] rendered = ResponseTemplate.RICH_CARD.renderRichCard("testMessageId", testRepresentative,
+            CardCache.renderRichCard(cards, descriptions), "testFallback", null);
+        BusinessMessagesMessage message = jsonFactory.fromString(
+            new String(rendered, StandardCharsets.UTF_8), BusinessMessagesMessage.class);
+
+        BusinessMessagesRichCard expected = new BusinessMessagesRichCard()
+            .setCarouselCard(new BusinessMessagesCarouselCard()
+                .setCardWidth("MEDIUM")
+                .setCardContents(Arrays.asList(
+                    cards.get(0).withDescription(descriptions.get(0)),
+                    cards.get(1).withDescription(descriptions.get(1)))));
+        assertThat(message.getMessageId()).isEqualTo("testMessageId");
+        assertThat(message.getFallback()).isEqualTo("testFallback");
+        assertThat(jsonFactory.toString(message.getRichCard())).isEqualTo(jsonFactory.toString(expected));
+    }
+
+    private String reserialize(byte[] rendered) throws Exception {
+        return jsonFactory.toString(jsonFactory.fromString(
+            new String(rendered, StandardCharsets.UTF_8), BusinessMessagesRichCard.class));
+    }
+}
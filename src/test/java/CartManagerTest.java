@@ -80,7 +80,7 @@ public class CartManagerTest {
         String testAddItemTitle = "testAddItemTitle";
         String testAddItemId = "testAddItemId";
 
-        cart = CartManager.addItem(cart.getId(), testAddItemId, testAddItemTitle);
+        cart = CartManager.addItem("testAddConversationId", cart.getId(), testAddItemId, testAddItemTitle);
 
         assertThat(cart.getItems().size()).isEqualTo(1);
         UnmodifiableIterator<CartItem> iterator = cart.getItems().iterator();
@@ -102,7 +102,7 @@ public class CartManagerTest {
         DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
         datastore.put(testDeleteItem);
 
-        cart = CartManager.deleteItem(cart.getId(), testDeleteItemId);
+        cart = CartManager.deleteItem("testDeleteConversationId", cart.getId(), testDeleteItemId);
 
         assertThat(cart.getItems()).isEmpty();
     }
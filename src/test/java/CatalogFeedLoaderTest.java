@@ -0,0 +1,97 @@
+import static com.google.common.truth.Truth.assertThat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import com.google.businessmessages.cart.CatalogFeedLoader;
+import com.google.businessmessages.cart.ColumnarCatalog;
+import com.google.businessmessages.cart.Filter;
+import com.google.businessmessages.cart.InventoryItem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CatalogFeedLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLoad_jsonLines() throws Exception {
+        File testFeed = folder.newFile("feed.jsonl");
+        List<String> testLines = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            testLines.add("{\"title\": \"testItem" + i + "\", \"image_url\": \"testUrl" + i + "\", \"price\": 10.5,"
+                + " \"properties\": {\"size\": [\"9\", \"10\"], \"color\": \"" + (i % 2 == 0 ? "Blue" : "Pink") + "\"}}");
+        }
+        Files.write(testFeed.toPath(), testLines, StandardCharsets.UTF_8);
+
+        ColumnarCatalog testInventory = CatalogFeedLoader.load(testFeed.toPath());
+
+        assertThat(testInventory.getInventory()).hasSize(2500);
+        InventoryItem testItem = testInventory.getInventory().get(1234);
+        assertThat(testItem.getTitle()).isEqualTo("testItem1234");
+        assertThat(testItem.getMediaUrl()).isEqualTo("testUrl1234");
+        assertThat(testItem.getPrice()).isEqualTo(10.5);
+        assertThat(testInventory.getMatchingItems(Arrays.asList(new Filter("color", "blue")))).hasSize(1250);
+    }
+
+    @Test
+    public void testLoad_csv() throws Exception {
+        File testFeed = folder.newFile("feed.csv");
+        Files.write(testFeed.toPath(), Arrays.asList(
+            "title,image_url,price,size,brand",
+            "\"Runner, \"\"Pro\"\"\",testUrl1,99.99,8|9,Nike",
+            "Walker,testUrl2,,9,asics"), StandardCharsets.UTF_8);
+
+        ColumnarCatalog testInventory = CatalogFeedLoader.load(testFeed.toPath());
+
+        assertThat(testInventory.getInventory()).hasSize(2);
+        assertThat(testInventory.getInventory().get(0).getTitle()).isEqualTo("Runner, \"Pro\"");
+        assertThat(testInventory.getInventory().get(0).getPrice()).isEqualTo(99.99);
+        assertThat(testInventory.getMatchingItems(Arrays.asList(new Filter("size", "9")))).hasSize(2);
+        assertThat(testInventory.getMatchingItems(Arrays.asList(new Filter("brand", "nike")))).hasSize(1);
+    }
+
+    @Test
+    public void testLoad_namesAreCaseInsensitiveInBothFormats() throws Exception {
+        File testJsonFeed = folder.newFile("mixed.jsonl");
+        Files.write(testJsonFeed.toPath(), Arrays.asList(
+            "{\"Title\": \"testItem\", \"Image_URL\": \"testUrl\", \"Price\": 5, \"Properties\": {\"Brand\": \"Nike\"}}"),
+            StandardCharsets.UTF_8);
+        File testCsvFeed = folder.newFile("mixed.csv");
+        Files.write(testCsvFeed.toPath(), Arrays.asList(
+            "Title,Image_URL,Price,Brand",
+            "testItem,testUrl,5,Nike"), StandardCharsets.UTF_8);
+
+        for (File testFeed : Arrays.asList(testJsonFeed, testCsvFeed)) {
+            ColumnarCatalog testInventory = CatalogFeedLoader.load(testFeed.toPath());
+
+            assertThat(testInventory.getInventory().get(0).getTitle()).isEqualTo("testItem");
+            assertThat(testInventory.getInventory().get(0).getMediaUrl()).isEqualTo("testUrl");
+            assertThat(testInventory.getInventory().get(0).getPrice()).isEqualTo(5.0);
+            assertThat(testInventory.getMatchingItems(Arrays.asList(new Filter("brand", "nike")))).hasSize(1);
+        }
+    }
+
+    @Test
+    public void testLoad_csvRequiresColumns() throws Exception {
+        File testFeed = folder.newFile("noprice.csv");
+        Files.write(testFeed.toPath(), Arrays.asList(
+            "title,image_url,size",
+            "Walker,testUrl2,9"), StandardCharsets.UTF_8);
+
+        IOException thrown = null;
+        try {
+            CatalogFeedLoader.load(testFeed.toPath());
+        } catch (IOException e) {
+            thrown = e;
+        }
+
+        assertThat(thrown).isNotNull();
+        assertThat(thrown.getMessage()).contains("price");
+    }
+}
@@ -0,0 +1,57 @@
+import static com.google.common.truth.Truth.assertThat;
+import com.google.businessmessages.cart.CoPurchaseModel;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class CoPurchaseModelTest {
+
+    @Test
+    public void testGetNeighbors_ordersByCoPurchaseCount() throws Exception {
+        CoPurchaseModel testModel = new CoPurchaseModel(100);
+
+        testModel.recordOrder(Arrays.asList("shoes", "socks", "laces"));
+        testModel.recordOrder(Arrays.asList("shoes", "socks"));
+        testModel.recordOrder(Arrays.asList("shoes", "insoles", "insoles"));
+        testModel.recordOrder(Arrays.asList("socks"));
+
+        assertThat(testModel.getNeighbors("shoes")).isEqualTo(ImmutableList.of("socks", "laces", "insoles"));
+        assertThat(testModel.getNeighbors("laces")).isEqualTo(ImmutableList.of("shoes", "socks"));
+        assertThat(testModel.getNeighbors("unknown")).isEqualTo(ImmutableList.of());
+    }
+
+    @Test
+    public void testRecordOrder_keepsFrequentNeighborsWhenPruning() throws Exception {
+        CoPurchaseModel testModel = new CoPurchaseModel(CoPurchaseModel.TOP_NEIGHBORS);
+
+        // a neighbor in more than one in TOP_NEIGHBORS of the orders is never evicted
+        for (int i = 0; i < 200; i++) {
+            testModel.recordOrder(Arrays.asList("shoes", "socks"));
+        }
+        for (int i = 0; i < 1000; i++) {
+            testModel.recordOrder(Arrays.asList("shoes", "item" + i));
+        }
+
+        assertThat(testModel.getNeighbors("shoes").size()).isEqualTo(CoPurchaseModel.TOP_NEIGHBORS);
+        assertThat(testModel.getNeighbors("shoes").get(0)).isEqualTo("socks");
+    }
+
+    @Test
+    public void testLoad_countsOrdersPlacedWhileLoadingOnce() throws Exception {
+        CoPurchaseModel testModel = new CoPurchaseModel(100, false);
+
+        testModel.recordOrder("testOrderId1", Arrays.asList("shoes", "socks"));
+        testModel.recordOrder("testOrderId2", Arrays.asList("shoes", "laces"));
+        assertThat(testModel.getNeighbors("shoes")).isEqualTo(ImmutableList.of());
+
+        // the load already includes the first order, but not the second
+        testModel.load(ImmutableMap.of(
+            "testOrderId0", Arrays.asList("shoes", "laces"),
+            "testOrderId1", Arrays.asList("shoes", "socks")));
+        testModel.recordOrder("testOrderId3", Arrays.asList("shoes", "socks", "insoles"));
+
+        assertThat(testModel.getNeighbors("shoes")).isEqualTo(ImmutableList.of("laces", "socks", "insoles"));
+        assertThat(testModel.getNeighbors("socks")).isEqualTo(ImmutableList.of("shoes", "insoles"));
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Test;
+import static com.google.common.truth.Truth.assertThat;
+import com.google.businessmessages.cart.BotConstants;
+import com.google.businessmessages.cart.ColumnarCatalog;
+import com.google.businessmessages.cart.Filter;
+import com.google.businessmessages.cart.InventoryItem;
+import com.google.businessmessages.cart.ItemProperty;
+import com.google.businessmessages.cart.MockInventory;
+
+public class ColumnarCatalogTest {
+
+    @Test
+    public void testGetItem_decodesColumns() {
+        Map<String, List<String>> testProperties = new LinkedHashMap<>();
+        testProperties.put("size", Arrays.asList("9", "10"));
+        testProperties.put("color", Arrays.asList("blue"));
+        ColumnarCatalog testCatalog = new ColumnarCatalog.Builder()
+            .add("Test Item", "testUrl", 8999L, testProperties)
+            .add("Other Item", null, 10, new LinkedHashMap<>())
+            .build();
+        InventoryItem expectedItem = new InventoryItem("Test Item", "testUrl", 89.99, testProperties);
+
+        Optional<InventoryItem> resultItem = testCatalog.getItem(expectedItem.getId());
+
+        assertThat(resultItem.isPresent()).isTrue();
+        assertThat(resultItem.get().getTitle()).isEqualTo("Test Item");
+        assertThat(resultItem.get().getMediaUrl()).isEqualTo("testUrl");
+        assertThat(resultItem.get().getPrice()).isEqualTo(89.99);
+        assertThat(resultItem.get().getProperties()).hasSize(2);
+        for (ItemProperty resultProperty : resultItem.get().getProperties()) {
+            assertThat(resultProperty.getOptions())
+                .containsExactlyElementsIn(testProperties.get(resultProperty.getName()));
+        }
+        assertThat(testCatalog.getInventory().get(1).getMediaUrl()).isNull();
+        assertThat(testCatalog.getInventory().get(1).getProperties()).isEmpty();
+        assertThat(testCatalog.getItem("missingItemId").isPresent()).isFalse();
+    }
+
+    @Test
+    public void testGetMatchingItems_matchesScan() {
+        MockInventory testMockInventory = new MockInventory(BotConstants.INVENTORY_IMAGES,
+            BotConstants.INVENTORY_PROPERTIES);
+        ColumnarCatalog.Builder testBuilder = new ColumnarCatalog.Builder();
+        for (InventoryItem testItem : testMockInventory.getInventory()) {
+            Map<String, List<String>> testProperties = new LinkedHashMap<>();
+            for (ItemProperty testProperty : testItem.getProperties()) {
+                testProperties.put(testProperty.getName(), testProperty.getOptions());
+            }
+            testBuilder.add(testItem.getTitle(), testItem.getMediaUrl(), testItem.getPriceCents(),
+                testProperties);
+        }
+        ColumnarCatalog testCatalog = testBuilder.build();
+        List<List<Filter>> testFilterSets = Arrays.asList(
+            Arrays.asList(new Filter("size", "9"), new Filter("brand", "all"), new Filter("color", "all")),
+            Arrays.asList(new Filter("size", "7"), new Filter("brand", "asics"), new Filter("color", "blue")),
+            Arrays.asList(new Filter("material", "leather")));
+
+        for (List<Filter> testFilters : testFilterSets) {
+            assertThat(testCatalog.getMatchingOrdinals(testFilters))
+                .isEqualTo(testMockInventory.getMatchingOrdinals(testFilters));
+            assertThat(testCatalog.getFacetCounts(testFilters, "color", BotConstants.COLOR_LIST))
+                .containsExactlyEntriesIn(
+                    testMockInventory.getFacetCounts(testFilters, "color", BotConstants.COLOR_LIST)).inOrder();
+        }
+    }
+}
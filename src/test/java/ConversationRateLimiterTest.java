@@ -0,0 +1,146 @@
+import static com.google.common.truth.Truth.assertThat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import com.google.businessmessages.cart.ConversationRateLimiter;
+import com.google.businessmessages.cart.ConversationRateLimiter.Decision;
+import com.google.businessmessages.cart.ConversationRateLimiter.Policy;
+import org.junit.Test;
+
+public class ConversationRateLimiterTest {
+
+    /**
+     * A clock that only moves when a caller sleeps or the test advances it.
+     */
+    private static class FakeClock implements ConversationRateLimiter.Clock {
+        private long nanos;
+        private final List<Long> sleeps = new ArrayList<>();
+        // runs while a caller is asleep, i.e. to have another message arrive meanwhile
+        private Runnable duringSleep;
+
+        @Override
+        public long nanoTime() {
+            return nanos;
+        }
+
+        @Override
+        public void sleepNanos(long sleepNanos) {
+            sleeps.add(sleepNanos);
+            Runnable during = duringSleep;
+            duringSleep = null;
+            if (during != null) {
+                during.run();
+            }
+            nanos += sleepNanos;
+        }
+
+        void advanceMillis(long millis) {
+            nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+
+    private final FakeClock testClock = new FakeClock();
+
+    @Test
+    public void testAcquire_dropsWithNoticeOnceBurstIsUsed() throws Exception {
+        ConversationRateLimiter testLimiter = new ConversationRateLimiter(
+            Policy.DROP_WITH_NOTICE, 2, 0.001, 0, 60000, testClock);
+
+        assertThat(testLimiter.acquire("testConversationId")).isEqualTo(Decision.PROCEED);
+        assertThat(testLimiter.acquire("testConversationId")).isEqualTo(Decision.PROCEED);
+        assertThat(testLimiter.acquire("testConversationId")).isEqualTo(Decision.DROP_WITH_NOTICE);
+        assertThat(testLimiter.acquire("testConversationId")).isEqualTo(Decision.DROP);
+        assertThat(testLimiter.acquire("otherConversationId")).isEqualTo(Decision.PROCEED);
+        assertThat(testLimiter.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testAcquire_queuesWithinMaxDelay() throws Exception {
+        ConversationRateLimiter testLimiter = new ConversationRateLimiter(
+            Policy.QUEUE, 1, 100, 50, 60000, testClock);
+
+        assertThat(testLimiter.acquire("testConversationId")).isEqualTo(Decision.PROCEED);
+        assertThat(testLimiter.acquire("testConversationId")).isEqualTo(Decision.PROCEED);
+        assertThat(testClock.sleeps).isEqualTo(Arrays.asList(0L, TimeUnit.MILLISECONDS.toNanos(10)));
+    }
+
+    @Test
+    public void testAcquire_dropsWhenQueueWaitIsTooLong() throws Exception {
+        ConversationRateLimiter testLimiter = new ConversationRateLimiter(
+            Policy.QUEUE, 1, 0.001, 50, 60000, testClock);
+
+        assertThat(testLimiter.acquire("testConversationId")).isEqualTo(Decision.PROCEED);
+        assertThat(testLimiter.acquire("testConversationId")).isEqualTo(Decision.DROP);
+    }
+
+    @Test
+    public void testAcquire_coalesceKeepsQueuedMessageWhenNewerOneIsDropped() throws Exception {
+        ConversationRateLimiter testLimiter = new ConversationRateLimiter(
+            Policy.COALESCE, 1, 1, 1500, 60000, testClock);
+        List<Decision> newerDecisions = new ArrayList<>();
+
+        assertThat(testLimiter.acquire("testConversationId")).isEqualTo(Decision.PROCEED);
+        // the second message waits a second for its token; a third arriving meanwhile would wait two
+        testClock.duringSleep = () -> {
+            try {
+                newerDecisions.add(testLimiter.acquire("testConversationId"));
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        };
+
+        assertThat(testLimiter.acquire("testConversationId")).isEqualTo(Decision.PROCEED);
+        assertThat(newerDecisions).isEqualTo(Arrays.asList(Decision.DROP));
+    }
+
+    @Test
+    public void testAcquire_coalesceHandlesOnlyLatestQueuedMessage() throws Exception {
+        ConversationRateLimiter testLimiter = new ConversationRateLimiter(
+            Policy.COALESCE, 1, 1, 3000, 60000, testClock);
+        List<Decision> newerDecisions = new ArrayList<>();
+
+        assertThat(testLimiter.acquire("testConversationId")).isEqualTo(Decision.PROCEED);
+        testClock.duringSleep = () -> {
+            try {
+                newerDecisions.add(testLimiter.acquire("testConversationId"));
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        };
+
+        assertThat(testLimiter.acquire("testConversationId")).isEqualTo(Decision.DROP);
+        assertThat(newerDecisions).isEqualTo(Arrays.asList(Decision.PROCEED));
+    }
+
+    @Test
+    public void testAcquire_evictsIdleBuckets() throws Exception {
+        ConversationRateLimiter testLimiter = new ConversationRateLimiter(
+            Policy.QUEUE, 1, 1000, 50, 1, testClock);
+
+        testLimiter.acquire("testConversationId");
+        testClock.advanceMillis(10);
+        testLimiter.acquire("otherConversationId");
+
+        assertThat(testLimiter.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testParsePolicy_fallsBackToDefault() throws Exception {
+        assertThat(ConversationRateLimiter.parsePolicy("drop_with_notice")).isEqualTo(Policy.DROP_WITH_NOTICE);
+        assertThat(ConversationRateLimiter.parsePolicy(" Coalesce ")).isEqualTo(Policy.COALESCE);
+        assertThat(ConversationRateLimiter.parsePolicy("drop-with-notice")).isEqualTo(Policy.QUEUE);
+        assertThat(ConversationRateLimiter.parsePolicy(null)).isEqualTo(Policy.QUEUE);
+    }
+
+    @Test
+    public void testParseRate_fallsBackToDefault() throws Exception {
+        double defaultRate = ConversationRateLimiter.parseRate(null);
+
+        assertThat(ConversationRateLimiter.parseRate(" 0.5 ")).isEqualTo(0.5);
+        assertThat(ConversationRateLimiter.parseRate("fast")).isEqualTo(defaultRate);
+        assertThat(ConversationRateLimiter.parseRate("0")).isEqualTo(defaultRate);
+        assertThat(ConversationRateLimiter.parseRate("-1")).isEqualTo(defaultRate);
+        assertThat(ConversationRateLimiter.parseRate("NaN")).isEqualTo(defaultRate);
+    }
+}
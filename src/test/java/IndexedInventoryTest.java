@@ -0,0 +1,106 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Test;
+import static com.google.common.truth.Truth.assertThat;
+import com.google.businessmessages.cart.BotConstants;
+import com.google.businessmessages.cart.Filter;
+import com.google.businessmessages.cart.IndexedInventory;
+import com.google.businessmessages.cart.InventoryItem;
+import com.google.businessmessages.cart.MockInventory;
+import com.google.common.collect.ImmutableMap;
+
+public class IndexedInventoryTest {
+
+    @Test
+    public void testGetItem() {
+        List<InventoryItem> testItems = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            testItems.add(new InventoryItem("testItem" + i, "testUrl" + i));
+        }
+        IndexedInventory testInventory = new IndexedInventory(testItems);
+
+        assertThat(testInventory.getInventory()).containsExactlyElementsIn(testItems).inOrder();
+        for (InventoryItem testItem : testItems) {
+            Optional<InventoryItem> resultItem = testInventory.getItem(testItem.getId());
+            assertThat(resultItem.isPresent()).isTrue();
+            assertThat(resultItem.get()).isSameAs(testItem);
+        }
+        assertThat(testInventory.getItem("missingItemId").isPresent()).isFalse();
+        assertThat(testInventory.getItem(null).isPresent()).isFalse();
+    }
+
+    @Test
+    public void testGetItemByTitle() {
+        List<InventoryItem> testItems = new ArrayList<>();
+        testItems.add(new InventoryItem("Test Item", "testUrl1"));
+        testItems.add(new InventoryItem("Other Item", "testUrl2"));
+        IndexedInventory testInventory = new IndexedInventory(testItems);
+
+        Optional<InventoryItem> resultItem = testInventory.getItemByTitle("  test item ");
+
+        assertThat(resultItem.isPresent()).isTrue();
+        assertThat(resultItem.get().getMediaUrl()).isEqualTo("testUrl1");
+        assertThat(testInventory.getItemByTitle("missing item").isPresent()).isFalse();
+    }
+
+    @Test
+    public void testGetItem_emptyInventory() {
+        IndexedInventory testInventory = new IndexedInventory(new ArrayList<>());
+
+        assertThat(testInventory.getInventory()).isEmpty();
+        assertThat(testInventory.getItem("testItemId").isPresent()).isFalse();
+    }
+
+    @Test
+    public void testGetMatchingItems_matchesScan() {
+        MockInventory testMockInventory = new MockInventory(BotConstants.INVENTORY_IMAGES,
+            BotConstants.INVENTORY_PROPERTIES);
+        IndexedInventory testInventory = new IndexedInventory(testMockInventory.getInventory());
+        List<List<Filter>> testFilterSets = Arrays.asList(
+            Arrays.asList(new Filter("size", "9"), new Filter("brand", "all"), new Filter("color", "all")),
+            Arrays.asList(new Filter("size", "9"), new Filter("brand", "nike"), new Filter("color", "all")),
+            Arrays.asList(new Filter("size", "7"), new Filter("brand", "asics"), new Filter("color", "blue")),
+            Arrays.asList(new Filter("size", "42"), new Filter("brand", "all"), new Filter("color", "all")),
+            Arrays.asList(new Filter("material", "leather")));
+
+        for (List<Filter> testFilters : testFilterSets) {
+            assertThat(testInventory.getMatchingItems(testFilters))
+                .containsExactlyElementsIn(testMockInventory.getMatchingItems(testFilters)).inOrder();
+        }
+    }
+
+    @Test
+    public void testGetFacetCounts_matchesScan() {
+        MockInventory testMockInventory = new MockInventory(BotConstants.INVENTORY_IMAGES,
+            BotConstants.INVENTORY_PROPERTIES);
+        IndexedInventory testInventory = new IndexedInventory(testMockInventory.getInventory());
+        List<Filter> testFilters = Arrays.asList(new Filter("size", "9"), new Filter("brand", "nike"));
+
+        Map<String, Integer> resultCounts = testInventory.getFacetCounts(testFilters, "color", BotConstants.COLOR_LIST);
+
+        assertThat(resultCounts).containsExactlyEntriesIn(
+            testMockInventory.getFacetCounts(testFilters, "color", BotConstants.COLOR_LIST)).inOrder();
+        assertThat(resultCounts.get("All")).isEqualTo(
+            testInventory.getMatchingItems(testFilters).size());
+    }
+
+    @Test
+    public void testGetMatchingItems_mixesSparseAndDenseOptions() {
+        List<InventoryItem> testItems = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            testItems.add(new InventoryItem("testItem" + i, "testUrl" + i, ImmutableMap.of(
+                "brand", Arrays.asList("nike"),
+                "size", Arrays.asList(i % 10 == 0 ? "9" : "7"),
+                "color", Arrays.asList(i == 7 || i == 40 ? "pink" : "blue"))));
+        }
+        IndexedInventory testInventory = new IndexedInventory(testItems);
+
+        assertThat(testInventory.getMatchingItems(Arrays.asList(new Filter("brand", "nike"), new Filter("color", "pink"))))
+            .containsExactly(testItems.get(7), testItems.get(40)).inOrder();
+        assertThat(testInventory.getFacetCounts(Arrays.asList(new Filter("size", "9")), "color",
+            Arrays.asList("All", "Pink", "Blue"))).containsExactly("All", 10, "Pink", 1, "Blue", 9).inOrder();
+    }
+}
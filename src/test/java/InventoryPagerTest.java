@@ -0,0 +1,70 @@
+import static com.google.common.truth.Truth.assertThat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import com.google.businessmessages.cart.Filter;
+import com.google.businessmessages.cart.IndexedInventory;
+import com.google.businessmessages.cart.InventoryItem;
+import com.google.businessmessages.cart.InventoryPager;
+import com.google.businessmessages.cart.InventorySnapshot;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+public class InventoryPagerTest {
+
+    private InventorySnapshot createTestSnapshot(long version) {
+        List<InventoryItem> testItems = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            testItems.add(new InventoryItem("testItem" + i, "testUrl" + i,
+                ImmutableMap.of("color", Arrays.asList(i % 6 == 0 ? "blue" : "pink"))));
+        }
+        return new InventorySnapshot(new IndexedInventory(testItems), version);
+    }
+
+    @Test
+    public void testGetPage_followsCursorToLastPage() {
+        InventorySnapshot testSnapshot = createTestSnapshot(1);
+        List<Filter> testFilters = Arrays.asList(new Filter("color", "pink"));
+
+        InventoryPager.Page firstPage = InventoryPager.getPage(testSnapshot, "testConversationId", testFilters, null, null);
+        InventoryPager.Page secondPage = InventoryPager.getPage(testSnapshot, "testConversationId", testFilters, null,
+            firstPage.getNextCursor());
+        InventoryPager.Page lastPage = InventoryPager.getPage(testSnapshot, "testConversationId", testFilters, null,
+            secondPage.getNextCursor());
+
+        assertThat(firstPage.getTotalCount()).isEqualTo(25);
+        assertThat(firstPage.getItems()).hasSize(InventoryPager.PAGE_SIZE);
+        assertThat(firstPage.getNextCursor()).matches("[0-9a-f]+");
+        assertThat(secondPage.getItems()).hasSize(InventoryPager.PAGE_SIZE);
+        assertThat(secondPage.getItems().get(0)).isNotSameAs(firstPage.getItems().get(0));
+        assertThat(lastPage.getItems()).hasSize(5);
+        assertThat(lastPage.getNextCursor()).isNull();
+    }
+
+    @Test
+    public void testGetPage_restartsWhenFiltersChange() {
+        InventorySnapshot testSnapshot = createTestSnapshot(1);
+        InventoryPager.Page firstPage = InventoryPager.getPage(testSnapshot, "testConversationId",
+            Arrays.asList(new Filter("color", "pink")), null, null);
+
+        InventoryPager.Page resultPage = InventoryPager.getPage(testSnapshot, "testConversationId",
+            Arrays.asList(new Filter("color", "blue")), null, firstPage.getNextCursor());
+
+        assertThat(resultPage.getTotalCount()).isEqualTo(5);
+        assertThat(resultPage.getItems()).hasSize(5);
+        assertThat(resultPage.getNextCursor()).isNull();
+    }
+
+    @Test
+    public void testGetPage_restartsWhenSnapshotChanges() {
+        InventorySnapshot testSnapshot = createTestSnapshot(1);
+        List<Filter> testFilters = Arrays.asList(new Filter("color", "pink"));
+        InventoryPager.Page firstPage = InventoryPager.getPage(testSnapshot, "testConversationId", testFilters, null, null);
+
+        InventoryPager.Page resultPage = InventoryPager.getPage(createTestSnapshot(2), "testConversationId",
+            testFilters, null, firstPage.getNextCursor());
+
+        assertThat(resultPage.getItems()).hasSize(InventoryPager.PAGE_SIZE);
+        assertThat(resultPage.getItems().get(0).getTitle()).isEqualTo(firstPage.getItems().get(0).getTitle());
+    }
+}
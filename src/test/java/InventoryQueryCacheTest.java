@@ -0,0 +1,46 @@
+import static com.google.common.truth.Truth.assertThat;
+import com.google.businessmessages.cart.BotConstants;
+import com.google.businessmessages.cart.CardCache;
+import com.google.businessmessages.cart.Filter;
+import com.google.businessmessages.cart.IndexedInventory;
+import com.google.businessmessages.cart.InventoryQueryCache;
+import com.google.businessmessages.cart.MockInventory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class InventoryQueryCacheTest {
+
+    private static IndexedInventory getTestInventory() {
+        return new IndexedInventory(new MockInventory(BotConstants.INVENTORY_IMAGES,
+            BotConstants.INVENTORY_PROPERTIES, BotConstants.INVENTORY_PRICES).getInventory());
+    }
+
+    @Test
+    public void testGet_matchesUncachedQuery() throws Exception {
+        IndexedInventory testInventory = getTestInventory();
+        InventoryQueryCache testCache = new InventoryQueryCache(testInventory, new CardCache());
+        List<Filter> testFilters = Arrays.asList(new Filter("brand", "asics"), new Filter("color", "pink"));
+
+        InventoryQueryCache.Result result = testCache.get(testFilters);
+
+        assertThat(result.getOrdinals()).isEqualTo(testInventory.getMatchingOrdinals(testFilters));
+        assertThat(result.getFirstPageCards().size()).isEqualTo(result.getOrdinals().length);
+        assertThat(testCache.get(Collections.emptyList()).getOrdinals().length)
+            .isEqualTo(testInventory.getInventory().size());
+        assertThat(testCache.size()).isEqualTo(
+            (BotConstants.SIZE_LIST.size() + 1) * BotConstants.BRAND_LIST.size() * BotConstants.COLOR_LIST.size());
+    }
+
+    @Test
+    public void testGet_skipsPriceAndSortQueries() throws Exception {
+        InventoryQueryCache testCache = new InventoryQueryCache(getTestInventory(), new CardCache());
+
+        assertThat(testCache.get(Arrays.asList(new Filter("brand", "nike"), new Filter("price", "all"),
+            new Filter("sort", "featured")))).isNotNull();
+        assertThat(testCache.get(Arrays.asList(new Filter("brand", "nike"), new Filter("price", "0-75")))).isNull();
+        assertThat(testCache.get(Arrays.asList(new Filter("sort", "lowest price")))).isNull();
+        assertThat(testCache.get(Arrays.asList(new Filter("brand", "unknownBrand")))).isNull();
+    }
+}
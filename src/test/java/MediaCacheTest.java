@@ -0,0 +1,41 @@
+import static com.google.common.truth.Truth.assertThat;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import com.google.businessmessages.cart.MediaCache;
+import org.junit.Test;
+
+public class MediaCacheTest {
+
+    @Test
+    public void testGet_returnsStoredContent() throws Exception {
+        MediaCache testCache = new MediaCache(Files.createTempDirectory("media-cache-test"), 100);
+
+        testCache.put("testKey", "testThumbnail".getBytes(StandardCharsets.UTF_8));
+        ByteBuffer content = testCache.get("testKey");
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo("testThumbnail");
+        assertThat(testCache.get("missingKey")).isNull();
+        assertThat(testCache.getTotalBytes()).isEqualTo(13L);
+    }
+
+    @Test
+    public void testPut_evictsLeastRecentlyUsed() throws Exception {
+        Path testDirectory = Files.createTempDirectory("media-cache-test");
+        MediaCache testCache = new MediaCache(testDirectory, 25);
+
+        testCache.put("first", new byte[10]);
+        testCache.put("second", new byte[10]);
+        testCache.get("first");
+        testCache.put("third", new byte[10]);
+
+        assertThat(testCache.contains("first")).isTrue();
+        assertThat(testCache.contains("second")).isFalse();
+        assertThat(testCache.contains("third")).isTrue();
+        assertThat(Files.exists(testDirectory.resolve("second"))).isFalse();
+        assertThat(testCache.getTotalBytes()).isEqualTo(20L);
+    }
+}
@@ -0,0 +1,48 @@
+import static com.google.common.truth.Truth.assertThat;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import com.google.businessmessages.cart.MediaRegistry;
+import org.junit.Test;
+
+public class MediaRegistryTest {
+
+    private final Map<String, String> testContent = new HashMap<>();
+    private final MediaRegistry testRegistry = new MediaRegistry(url -> {
+        String content = testContent.get(url);
+        if (content == null) {
+            throw new FileNotFoundException(url);
+        }
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    });
+
+    @Test
+    public void testGetVersionedUrl_unknownUntilHashed() throws Exception {
+        testContent.put("https://test/shoe.png", "testImage");
+
+        assertThat(testRegistry.getVersionedUrl("https://test/shoe.png")).isNull();
+        testRegistry.refresh(false);
+
+        assertThat(testRegistry.getVersionedUrl("https://test/shoe.png")).matches("https://test/shoe\\.png\\?v=[0-9a-f]{12}");
+    }
+
+    @Test
+    public void testRefresh_changesVersionOnlyWhenContentChanges() throws Exception {
+        testContent.put("https://test/map?size=250x250", "testMap");
+        testRegistry.register("https://test/map?size=250x250");
+        testRegistry.register("https://test/missing.png");
+        testRegistry.refresh(true);
+        String firstUrl = testRegistry.getVersionedUrl("https://test/map?size=250x250");
+
+        testRegistry.refresh(true);
+        assertThat(testRegistry.getVersionedUrl("https://test/map?size=250x250")).isEqualTo(firstUrl);
+
+        testContent.put("https://test/map?size=250x250", "testChangedMap");
+        testRegistry.refresh(true);
+        assertThat(testRegistry.getVersionedUrl("https://test/map?size=250x250")).isNotEqualTo(firstUrl);
+        assertThat(testRegistry.getVersionedUrl("https://test/map?size=250x250")).matches(".*&v=[0-9a-f]{12}");
+        assertThat(testRegistry.getVersionedUrl("https://test/missing.png")).isNull();
+    }
+}
@@ -0,0 +1,71 @@
+import static com.google.common.truth.Truth.assertThat;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.businessmessages.cart.Cart;
+import com.google.businessmessages.cart.CartManager;
+import com.google.businessmessages.cart.FilterManager;
+import com.google.businessmessages.cart.MenuState;
+import com.google.businessmessages.cart.OrderManager;
+import com.google.businessmessages.cart.PickupManager;
+import com.google.businessmessages.cart.TurnContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MenuStateManagerTest {
+
+    private final LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+    @Before
+    public void setUp() {
+        helper.setUp();
+    }
+
+    @Test
+    public void testGetMenuState_isBuiltFromUserData() {
+        String testConversationId = "testMenuStateBuiltConversationId";
+        Cart testCart = CartManager.getOrCreateCart(testConversationId);
+        CartManager.addItem(testConversationId, testCart.getId(), "testItemId", "testItemTitle");
+        OrderManager.addOrder(testConversationId, "testOrderId");
+
+        MenuState testMenuState = new TurnContext(testConversationId).getMenuState();
+
+        assertThat(testMenuState.getCartId()).isEqualTo(testCart.getId());
+        assertThat(testMenuState.isCartNonEmpty()).isTrue();
+        assertThat(testMenuState.hasFilters()).isFalse();
+        assertThat(testMenuState.getFirstUnscheduledOrderId()).isEqualTo("testOrderId");
+        assertThat(testMenuState.hasScheduledPickups()).isFalse();
+        assertThat(testMenuState.getFirstCheckinReadyOrderId()).isNull();
+    }
+
+    @Test
+    public void testMenuState_isUpdatedOnWrite() {
+        String testConversationId = "testMenuStateUpdatedConversationId";
+        Cart testCart = CartManager.getOrCreateCart(testConversationId);
+        new TurnContext(testConversationId).getMenuState();
+
+        CartManager.addItem(testConversationId, testCart.getId(), "testItemId", "testItemTitle");
+        FilterManager.setFilter(testConversationId, "color", "blue");
+        OrderManager.addOrder(testConversationId, "testOrderId1");
+        OrderManager.addOrder(testConversationId, "testOrderId2");
+        PickupManager.addPickup(testConversationId, "testOrderId1");
+
+        MenuState testMenuState = new TurnContext(testConversationId).getMenuState();
+        assertThat(testMenuState.isCartNonEmpty()).isTrue();
+        assertThat(testMenuState.hasFilters()).isTrue();
+        assertThat(testMenuState.getFirstUnscheduledOrderId()).isEqualTo("testOrderId2");
+
+        CartManager.emptyCart(testConversationId, testCart.getId());
+        PickupManager.addPickup(testConversationId, "testOrderId2");
+        PickupManager.cancelPickup(testConversationId, "testOrderId1");
+
+        testMenuState = new TurnContext(testConversationId).getMenuState();
+        assertThat(testMenuState.isCartNonEmpty()).isFalse();
+        assertThat(testMenuState.getFirstUnscheduledOrderId()).isEqualTo("testOrderId1");
+    }
+
+    @After
+    public void cleanUp() {
+        helper.tearDown();
+    }
+}
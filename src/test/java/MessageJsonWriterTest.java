@@ -0,0 +1,104 @@
+import static com.google.common.truth.Truth.assertThat;
+import java.nio.charset.StandardCharsets;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesCardContent;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesCarouselCard;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesContentInfo;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesDialAction;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesMedia;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesMessage;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesOpenUrlAction;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesRepresentative;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesRichCard;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesStandaloneCard;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesSuggestedAction;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesSuggestedReply;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesSuggestion;
+import com.google.businessmessages.cart.MessageJsonWriter;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+public class MessageJsonWriterTest {
+
+    private final JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+    private final BusinessMessagesRepresentative testRepresentative = new BusinessMessagesRepresentative()
+        .setRepresentativeType("BOT")
+        .setDisplayName("testDisplayName");
+    private final ImmutableList<BusinessMessagesSuggestion> testSuggestions = ImmutableList.of(
+        new BusinessMessagesSuggestion()
+            .setReply(new BusinessMessagesSuggestedReply().setText("testReply").setPostbackData("testPostback")),
+        new BusinessMessagesSuggestion()
+            .setAction(new BusinessMessagesSuggestedAction()
+                .setText("testCall").setPostbackData("testCallPostback")
+                .setDialAction(new BusinessMessagesDialAction().setPhoneNumber("+12223334444"))),
+        new BusinessMessagesSuggestion()
+            .setAction(new BusinessMessagesSuggestedAction()
+                .setText("testOpen").setPostbackData("testOpenPostback")
+                .setOpenUrlAction(new BusinessMessagesOpenUrlAction().setUrl("https://test/?a=1&b=2"))));
+
+    @Test
+    public void testToJson_textMessageMatchesLibrary() throws Exception {
+        String testText = "test \"quoted\" \\ text\nwith\ttabs, \u0001 control, caf\u00e9 and \uD83D\uDC5F";
+        BusinessMessagesMessage testMessage = new BusinessMessagesMessage()
+            .setMessageId("testMessageId")
+            .setText(testText)
+            .setFallback(testText)
+            .setRepresentative(testRepresentative)
+            .setSuggestions(testSuggestions);
+
+        assertRoundTrips(testMessage);
+    }
+
+    @Test
+    public void testToJson_richCardMessagesMatchLibrary() throws Exception {
+        BusinessMessagesCardContent testCard = new BusinessMessagesCardContent()
+            .setTitle("testTitle")
+            .setDescription("testDescription")
+            .setSuggestions(testSuggestions)
+            .setMedia(new BusinessMessagesMedia()
+                .setHeight("MEDIUM")
+                .setContentInfo(new BusinessMessagesContentInfo()
+                    .setFileUrl("https://test/shoe.png?v=1f3a9c02b7de")
+                    .setForceRefresh(false)));
+        BusinessMessagesCardContent testEmptyCard = new BusinessMessagesCardContent()
+            .setTitle("testEmptyTitle")
+            .setSuggestions(ImmutableList.of());
+
+        assertRoundTrips(new BusinessMessagesMessage()
+            .setMessageId("testStandaloneId")
+            .setRepresentative(testRepresentative)
+            .setFallback("testFallback")
+            .setRichCard(new BusinessMessagesRichCard()
+                .setStandaloneCard(new BusinessMessagesStandaloneCard().setCardContent(testCard))));
+        assertRoundTrips(new BusinessMessagesMessage()
+            .setMessageId("testCarouselId")
+            .setRepresentative(testRepresentative)
+            .setRichCard(new BusinessMessagesRichCard()
+                .setCarouselCard(new BusinessMessagesCarouselCard()
+                    .setCardWidth("MEDIUM")
+                    .setCardContents(ImmutableList.of(testCard, testEmptyCard))))
+            .setSuggestions(testSuggestions));
+    }
+
+    @Test
+    public void testRender_nestedRendersDoNotShareBuffer() throws Exception {
+        byte[] outer = MessageJsonWriter.render(writer -> {
+            writer.writeRaw('[');
+            writer.writeRaw(MessageJsonWriter.toJson(testSuggestions));
+            writer.writeRaw(']');
+        });
+
+        assertThat(new String(outer, StandardCharsets.UTF_8))
+            .isEqualTo("[" + jsonFactory.toString(testSuggestions) + "]");
+    }
+
+    private void assertRoundTrips(BusinessMessagesMessage message) throws Exception {
+        String expected = new String(jsonFactory.toByteArray(message), StandardCharsets.UTF_8);
+        String written = new String(MessageJsonWriter.toJson(message), StandardCharsets.UTF_8);
+        BusinessMessagesMessage parsed = jsonFactory.fromString(written, BusinessMessagesMessage.class);
+
+        assertThat(written).isEqualTo(expected);
+        assertThat(jsonFactory.toString(parsed)).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,44 @@
+import static com.google.common.truth.Truth.assertThat;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import com.google.businessmessages.cart.BotConstants;
+import com.google.businessmessages.cart.Pickup;
+import com.google.businessmessages.cart.PickupSlots;
+import org.junit.Test;
+
+public class PickupSlotsTest {
+
+    private final ZoneId testZone = ZoneId.of("America/New_York");
+
+    @Test
+    public void testGetSlotStart_usesStoreZone() throws Exception {
+        Date start = PickupSlots.getSlotStart(testZone, "9/3-12-14");
+
+        ZonedDateTime expected = ZonedDateTime.of(Year.now(testZone).getValue(), 9, 3, 12, 0, 0, 0, testZone);
+        assertThat(start.getTime()).isEqualTo(expected.toInstant().toEpochMilli());
+    }
+
+    @Test
+    public void testGetSlotLabel_formatsInStoreZone() throws Exception {
+        Date start = PickupSlots.getSlotStart(testZone, "9/3-15-17");
+        Pickup offeredPickup = new Pickup("testOrderId", "G-Shoes New York", start, Pickup.Status.SCHEDULED, false);
+        Pickup otherPickup = new Pickup("testOrderId", "G-Shoes New York",
+            PickupSlots.getSlotStart(testZone, "10/1-9-11"), Pickup.Status.SCHEDULED, false);
+
+        assertThat(PickupSlots.getSlotLabel(offeredPickup)).matches("[A-Z][a-z]{2} 09/03 03:00 PM - 05:00 PM");
+        assertThat(PickupSlots.getSlotLabel(otherPickup)).matches("[A-Z][a-z]{2} 10/01 09:00 AM - 11:00 AM");
+        assertThat(PickupSlots.getCalendarTimes(offeredPickup)[0]).matches("\\d{4}0903T190000Z");
+    }
+
+    @Test
+    public void testIsActive_coversSlotDuration() throws Exception {
+        Date start = new Date(1000000L);
+
+        assertThat(PickupSlots.isActive(start, new Date(1000001L))).isTrue();
+        assertThat(PickupSlots.isActive(start, new Date(999999L))).isFalse();
+        assertThat(PickupSlots.isActive(start,
+            new Date(1000000L + BotConstants.TIME_SLOT_DURATION * 3600000L))).isFalse();
+    }
+}
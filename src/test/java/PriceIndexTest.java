@@ -0,0 +1,54 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Test;
+import static com.google.common.truth.Truth.assertThat;
+import com.google.businessmessages.cart.BotConstants;
+import com.google.businessmessages.cart.Filter;
+import com.google.businessmessages.cart.InventoryItem;
+import com.google.businessmessages.cart.PriceIndex;
+import com.google.common.collect.ImmutableList;
+
+public class PriceIndexTest {
+
+    private final PriceIndex testIndex = new PriceIndex(ImmutableList.of(
+        new InventoryItem("testItem0", "testUrl0", 9999L, Collections.emptyMap()),
+        new InventoryItem("testItem1", "testUrl1", 4999L, Collections.emptyMap()),
+        new InventoryItem("testItem2", "testUrl2", 12500L, Collections.emptyMap()),
+        new InventoryItem("testItem3", "testUrl3", 4999L, Collections.emptyMap())));
+
+    @Test
+    public void testFilter_keepsItemsInRange() {
+        int[] testOrdinals = {0, 1, 2, 3};
+
+        assertThat(testIndex.filter(testOrdinals, new Filter(BotConstants.PRICE_FILTER_NAME, "0-75")))
+            .asList().containsExactly(1, 3).inOrder();
+        assertThat(testIndex.filter(testOrdinals, new Filter(BotConstants.PRICE_FILTER_NAME, "125+")))
+            .asList().containsExactly(2);
+        assertThat(testIndex.filter(testOrdinals, new Filter(BotConstants.PRICE_FILTER_NAME, "all")))
+            .asList().containsExactly(0, 1, 2, 3).inOrder();
+        assertThat(testIndex.filter(testOrdinals, null)).asList().containsExactly(0, 1, 2, 3).inOrder();
+    }
+
+    @Test
+    public void testSort_keepsInventoryOrderForEqualPrices() {
+        int[] testOrdinals = {0, 1, 2, 3};
+
+        assertThat(testIndex.sort(testOrdinals, false)).asList().containsExactly(1, 3, 0, 2).inOrder();
+        assertThat(testIndex.sort(testOrdinals, true)).asList().containsExactly(2, 0, 1, 3).inOrder();
+        assertThat(testIndex.sort(new int[] {2, 3}, false)).asList().containsExactly(3, 2).inOrder();
+    }
+
+    @Test
+    public void testGetFacetCounts() {
+        Map<String, Integer> resultCounts = testIndex.getFacetCounts(new int[] {0, 1, 2, 3}, BotConstants.PRICE_LIST);
+
+        assertThat(resultCounts).containsExactly("All", 4, "0-75", 2, "75-100", 1, "100-125", 0, "125+", 1).inOrder();
+    }
+
+    @Test
+    public void testFormatPrice() {
+        assertThat(PriceIndex.formatPrice(8999L)).isEqualTo("$89.99");
+        assertThat(PriceIndex.formatPrice(500L)).isEqualTo("$5.00");
+    }
+}
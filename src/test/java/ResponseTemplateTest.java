@@ -0,0 +1,103 @@
+import static com.google.common.truth.Truth.assertThat;
+import java.nio.charset.StandardCharsets;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesMessage;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesRepresentative;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesSuggestedReply;
+import com.google.api.services.businessmessages.v1.model.BusinessMessagesSuggestion;
+import com.google.businessmessages.cart.BotConstants;
+import com.google.businessmessages.cart.ResponseTemplate;
+import com.google.businessmessages.cart.SuggestionSet;
+import com.google.businessmessages.cart.UIManager;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+public class ResponseTemplateTest {
+
+    private final BusinessMessagesRepresentative testRepresentative = new BusinessMessagesRepresentative()
+        .setRepresentativeType("BOT")
+        .setDisplayName("testDisplayName");
+
+    @Test
+    public void testRender_splicesMessageFields() throws Exception {
+        ResponseTemplate testTemplate = new ResponseTemplate("test \"quoted\" text", null);
+
+        byte[] rendered = testTemplate.render("testMessageId", testRepresentative, null,
+            ImmutableList.of(new BusinessMessagesSuggestion()
+                .setReply(new BusinessMessagesSuggestedReply()
+                    .setText("testText").setPostbackData("testPostback"))));
+        BusinessMessagesMessage message = parse(rendered);
+
+        assertThat(message.getMessageId()).isEqualTo("testMessageId");
+        assertThat(message.getRepresentative().getDisplayName()).isEqualTo("testDisplayName");
+        assertThat(message.getText()).isEqualTo("test \"quoted\" text");
+        assertThat(message.getFallback()).isEqualTo("test \"quoted\" text");
+        assertThat(message.getSuggestions()).hasSize(1);
+        assertThat(message.getSuggestions().get(0).getReply().getPostbackData()).isEqualTo("testPostback");
+    }
+
+    @Test
+    public void testRender_keepsStaticSuggestions() throws Exception {
+        ResponseTemplate testTemplate = new ResponseTemplate(null, ImmutableList.of(
+            new BusinessMessagesSuggestion()
+                .setReply(new BusinessMessagesSuggestedReply()
+                    .setText("testText").setPostbackData("testPostback"))));
+
+        BusinessMessagesMessage message = parse(
+            testTemplate.render("testMessageId", testRepresentative, "testDynamicText", null));
+
+        assertThat(message.getText()).isEqualTo("testDynamicText");
+        assertThat(message.getFallback()).isEqualTo("testDynamicText");
+        assertThat(message.getSuggestions()).hasSize(1);
+        assertThat(message.getSuggestions().get(0).getReply().getText()).isEqualTo("testText");
+    }
+
+    @Test
+    public void testRenderWithSuggestionSet_splicesSharedSuggestions() throws Exception {
+        SuggestionSet testSuggestions = UIManager.getFilterSuggestions("color",
+            ImmutableMap.of("Blue", 2, "Pink", 0));
+
+        BusinessMessagesMessage message = parse(ResponseTemplate.TEXT.renderWithSuggestionSet(
+            "testMessageId", testRepresentative, "testDynamicText", testSuggestions));
+
+        assertThat(UIManager.getFilterSuggestions("color", ImmutableMap.of("Blue", 2, "Pink", 0)))
+            .isSameAs(testSuggestions);
+        assertThat(message.getText()).isEqualTo("testDynamicText");
+        assertThat(message.getSuggestions()).hasSize(2);
+        assertThat(message.getSuggestions().get(1).getReply().getText()).isEqualTo("Blue (2)");
+    }
+
+    @Test
+    public void testRender_overridesReplaceStaticFields() throws Exception {
+        String rendered = new String(ResponseTemplate.CHECK_IN.render("testMessageId", testRepresentative,
+            "testDynamicText", ImmutableList.of(new BusinessMessagesSuggestion()
+                .setReply(new BusinessMessagesSuggestedReply()
+                    .setText("testText").setPostbackData("testPostback")))), StandardCharsets.UTF_8);
+        BusinessMessagesMessage message = parse(rendered.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(rendered.contains(BotConstants.CHECK_IN_RESPONSE_TEXT)).isFalse();
+        assertThat(countFields(rendered, "fallback")).isEqualTo(1);
+        assertThat(countFields(rendered, "suggestions")).isEqualTo(1);
+        assertThat(message.getText()).isEqualTo("testDynamicText");
+        assertThat(message.getSuggestions()).hasSize(1);
+    }
+
+    @Test
+    public void testRenderRichCard_skipsNullFallback() throws Exception {
+        BusinessMessagesMessage message = parse(ResponseTemplate.RICH_CARD.renderRichCard("testMessageId",
+            testRepresentative, "{}".getBytes(StandardCharsets.UTF_8), null, null));
+
+        assertThat(message.getMessageId()).isEqualTo("testMessageId");
+        assertThat(message.getFallback()).isNull();
+    }
+
+    private int countFields(String json, String fieldName) {
+        return json.split("\"" + fieldName + "\":", -1).length - 1;
+    }
+
+    private BusinessMessagesMessage parse(byte[] rendered) throws Exception {
+        return JacksonFactory.getDefaultInstance().fromString(
+            new String(rendered, StandardCharsets.UTF_8), BusinessMessagesMessage.class);
+    }
+}
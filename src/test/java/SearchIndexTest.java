@@ -0,0 +1,71 @@
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static com.google.common.truth.Truth.assertThat;
+import com.google.businessmessages.cart.InventoryItem;
+import com.google.businessmessages.cart.SearchIndex;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class SearchIndexTest {
+
+    private final ImmutableList<InventoryItem> testItems = ImmutableList.of(
+        new InventoryItem("Nike Blue Running Shoes", "testUrl1",
+            ImmutableMap.of("size", Arrays.asList("9", "10"), "color", Arrays.asList("blue"))),
+        new InventoryItem("Nike Pink Running Shoes", "testUrl2",
+            ImmutableMap.of("size", Arrays.asList("7"), "color", Arrays.asList("pink"))),
+        new InventoryItem("Asics Blue Trail Shoe", "testUrl3",
+            ImmutableMap.of("size", Arrays.asList("9"), "color", Arrays.asList("blue"))));
+
+    @Test
+    public void testSearch_ranksBestMatchFirst() {
+        SearchIndex testIndex = new SearchIndex(testItems);
+
+        List<InventoryItem> results = testIndex.search("blue nike size 9", 10);
+
+        assertThat(results).hasSize(3);
+        assertThat(results.get(0)).isSameAs(testItems.get(0));
+    }
+
+    @Test
+    public void testSearch_matchesPrefixesAndPlurals() {
+        SearchIndex testIndex = new SearchIndex(testItems);
+
+        assertThat(testIndex.search("asi", 10)).containsExactly(testItems.get(2));
+        assertThat(testIndex.search("trails", 10)).containsExactly(testItems.get(2));
+        assertThat(testIndex.search("shoe", 10)).hasSize(3);
+    }
+
+    @Test
+    public void testSearch_respectsLimit() {
+        SearchIndex testIndex = new SearchIndex(testItems);
+
+        assertThat(testIndex.search("shoes", 2)).hasSize(2);
+    }
+
+    @Test
+    public void testSearch_noMatch() {
+        SearchIndex testIndex = new SearchIndex(testItems);
+
+        assertThat(testIndex.search("hello there", 10)).isEmpty();
+        assertThat(testIndex.search("", 10)).isEmpty();
+    }
+
+    @Test
+    public void testRank_movesMostRelevantToFront() {
+        SearchIndex testIndex = new SearchIndex(testItems);
+        int[] testOrdinals = {0, 1, 2};
+
+        int[] resultOrdinals = testIndex.rank(testOrdinals, "asics trail", 1);
+
+        assertThat(resultOrdinals).asList().containsExactly(2, 0, 1).inOrder();
+        assertThat(testOrdinals).asList().containsExactly(0, 1, 2).inOrder();
+    }
+
+    @Test
+    public void testRank_keepsOrderWithoutMatches() {
+        SearchIndex testIndex = new SearchIndex(testItems);
+
+        assertThat(testIndex.rank(new int[] {1, 2}, "hello", 10)).asList().containsExactly(1, 2).inOrder();
+    }
+}
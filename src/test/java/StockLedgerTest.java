@@ -0,0 +1,204 @@
+import static com.google.common.truth.Truth.assertThat;
+import com.google.businessmessages.cart.StockLedger;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class StockLedgerTest {
+
+    /**
+     * A store shared by ledgers the way the datastore is shared by instances.
+     */
+    private static class TestStockStore implements StockLedger.StockStore {
+        private final Map<String, Long> stockLevels = new HashMap<>();
+        private boolean failing;
+
+        TestStockStore(long testItemStock) {
+            stockLevels.put("testItemId", testItemStock);
+        }
+
+        @Override
+        public synchronized Map<String, Long> getStockLevels() {
+            if (failing) {
+                throw new IllegalStateException("The store is down.");
+            }
+            return new HashMap<>(stockLevels);
+        }
+
+        @Override
+        public synchronized StockLedger.CommitResult commitStock(Map<String, Integer> itemCounts, long defaultStock) {
+            if (failing) {
+                return StockLedger.CommitResult.FAILED;
+            }
+            for (Map.Entry<String, Integer> itemCount : itemCounts.entrySet()) {
+                if (stockLevels.getOrDefault(itemCount.getKey(), defaultStock) < itemCount.getValue()) {
+                    return StockLedger.CommitResult.SOLD_OUT;
+                }
+            }
+            itemCounts.forEach((itemId, count) ->
+                stockLevels.put(itemId, stockLevels.getOrDefault(itemId, defaultStock) - count));
+            return StockLedger.CommitResult.COMMITTED;
+        }
+    }
+
+    @Test
+    public void testReserve_failsOnceStockIsUsed() throws Exception {
+        StockLedger testLedger = new StockLedger(100, 60000, new TestStockStore(2));
+
+        assertThat(testLedger.reserve("testCartId", "testItemId")).isTrue();
+        assertThat(testLedger.reserve("otherCartId", "testItemId")).isTrue();
+        assertThat(testLedger.reserve("testCartId", "testItemId")).isFalse();
+        assertThat(testLedger.getAvailable("testItemId")).isEqualTo(0);
+        assertThat(testLedger.getAvailable("otherItemId")).isEqualTo(100);
+    }
+
+    @Test
+    public void testRelease_returnsReservedStock() throws Exception {
+        StockLedger testLedger = new StockLedger(100, 60000, new TestStockStore(1));
+
+        testLedger.reserve("testCartId", "testItemId");
+        testLedger.release("otherCartId", "testItemId");
+        assertThat(testLedger.getAvailable("testItemId")).isEqualTo(0);
+        testLedger.release("testCartId", "testItemId");
+        assertThat(testLedger.getAvailable("testItemId")).isEqualTo(1);
+        testLedger.release("testCartId", "testItemId");
+        assertThat(testLedger.getAvailable("testItemId")).isEqualTo(1);
+    }
+
+    @Test
+    public void testReserve_releasesExpiredReservations() throws Exception {
+        StockLedger testLedger = new StockLedger(100, 0, new TestStockStore(1));
+
+        testLedger.reserve("abandonedCartId", "testItemId");
+        Thread.sleep(1);
+        assertThat(testLedger.reserve("testCartId", "testItemId")).isTrue();
+    }
+
+    @Test
+    public void testCommit_takesExpiredItemsFromAvailableStock() throws Exception {
+        StockLedger testLedger = new StockLedger(100, 60000, new TestStockStore(3));
+
+        testLedger.reserve("testCartId", "testItemId");
+        testLedger.commit("testCartId", ImmutableMap.of("testItemId", 2));
+        assertThat(testLedger.getAvailable("testItemId")).isEqualTo(1);
+        testLedger.release("testCartId", "testItemId");
+        assertThat(testLedger.getAvailable("testItemId")).isEqualTo(1);
+    }
+
+    @Test
+    public void testReserve_neverOversellsUnderContention() throws Exception {
+        StockLedger testLedger = new StockLedger(100, 60000, new TestStockStore(1000));
+        AtomicInteger reserved = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            String cartId = "cart" + t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    if (testLedger.reserve(cartId, "testItemId")) {
+                        reserved.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(reserved.get()).isEqualTo(1000);
+        assertThat(testLedger.getAvailable("testItemId")).isEqualTo(0);
+    }
+
+    @Test
+    public void testCommit_mergesSalesOfOtherInstances() throws Exception {
+        TestStockStore testStore = new TestStockStore(3);
+        StockLedger firstInstance = new StockLedger(100, 60000, testStore);
+        StockLedger secondInstance = new StockLedger(100, 60000, testStore);
+
+        firstInstance.reserve("firstCartId", "testItemId");
+        secondInstance.reserve("secondCartId", "testItemId");
+        secondInstance.reserve("secondCartId", "testItemId");
+        firstInstance.commit("firstCartId", ImmutableMap.of("testItemId", 1));
+        secondInstance.commit("secondCartId", ImmutableMap.of("testItemId", 2));
+        firstInstance.refresh();
+
+        assertThat(testStore.getStockLevels().get("testItemId")).isEqualTo(0L);
+        assertThat(firstInstance.getAvailable("testItemId")).isEqualTo(0);
+        assertThat(firstInstance.reserve("thirdCartId", "testItemId")).isFalse();
+    }
+
+    @Test
+    public void testCommit_rejectsStockSoldByOtherInstances() throws Exception {
+        TestStockStore testStore = new TestStockStore(1);
+        StockLedger firstInstance = new StockLedger(100, 60000, testStore);
+        StockLedger secondInstance = new StockLedger(100, 60000, testStore);
+
+        assertThat(firstInstance.reserve("firstCartId", "testItemId")).isTrue();
+        assertThat(secondInstance.reserve("secondCartId", "testItemId")).isTrue();
+        assertThat(firstInstance.commit("firstCartId", ImmutableMap.of("testItemId", 1)))
+            .isEqualTo(StockLedger.CommitResult.COMMITTED);
+        assertThat(secondInstance.commit("secondCartId", ImmutableMap.of("testItemId", 1)))
+            .isEqualTo(StockLedger.CommitResult.SOLD_OUT);
+
+        assertThat(testStore.getStockLevels().get("testItemId")).isEqualTo(0L);
+        secondInstance.release("secondCartId", "testItemId");
+        assertThat(secondInstance.getAvailable("testItemId")).isEqualTo(0);
+    }
+
+    @Test
+    public void testCommit_keepsReservationsWhenStoreFails() throws Exception {
+        TestStockStore testStore = new TestStockStore(5);
+        StockLedger testLedger = new StockLedger(100, 60000, testStore);
+
+        testLedger.reserve("testCartId", "testItemId");
+        testStore.failing = true;
+        assertThat(testLedger.commit("testCartId", ImmutableMap.of("testItemId", 1)))
+            .isEqualTo(StockLedger.CommitResult.FAILED);
+        testStore.failing = false;
+        assertThat(testLedger.commit("testCartId", ImmutableMap.of("testItemId", 1)))
+            .isEqualTo(StockLedger.CommitResult.COMMITTED);
+
+        assertThat(testStore.getStockLevels().get("testItemId")).isEqualTo(4L);
+        assertThat(testLedger.getAvailable("testItemId")).isEqualTo(4);
+    }
+
+    @Test
+    public void testRefresh_keepsStockWhenStoreFails() throws Exception {
+        TestStockStore testStore = new TestStockStore(5);
+        StockLedger testLedger = new StockLedger(100, 60000, testStore);
+
+        testLedger.reserve("testCartId", "testItemId");
+        testStore.failing = true;
+        IllegalStateException thrown = null;
+        try {
+            testLedger.refresh();
+        } catch (IllegalStateException e) {
+            thrown = e;
+        }
+
+        assertThat(thrown).isNotNull();
+        assertThat(testLedger.getAvailable("testItemId")).isEqualTo(4);
+        assertThat(testLedger.getAvailable("otherItemId")).isEqualTo(100);
+    }
+
+    @Test
+    public void testConstructor_failsWhenStoreFails() throws Exception {
+        TestStockStore testStore = new TestStockStore(5);
+        testStore.failing = true;
+
+        IllegalStateException thrown = null;
+        try {
+            new StockLedger(100, 60000, testStore);
+        } catch (IllegalStateException e) {
+            thrown = e;
+        }
+
+        assertThat(thrown).isNotNull();
+    }
+}
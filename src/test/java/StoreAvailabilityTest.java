@@ -0,0 +1,62 @@
+import static com.google.common.truth.Truth.assertThat;
+import com.google.businessmessages.cart.BotConstants;
+import com.google.businessmessages.cart.IndexedInventory;
+import com.google.businessmessages.cart.InventoryItem;
+import com.google.businessmessages.cart.StoreAvailability;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class StoreAvailabilityTest {
+
+    private static IndexedInventory getTestInventory() {
+        return new IndexedInventory(Arrays.asList(
+            getTestItem("Everywhere Shoes", ImmutableMap.of("color", Arrays.asList("blue"))),
+            getTestItem("Mountain View Shoes", ImmutableMap.of("store",
+                Arrays.asList(BotConstants.MOUNTAIN_VIEW_STORE_NAME.toLowerCase()))),
+            getTestItem("Kirkland and New York Shoes", ImmutableMap.of("store",
+                Arrays.asList(BotConstants.KIRKLAND_STORE_NAME.toLowerCase(),
+                    BotConstants.NEW_YORK_STORE_NAME.toLowerCase())))));
+    }
+
+    private static InventoryItem getTestItem(String title, Map<String, List<String>> properties) {
+        return new InventoryItem(title, null, properties);
+    }
+
+    @Test
+    public void testGetStoresStocking_requiresEveryItem() throws Exception {
+        StoreAvailability testAvailability = new StoreAvailability(getTestInventory());
+
+        assertThat(testAvailability.isRestricted()).isTrue();
+        assertThat(testAvailability.getStoresStocking(new int[] {0}))
+            .isEqualTo(BotConstants.STORE_NAME_TO_ADDRESS.keySet().asList());
+        assertThat(testAvailability.getStoresStocking(new int[] {0, 1}))
+            .isEqualTo(ImmutableList.of(BotConstants.MOUNTAIN_VIEW_STORE_NAME));
+        assertThat(testAvailability.getStoresStocking(new int[] {0, 2}))
+            .isEqualTo(ImmutableList.of(BotConstants.KIRKLAND_STORE_NAME, BotConstants.NEW_YORK_STORE_NAME));
+        assertThat(testAvailability.getStoresStocking(new int[] {1, 2})).isEqualTo(ImmutableList.of());
+    }
+
+    @Test
+    public void testRestrict_keepsNothingWithoutPickupStores() throws Exception {
+        StoreAvailability testAvailability = new StoreAvailability(getTestInventory());
+
+        assertThat(testAvailability.restrict(new int[] {0, 1, 2},
+            testAvailability.getStoresStocking(new int[] {1, 2}))).isEqualTo(new int[0]);
+    }
+
+    @Test
+    public void testRestrict_keepsItemsStockedAtPickupStores() throws Exception {
+        StoreAvailability testAvailability = new StoreAvailability(getTestInventory());
+        int[] testOrdinals = new int[] {0, 1, 2};
+
+        assertThat(testAvailability.restrict(testOrdinals,
+            ImmutableList.of(BotConstants.MOUNTAIN_VIEW_STORE_NAME))).isEqualTo(new int[] {0, 1});
+        assertThat(testAvailability.restrict(testOrdinals,
+            ImmutableList.of(BotConstants.KIRKLAND_STORE_NAME))).isEqualTo(new int[] {0, 2});
+        assertThat(testAvailability.restrict(testOrdinals, null)).isEqualTo(testOrdinals);
+    }
+}
@@ -0,0 +1,79 @@
+import static com.google.common.truth.Truth.assertThat;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.businessmessages.cart.Cart;
+import com.google.businessmessages.cart.FilterManager;
+import com.google.businessmessages.cart.TurnContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TurnContextTest {
+
+    private final LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+    @Before
+    public void setUp() {
+        helper.setUp();
+    }
+
+    @Test
+    public void testGetCart_isMemoized() {
+        String testConversationId = "testGetCartMemoizedConversationId";
+        TurnContext testContext = new TurnContext(testConversationId);
+
+        Cart firstCart = testContext.getCart();
+        Cart secondCart = testContext.getCart();
+
+        assertThat(secondCart).isSameAs(firstCart);
+    }
+
+    @Test
+    public void testGetFilters_isMemoizedUntilInvalidated() {
+        String testConversationId = "testGetFiltersMemoizedConversationId";
+        TurnContext testContext = new TurnContext(testConversationId);
+        assertThat(testContext.getFilters()).isEmpty();
+
+        FilterManager.setFilter(testConversationId, "color", "blue");
+
+        assertThat(testContext.getFilters()).isEmpty();
+        testContext.invalidateFilters();
+        assertThat(testContext.getFilters()).hasSize(1);
+        assertThat(testContext.getFilter("color").getValue()).isEqualTo("blue");
+        assertThat(testContext.getFilter("brand")).isNull();
+    }
+
+    @Test
+    public void testGetUnscheduledOrders_excludesOrdersWithPickups() {
+        String testConversationId = "testGetUnscheduledOrdersConversationId";
+        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+        Entity testOrder1 = new Entity("Order");
+        testOrder1.setProperty("conversation_id", testConversationId);
+        testOrder1.setProperty("order_id", "testOrderId1");
+        Entity testOrder2 = new Entity("Order");
+        testOrder2.setProperty("conversation_id", testConversationId);
+        testOrder2.setProperty("order_id", "testOrderId2");
+        Entity testPickup = new Entity("Pickup");
+        testPickup.setProperty("conversation_id", testConversationId);
+        testPickup.setProperty("order_id", "testOrderId1");
+        testPickup.setProperty("pickup_status", "incomplete");
+        datastore.put(testOrder1);
+        datastore.put(testOrder2);
+        datastore.put(testPickup);
+
+        TurnContext testContext = new TurnContext(testConversationId);
+
+        assertThat(testContext.getUnscheduledOrders()).hasSize(1);
+        assertThat(testContext.getUnscheduledOrders().get(0).getId()).isEqualTo("testOrderId2");
+        assertThat(testContext.getPickup("testOrderId1")).isNotNull();
+        assertThat(testContext.getScheduledPickups()).isEmpty();
+    }
+
+    @After
+    public void cleanUp() {
+        helper.tearDown();
+    }
+}